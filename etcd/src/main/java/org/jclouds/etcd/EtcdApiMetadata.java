@@ -17,6 +17,9 @@
 
 package org.jclouds.etcd;
 
+import static org.jclouds.etcd.config.EtcdProperties.WATCH_BUFFER_SIZE;
+import static org.jclouds.etcd.config.EtcdProperties.WATCH_THREADS;
+
 import java.net.URI;
 import java.util.Properties;
 
@@ -49,6 +52,8 @@ public class EtcdApiMetadata extends BaseHttpApiMetadata<EtcdApi> {
 
    public static Properties defaultProperties() {
       Properties properties = BaseHttpApiMetadata.defaultProperties();
+      properties.setProperty(WATCH_THREADS, "4");
+      properties.setProperty(WATCH_BUFFER_SIZE, "64");
       return properties;
    }
 
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.async;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.Callable;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.Constants;
+import org.jclouds.etcd.EtcdApi;
+import org.jclouds.etcd.domain.keys.CompareResult;
+import org.jclouds.etcd.domain.keys.Key;
+import org.jclouds.etcd.features.KeysApi;
+import org.jclouds.etcd.options.CompareKeyOptions;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Runs {@link KeysApi} calls on an executor and returns their results as
+ * futures, so many requests can be in flight at once. The number of
+ * concurrent requests is bounded by the executor, and by the connections the
+ * http driver keeps alive per host.
+ */
+@Singleton
+public class AsyncKeysApi {
+
+   private final KeysApi keysApi;
+   private final ListeningExecutorService executor;
+
+   @Inject
+   AsyncKeysApi(EtcdApi api, @Named(Constants.PROPERTY_USER_THREADS) ListeningExecutorService executor) {
+      this(api.keysApi(), executor);
+   }
+
+   public AsyncKeysApi(KeysApi keysApi, ListeningExecutorService executor) {
+      this.keysApi = checkNotNull(keysApi, "keysApi");
+      this.executor = checkNotNull(executor, "executor");
+   }
+
+   /**
+    * @see KeysApi#createKey(String, String)
+    */
+   public ListenableFuture<Key> createKey(final String key, final String value) {
+      return executor.submit(new Callable<Key>() {
+         @Override
+         public Key call() {
+            return keysApi.createKey(key, value);
+         }
+      });
+   }
+
+   /**
+    * @see KeysApi#createKey(String, String, int)
+    */
+   public ListenableFuture<Key> createKey(final String key, final String value, final int seconds) {
+      return executor.submit(new Callable<Key>() {
+         @Override
+         public Key call() {
+            return keysApi.createKey(key, value, seconds);
+         }
+      });
+   }
+
+   /**
+    * @see KeysApi#compareAndSwap(String, String, CompareKeyOptions)
+    */
+   public ListenableFuture<CompareResult> compareAndSwap(final String key, final String value,
+         final CompareKeyOptions options) {
+      return executor.submit(new Callable<CompareResult>() {
+         @Override
+         public CompareResult call() {
+            return keysApi.compareAndSwap(key, value, options);
+         }
+      });
+   }
+
+   /**
+    * @see KeysApi#getKey(String)
+    */
+   public ListenableFuture<Key> getKey(final String key) {
+      return executor.submit(new Callable<Key>() {
+         @Override
+         public Key call() {
+            return keysApi.getKey(key);
+         }
+      });
+   }
+
+   /**
+    * @see KeysApi#deleteKey(String)
+    */
+   public ListenableFuture<Key> deleteKey(final String key) {
+      return executor.submit(new Callable<Key>() {
+         @Override
+         public Key call() {
+            return keysApi.deleteKey(key);
+         }
+      });
+   }
+
+   /**
+    * @see KeysApi#compareAndDelete(String, CompareKeyOptions)
+    */
+   public ListenableFuture<CompareResult> compareAndDelete(final String key, final CompareKeyOptions options) {
+      return executor.submit(new Callable<CompareResult>() {
+         @Override
+         public CompareResult call() {
+            return keysApi.compareAndDelete(key, options);
+         }
+      });
+   }
+}
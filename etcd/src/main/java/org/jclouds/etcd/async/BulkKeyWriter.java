@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.async;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.etcd.domain.keys.Key;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Writes many keys with a bounded number of requests in flight.
+ * <p>
+ * A new request is sent as soon as one completes, so the throughput is bound
+ * by how fast etcd commits the writes rather than by the round trip of each
+ * one. A key that cannot be written does not stop the others; all the
+ * failures are reported together once every key has been tried.
+ */
+public class BulkKeyWriter {
+
+   private final AsyncKeysApi asyncKeysApi;
+   private final int maxInFlight;
+
+   public BulkKeyWriter(AsyncKeysApi asyncKeysApi, int maxInFlight) {
+      checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+      this.asyncKeysApi = checkNotNull(asyncKeysApi, "asyncKeysApi");
+      this.maxInFlight = maxInFlight;
+   }
+
+   /**
+    * Sets all the given keys and waits for every request to complete.
+    */
+   public BulkWriteResult write(Map<String, String> keys) throws InterruptedException {
+      return write(keys, 0);
+   }
+
+   /**
+    * Sets all the given keys to expire after the given number of seconds, or
+    * never if it is {@code 0}, and waits for every request to complete.
+    */
+   public BulkWriteResult write(Map<String, String> keys, int ttlSeconds) throws InterruptedException {
+      checkNotNull(keys, "keys");
+      checkArgument(ttlSeconds >= 0, "ttlSeconds must not be negative");
+      final Semaphore inFlight = new Semaphore(maxInFlight);
+      final AtomicInteger written = new AtomicInteger();
+      final ConcurrentMap<String, Throwable> failures = Maps.newConcurrentMap();
+      for (Map.Entry<String, String> entry : keys.entrySet()) {
+         final String key = entry.getKey();
+         inFlight.acquire();
+         ListenableFuture<Key> future;
+         try {
+            future = ttlSeconds > 0 ? asyncKeysApi.createKey(key, entry.getValue(), ttlSeconds)
+                  : asyncKeysApi.createKey(key, entry.getValue());
+         } catch (RuntimeException e) {
+            inFlight.release();
+            failures.put(key, e);
+            continue;
+         }
+         Futures.addCallback(future, new FutureCallback<Key>() {
+            @Override
+            public void onSuccess(Key result) {
+               written.incrementAndGet();
+               inFlight.release();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+               failures.put(key, t);
+               inFlight.release();
+            }
+         });
+      }
+      // Every permit is back once the last request has completed
+      inFlight.acquire(maxInFlight);
+      inFlight.release(maxInFlight);
+      return BulkWriteResult.create(written.get(), failures);
+   }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.async;
+
+import java.util.Map;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * The outcome of a {@link BulkKeyWriter} run.
+ */
+@AutoValue
+public abstract class BulkWriteResult {
+
+   /**
+    * The number of keys written.
+    */
+   public abstract int written();
+
+   /**
+    * The keys that could not be written, with the reason.
+    */
+   public abstract Map<String, Throwable> failures();
+
+   public boolean succeeded() {
+      return failures().isEmpty();
+   }
+
+   BulkWriteResult() {
+   }
+
+   public static BulkWriteResult create(int written, Map<String, Throwable> failures) {
+      return new AutoValue_BulkWriteResult(written, ImmutableMap.copyOf(failures));
+   }
+}
@@ -0,0 +1,473 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.cluster;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static org.jclouds.util.Closeables2.closeQuietly;
+import static org.jclouds.util.Throwables2.getFirstThrowableOfType;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.Constants;
+import org.jclouds.ContextBuilder;
+import org.jclouds.etcd.EtcdApi;
+import org.jclouds.etcd.domain.members.Member;
+import org.jclouds.etcd.features.KeysApi;
+import org.jclouds.etcd.options.GetKeyOptions;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.logging.Logger;
+import org.jclouds.logging.jdk.JDKLogger;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * A client for all the members of an etcd cluster.
+ * <p>
+ * The members are discovered from the seed endpoints through the members
+ * api, and the leader through the statistics of any member. The
+ * {@link KeysApi} returned by {@link #keysApi()} sends reads to the healthy
+ * members in turn and writes to the leader. Each member is health-checked in
+ * the background, and a request that cannot reach a member is sent to the next
+ * one straight away: reads go to any other member, and writes to the
+ * followers, which forward them to the leader.
+ * <p>
+ * Writes are only sent again when the member could not be connected to, or did
+ * not accept the connection in time, so a write is never applied twice. Reads are also sent again after a server error
+ * or a timeout, except watches, whose long polls time out when idle.
+ */
+public class EtcdCluster implements Closeable {
+
+   /**
+    * How long the clients created by {@link #create} wait to connect to a
+    * member before failing over to the next one, unless the overrides say
+    * otherwise.
+    */
+   static final int DEFAULT_CONNECTION_TIMEOUT_MILLIS = 2000;
+
+   private static final ImmutableSet<String> READS = ImmutableSet.of("getKey", "watchKey");
+
+   private static final Method GET_KEY_WITH_OPTIONS;
+
+   static {
+      try {
+         GET_KEY_WITH_OPTIONS = KeysApi.class.getMethod("getKey", String.class, GetKeyOptions.class);
+      } catch (NoSuchMethodException e) {
+         throw new ExceptionInInitializerError(e);
+      }
+   }
+
+   private final Logger logger;
+   private final Function<URI, EtcdApi> apiFactory;
+   private final List<URI> seeds;
+   private final ScheduledExecutorService scheduler;
+   private final long healthCheckPeriodMillis;
+   private final AtomicInteger nextRead = new AtomicInteger();
+   private final KeysApi keysApi;
+   private final KeysApi quorumKeysApi;
+
+   private volatile List<Endpoint> endpoints = ImmutableList.of();
+   private volatile Endpoint leader;
+   private ScheduledFuture<?> healthChecks;
+   private boolean closed;
+
+   /**
+    * Creates a client for the cluster the seed endpoints belong to, logging
+    * through {@code java.util.logging}.
+    *
+    * @see #create(Iterable, Properties, ScheduledExecutorService, long,
+    *      TimeUnit, Logger)
+    */
+   public static EtcdCluster create(Iterable<URI> seeds, Properties overrides, ScheduledExecutorService scheduler,
+         long healthCheckPeriod, TimeUnit unit) {
+      return create(seeds, overrides, scheduler, healthCheckPeriod, unit,
+            new JDKLogger.JDKLoggerFactory().getLogger(EtcdCluster.class.getName()));
+   }
+
+   /**
+    * Creates a client for the cluster the seed endpoints belong to. Requests
+    * are not retried against the same member and give up connecting after two
+    * seconds, since failing over to another member is faster, unless the
+    * overrides say otherwise.
+    */
+   public static EtcdCluster create(Iterable<URI> seeds, Properties overrides, ScheduledExecutorService scheduler,
+         long healthCheckPeriod, TimeUnit unit, Logger logger) {
+      final Properties properties = memberProperties(overrides);
+      return new EtcdCluster(new Function<URI, EtcdApi>() {
+         @Override
+         public EtcdApi apply(URI endpoint) {
+            return ContextBuilder.newBuilder("etcd").endpoint(endpoint.toString()).overrides(properties)
+                  .buildApi(EtcdApi.class);
+         }
+      }, seeds, scheduler, healthCheckPeriod, unit, logger);
+   }
+
+   /**
+    * Creates a client that does not log.
+    */
+   public EtcdCluster(Function<URI, EtcdApi> apiFactory, Iterable<URI> seeds, ScheduledExecutorService scheduler,
+         long healthCheckPeriod, TimeUnit unit) {
+      this(apiFactory, seeds, scheduler, healthCheckPeriod, unit, Logger.NULL);
+   }
+
+   public EtcdCluster(Function<URI, EtcdApi> apiFactory, Iterable<URI> seeds, ScheduledExecutorService scheduler,
+         long healthCheckPeriod, TimeUnit unit, Logger logger) {
+      checkArgument(healthCheckPeriod > 0, "healthCheckPeriod must be positive");
+      this.apiFactory = checkNotNull(apiFactory, "apiFactory");
+      this.seeds = ImmutableList.copyOf(checkNotNull(seeds, "seeds"));
+      checkArgument(!this.seeds.isEmpty(), "at least one seed endpoint is required");
+      this.scheduler = checkNotNull(scheduler, "scheduler");
+      this.healthCheckPeriodMillis = unit.toMillis(healthCheckPeriod);
+      this.logger = checkNotNull(logger, "logger");
+      this.keysApi = router(false);
+      this.quorumKeysApi = router(true);
+   }
+
+   /**
+    * Discovers the members and starts checking their health.
+    */
+   public synchronized void start() {
+      checkState(healthChecks == null && !closed, "cluster client already started");
+      ImmutableList.Builder<Endpoint> initial = ImmutableList.builder();
+      for (URI seed : seeds) {
+         initial.add(new Endpoint(normalize(seed), apiFactory.apply(seed)));
+      }
+      endpoints = initial.build();
+      refresh();
+      checkHealth();
+      healthChecks = scheduler.scheduleWithFixedDelay(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               refresh();
+               checkHealth();
+            } catch (RuntimeException e) {
+               logger.warn(e, "<< could not check the etcd cluster");
+            }
+         }
+      }, healthCheckPeriodMillis, healthCheckPeriodMillis, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * The keys api of the cluster: reads are spread across the members and
+    * writes sent to the leader.
+    */
+   public KeysApi keysApi() {
+      return keysApi;
+   }
+
+   /**
+    * The keys api of the cluster, optionally reading through the consensus
+    * protocol so that any member returns up-to-date results.
+    *
+    * @see GetKeyOptions#quorum(boolean)
+    */
+   public KeysApi keysApi(boolean quorum) {
+      return quorum ? quorumKeysApi : keysApi;
+   }
+
+   /**
+    * The client endpoint of the leader, or {@code null} if it is not known.
+    */
+   public URI getLeader() {
+      Endpoint current = leader;
+      return current == null ? null : current.uri;
+   }
+
+   /**
+    * The client endpoints of the members, and whether each one is healthy.
+    */
+   public Map<URI, Boolean> getEndpoints() {
+      Map<URI, Boolean> result = Maps.newLinkedHashMap();
+      for (Endpoint endpoint : endpoints) {
+         result.put(endpoint.uri, endpoint.healthy);
+      }
+      return result;
+   }
+
+   /**
+    * Reads the members and the leader again from the first member that
+    * answers.
+    */
+   public void refresh() {
+      for (Endpoint source : healthyFirst(endpoints)) {
+         try {
+            List<Member> members = source.api.membersApi().list();
+            String leaderId = source.api.statisticsApi().self().leaderInfo().leader();
+            update(members, leaderId);
+            return;
+         } catch (RuntimeException e) {
+            logger.debug("<< could not read the etcd cluster from %s: %s", source.uri, e.getMessage());
+            source.healthy = false;
+         }
+      }
+      logger.warn("<< no etcd member could be reached");
+   }
+
+   /**
+    * Checks the health of every member.
+    */
+   public void checkHealth() {
+      for (Endpoint endpoint : endpoints) {
+         try {
+            endpoint.healthy = endpoint.api.miscellaneousApi().health();
+         } catch (RuntimeException e) {
+            endpoint.healthy = false;
+         }
+      }
+   }
+
+   @Override
+   public synchronized void close() {
+      closed = true;
+      if (healthChecks != null) {
+         healthChecks.cancel(false);
+      }
+      for (Endpoint endpoint : endpoints) {
+         closeQuietly(endpoint.api);
+      }
+      endpoints = ImmutableList.of();
+      leader = null;
+   }
+
+   /**
+    * The properties of the clients of the members created by {@link #create}.
+    */
+   static Properties memberProperties(Properties overrides) {
+      Properties properties = new Properties();
+      properties.setProperty(Constants.PROPERTY_MAX_RETRIES, "0");
+      properties.setProperty(Constants.PROPERTY_CONNECTION_TIMEOUT, String.valueOf(DEFAULT_CONNECTION_TIMEOUT_MILLIS));
+      properties.putAll(overrides);
+      return properties;
+   }
+
+   private synchronized void update(List<Member> members, String leaderId) {
+      if (closed) {
+         return;
+      }
+      Map<URI, Endpoint> current = Maps.newHashMap();
+      for (Endpoint endpoint : endpoints) {
+         current.put(endpoint.uri, endpoint);
+      }
+      ImmutableList.Builder<Endpoint> updated = ImmutableList.builder();
+      Endpoint newLeader = null;
+      for (Member member : members) {
+         if (member.clientURLs().isEmpty()) {
+            // Added to the cluster but not started yet
+            continue;
+         }
+         URI uri = normalize(URI.create(member.clientURLs().get(0)));
+         Endpoint endpoint = current.remove(uri);
+         if (endpoint == null) {
+            endpoint = new Endpoint(uri, apiFactory.apply(uri));
+         }
+         if (member.id().equals(leaderId)) {
+            newLeader = endpoint;
+         }
+         updated.add(endpoint);
+      }
+      List<Endpoint> result = updated.build();
+      if (result.isEmpty()) {
+         return;
+      }
+      endpoints = result;
+      leader = newLeader;
+      for (Endpoint removed : current.values()) {
+         closeQuietly(removed.api);
+      }
+   }
+
+   /**
+    * The healthy members in turn, then the others as a last resort.
+    */
+   private List<Endpoint> readOrder() {
+      List<Endpoint> all = endpoints;
+      if (all.isEmpty()) {
+         return all;
+      }
+      int start = (nextRead.getAndIncrement() & Integer.MAX_VALUE) % all.size();
+      ImmutableList.Builder<Endpoint> rotated = ImmutableList.builder();
+      rotated.addAll(all.subList(start, all.size())).addAll(all.subList(0, start));
+      return healthyFirst(rotated.build());
+   }
+
+   /**
+    * The leader, then the followers.
+    */
+   private List<Endpoint> writeOrder() {
+      Endpoint current = leader;
+      List<Endpoint> ordered = healthyFirst(endpoints);
+      if (current == null || !current.healthy) {
+         return ordered;
+      }
+      ImmutableList.Builder<Endpoint> result = ImmutableList.builder();
+      result.add(current);
+      for (Endpoint endpoint : ordered) {
+         if (endpoint != current) {
+            result.add(endpoint);
+         }
+      }
+      return result.build();
+   }
+
+   private static List<Endpoint> healthyFirst(List<Endpoint> endpoints) {
+      ImmutableList.Builder<Endpoint> healthy = ImmutableList.builder();
+      ImmutableList.Builder<Endpoint> unhealthy = ImmutableList.builder();
+      for (Endpoint endpoint : endpoints) {
+         (endpoint.healthy ? healthy : unhealthy).add(endpoint);
+      }
+      return healthy.addAll(unhealthy.build()).build();
+   }
+
+   /**
+    * Whether the request can be sent to another member after failing.
+    */
+   private static boolean canFailOver(Throwable t, String method) {
+      if (getFirstThrowableOfType(t, ConnectException.class) != null
+            || getFirstThrowableOfType(t, NoRouteToHostException.class) != null
+            || getFirstThrowableOfType(t, UnknownHostException.class) != null || isConnectTimeout(t)) {
+         // The request never reached the member
+         return true;
+      }
+      if (!READS.contains(method)) {
+         return false;
+      }
+      if (method.equals("watchKey") && getFirstThrowableOfType(t, SocketTimeoutException.class) != null) {
+         return false;
+      }
+      HttpResponseException e = getFirstThrowableOfType(t, HttpResponseException.class);
+      return e != null && (e.getResponse() == null || e.getResponse().getStatusCode() >= 500);
+   }
+
+   /**
+    * Whether the connection timed out before it was established, as with an
+    * unreachable member, rather than while waiting for the response.
+    */
+   private static boolean isConnectTimeout(Throwable t) {
+      SocketTimeoutException e = getFirstThrowableOfType(t, SocketTimeoutException.class);
+      // The JDK says "connect timed out" when connecting, and "Read timed out" once connected
+      return e != null && e.getMessage() != null && e.getMessage().toLowerCase(Locale.ENGLISH).contains("connect");
+   }
+
+   private static URI normalize(URI uri) {
+      String value = uri.toString();
+      return value.endsWith("/") ? URI.create(value.substring(0, value.length() - 1)) : uri;
+   }
+
+   private KeysApi router(boolean quorum) {
+      return (KeysApi) Proxy.newProxyInstance(KeysApi.class.getClassLoader(), new Class<?>[] { KeysApi.class },
+            new Router(quorum));
+   }
+
+   private void refreshLater() {
+      try {
+         scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+               refresh();
+            }
+         });
+      } catch (RuntimeException e) {
+         logger.debug("<< could not schedule a refresh of the etcd cluster: %s", e.getMessage());
+      }
+   }
+
+   private static final class Endpoint {
+      private final URI uri;
+      private final EtcdApi api;
+      private volatile boolean healthy = true;
+
+      private Endpoint(URI uri, EtcdApi api) {
+         this.uri = uri;
+         this.api = api;
+      }
+   }
+
+   private final class Router implements InvocationHandler {
+
+      private final boolean quorum;
+
+      private Router(boolean quorum) {
+         this.quorum = quorum;
+      }
+
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+         if (method.getDeclaringClass() == Object.class) {
+            if (method.getName().equals("equals")) {
+               return proxy == args[0];
+            } else if (method.getName().equals("hashCode")) {
+               return System.identityHashCode(proxy);
+            }
+            return String.format("KeysApi(cluster=%s, quorum=%s)", seeds, quorum);
+         }
+         Method target = method;
+         Object[] targetArgs = args;
+         if (quorum && method.getName().equals("getKey")) {
+            GetKeyOptions options = new GetKeyOptions().quorum(true);
+            if (args.length > 1 && ((GetKeyOptions) args[1]).isRecursive()) {
+               options.recursive(true);
+            }
+            target = GET_KEY_WITH_OPTIONS;
+            targetArgs = new Object[] { args[0], options };
+         }
+         boolean read = READS.contains(method.getName());
+         Throwable failure = null;
+         for (Endpoint endpoint : read ? readOrder() : writeOrder()) {
+            try {
+               return target.invoke(endpoint.api.keysApi(), targetArgs);
+            } catch (InvocationTargetException e) {
+               failure = e.getCause();
+               if (!canFailOver(failure, method.getName())) {
+                  throw failure;
+               }
+               logger.debug("<< %s failed on %s, failing over: %s", method.getName(), endpoint.uri,
+                     failure.getMessage());
+               endpoint.healthy = false;
+               if (endpoint == leader) {
+                  refreshLater();
+               }
+            }
+         }
+         if (failure != null) {
+            throw failure;
+         }
+         throw new IllegalStateException("No etcd member is known; start the cluster first");
+      }
+   }
+}
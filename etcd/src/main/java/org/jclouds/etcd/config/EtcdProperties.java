@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.config;
+
+/**
+ * Configuration properties for the etcd api.
+ */
+public final class EtcdProperties {
+
+   /**
+    * Maximum number of watches and mirrors that can be active at the same
+    * time. Each active watch or mirror holds one thread for its long-poll
+    * request, and opening one more than the limit fails with an
+    * {@link IllegalStateException}. Defaults to 4.
+    */
+   public static final String WATCH_THREADS = "jclouds.etcd.watch.threads";
+
+   /**
+    * Number of events a watch buffers before it stops fetching new ones until
+    * the consumer catches up.
+    */
+   public static final String WATCH_BUFFER_SIZE = "jclouds.etcd.watch.buffer-size";
+
+   private EtcdProperties() {
+      throw new AssertionError("intentionally unimplemented");
+   }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.domain.keys;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.json.SerializedNames;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * The outcome of a conditional update or delete of a key. A failed comparison
+ * is a regular result rather than an error, so retry loops do not have to deal
+ * with exceptions.
+ */
+@AutoValue
+public abstract class CompareResult {
+
+   /** The key had to exist and does not. */
+   public static final int KEY_NOT_FOUND = 100;
+
+   /** The previous value or index of the key did not match. */
+   public static final int COMPARE_FAILED = 101;
+
+   /** The key had not to exist and does. */
+   public static final int KEY_EXISTS = 105;
+
+   /**
+    * The updated or deleted key, or {@code null} if the comparison failed.
+    */
+   @Nullable
+   public abstract Key key();
+
+   /**
+    * The etcd error code of a failed comparison, or {@code 0}.
+    */
+   public abstract int errorCode();
+
+   @Nullable
+   public abstract String message();
+
+   @Nullable
+   public abstract String cause();
+
+   /**
+    * The index of the change on success, or the current index of the cluster
+    * when the comparison failed.
+    */
+   public abstract long index();
+
+   public boolean succeeded() {
+      return key() != null;
+   }
+
+   CompareResult() {
+   }
+
+   public static CompareResult success(Key key) {
+      return create(key, 0, null, null, key.node().modifiedIndex());
+   }
+
+   @SerializedNames({ "key", "errorCode", "message", "cause", "index" })
+   public static CompareResult create(Key key, int errorCode, String message, String cause, long index) {
+      return new AutoValue_CompareResult(key, errorCode, message, cause, index);
+   }
+}
@@ -32,11 +32,23 @@ public abstract class Key {
    @Nullable
    public abstract Node prevNode();
 
+   /**
+    * The index of the cluster when the response was generated, as reported by
+    * the {@code X-Etcd-Index} header. Only populated by the calls that read
+    * keys; {@code null} otherwise.
+    */
+   @Nullable
+   public abstract Long etcdIndex();
+
    Key() {
    }
 
-   @SerializedNames({ "action", "node", "prevNode" })
    public static Key create(String action, Node node, Node prevNode) {
-      return new AutoValue_Key(action, node, prevNode);
+      return create(action, node, prevNode, null);
+   }
+
+   @SerializedNames({ "action", "node", "prevNode", "etcdIndex" })
+   public static Key create(String action, Node node, Node prevNode, Long etcdIndex) {
+      return new AutoValue_Key(action, node, prevNode, etcdIndex);
    }
 }
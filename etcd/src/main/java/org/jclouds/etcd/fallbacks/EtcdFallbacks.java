@@ -20,9 +20,18 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Predicates.equalTo;
 import static com.google.common.base.Throwables.propagate;
 import static org.jclouds.http.HttpUtils.returnValueOnCodeOrNull;
+import static org.jclouds.util.Throwables2.getFirstThrowableOfType;
+
+import javax.inject.Inject;
 
 import org.jclouds.Fallback;
+import org.jclouds.etcd.domain.keys.CompareResult;
+import org.jclouds.http.HttpResponseException;
 import org.jclouds.http.HttpUtils;
+import org.jclouds.json.Json;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.JsonParseException;
 
 public final class EtcdFallbacks {
 
@@ -45,4 +54,37 @@ public final class EtcdFallbacks {
          throw propagate(t);
       }
    }
+
+   /**
+    * Turns the errors etcd returns when the conditions of a compare-and-swap or
+    * compare-and-delete are not met into a {@link CompareResult}.
+    */
+   public static final class CompareResultOnCompareFailed implements Fallback<CompareResult> {
+
+      private static final ImmutableSet<Integer> COMPARE_ERRORS = ImmutableSet.of(CompareResult.KEY_NOT_FOUND,
+            CompareResult.COMPARE_FAILED, CompareResult.KEY_EXISTS);
+
+      private final Json json;
+
+      @Inject
+      CompareResultOnCompareFailed(Json json) {
+         this.json = json;
+      }
+
+      public CompareResult createOrPropagate(Throwable t) throws Exception {
+         HttpResponseException e = getFirstThrowableOfType(checkNotNull(t, "throwable"), HttpResponseException.class);
+         if (e != null && e.getResponse() != null && e.getMessage() != null
+               && (e.getResponse().getStatusCode() == 404 || e.getResponse().getStatusCode() == 412)) {
+            try {
+               CompareResult result = json.fromJson(e.getMessage(), CompareResult.class);
+               if (result != null && COMPARE_ERRORS.contains(result.errorCode())) {
+                  return result;
+               }
+            } catch (JsonParseException ignored) {
+               // Not an etcd error; propagate the original exception
+            }
+         }
+         throw propagate(t);
+      }
+   }
 }
@@ -27,9 +27,18 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.core.MediaType;
 
+import org.jclouds.etcd.domain.keys.CompareResult;
 import org.jclouds.etcd.domain.keys.Key;
+import org.jclouds.etcd.fallbacks.EtcdFallbacks.CompareResultOnCompareFailed;
 import org.jclouds.etcd.fallbacks.EtcdFallbacks.NullOnKeyNonFoundAnd404;
+import org.jclouds.etcd.functions.ParseCompareResult;
+import org.jclouds.etcd.functions.ParseKey;
+import org.jclouds.etcd.options.CompareKeyOptions;
+import org.jclouds.etcd.options.GetKeyOptions;
+import org.jclouds.etcd.options.WatchKeyOptions;
 import org.jclouds.rest.annotations.Fallback;
+import org.jclouds.rest.annotations.QueryParams;
+import org.jclouds.rest.annotations.ResponseParser;
 
 @Consumes(MediaType.APPLICATION_JSON)
 @Path("/{jclouds.api-version}/keys")
@@ -45,15 +54,73 @@ public interface KeysApi {
    @Path("/{key}")
    Key createKey(@PathParam("key") String key, @FormParam("value") String value, @FormParam("ttl") int seconds);
 
+   /**
+    * Sets the key only if it meets the given conditions.
+    *
+    * @return the result of the comparison; a failed comparison is not an error
+    */
+   @Named("keys:compareAndSwap")
+   @PUT
+   @Path("/{key}")
+   @Fallback(CompareResultOnCompareFailed.class)
+   @ResponseParser(ParseCompareResult.class)
+   CompareResult compareAndSwap(@PathParam("key") String key, @FormParam("value") String value,
+         CompareKeyOptions options);
+
    @Named("keys:get")
    @GET
    @Path("/{key}")
    @Fallback(NullOnKeyNonFoundAnd404.class)
+   @ResponseParser(ParseKey.class)
    Key getKey(@PathParam("key") String key);
 
+   @Named("keys:get")
+   @GET
+   @Path("/{key}")
+   @Fallback(NullOnKeyNonFoundAnd404.class)
+   @ResponseParser(ParseKey.class)
+   Key getKey(@PathParam("key") String key, GetKeyOptions options);
+
+   /**
+    * Blocks until the key changes and returns the change.
+    *
+    * @see org.jclouds.etcd.watch.KeyWatcher
+    */
+   @Named("keys:watch")
+   @GET
+   @Path("/{key}")
+   @QueryParams(keys = "wait", values = "true")
+   @ResponseParser(ParseKey.class)
+   Key watchKey(@PathParam("key") String key);
+
+   /**
+    * Blocks until the key, or its subtree when watching recursively, changes at
+    * or after the given wait index and returns the first such change.
+    *
+    * @see org.jclouds.etcd.watch.KeyWatcher
+    */
+   @Named("keys:watch")
+   @GET
+   @Path("/{key}")
+   @QueryParams(keys = "wait", values = "true")
+   @ResponseParser(ParseKey.class)
+   Key watchKey(@PathParam("key") String key, WatchKeyOptions options);
+
    @Named("keys:delete")
    @DELETE
    @Path("/{key}")
    @Fallback(NullOnKeyNonFoundAnd404.class)
    Key deleteKey(@PathParam("key") String key);
+
+   /**
+    * Deletes the key only if it meets the given conditions.
+    *
+    * @return the result of the comparison; a failed comparison is not an error
+    */
+   @Named("keys:compareAndDelete")
+   @DELETE
+   @Path("/{key}")
+   @Fallback(CompareResultOnCompareFailed.class)
+   @ResponseParser(ParseCompareResult.class)
+   CompareResult compareAndDelete(@PathParam("key") String key, CompareKeyOptions options);
 }
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.functions;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.jclouds.etcd.domain.keys.CompareResult;
+import org.jclouds.etcd.domain.keys.Key;
+import org.jclouds.http.HttpResponse;
+
+import com.google.common.base.Function;
+
+/**
+ * Parses the key returned by a successful compare-and-swap or
+ * compare-and-delete.
+ */
+@Singleton
+public class ParseCompareResult implements Function<HttpResponse, CompareResult> {
+
+   private final ParseKey parseKey;
+
+   @Inject
+   ParseCompareResult(ParseKey parseKey) {
+      this.parseKey = parseKey;
+   }
+
+   @Override
+   public CompareResult apply(HttpResponse response) {
+      Key key = parseKey.apply(response);
+      return key == null ? null : CompareResult.success(key);
+   }
+}
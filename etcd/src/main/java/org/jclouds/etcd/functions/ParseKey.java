@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.functions;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.jclouds.etcd.domain.keys.Key;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.functions.ParseJson;
+import org.jclouds.json.Json;
+
+import com.google.common.base.Function;
+import com.google.inject.TypeLiteral;
+
+/**
+ * Parses a {@link Key} and sets its {@link Key#etcdIndex()} from the
+ * {@code X-Etcd-Index} response header.
+ */
+@Singleton
+public class ParseKey implements Function<HttpResponse, Key> {
+
+   public static final String ETCD_INDEX = "X-Etcd-Index";
+
+   private final ParseJson<Key> parser;
+
+   @Inject
+   ParseKey(Json json) {
+      this.parser = new ParseJson<Key>(json, TypeLiteral.get(Key.class));
+   }
+
+   @Override
+   public Key apply(HttpResponse response) {
+      Key key = parser.apply(response);
+      String index = response.getFirstHeaderOrNull(ETCD_INDEX);
+      if (key == null || index == null) {
+         return key;
+      }
+      return Key.create(key.action(), key.node(), key.prevNode(), Long.valueOf(index));
+   }
+}
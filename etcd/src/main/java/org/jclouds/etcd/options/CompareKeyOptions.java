@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.options;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.jclouds.http.options.BaseHttpRequestOptions;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Conditions a key must meet for a compare-and-swap or compare-and-delete to
+ * be applied.
+ */
+public class CompareKeyOptions extends BaseHttpRequestOptions {
+
+   /**
+    * Only applies the change if the key currently has the given value.
+    */
+   public CompareKeyOptions prevValue(String prevValue) {
+      this.queryParameters.replaceValues("prevValue", ImmutableList.of(checkNotNull(prevValue, "prevValue")));
+      return this;
+   }
+
+   /**
+    * Only applies the change if the key was last modified at the given index.
+    */
+   public CompareKeyOptions prevIndex(long prevIndex) {
+      checkArgument(prevIndex > 0, "prevIndex must be positive");
+      this.queryParameters.replaceValues("prevIndex", ImmutableList.of(String.valueOf(prevIndex)));
+      return this;
+   }
+
+   /**
+    * Only applies the change if the key exists, or if it does not.
+    */
+   public CompareKeyOptions prevExist(boolean prevExist) {
+      this.queryParameters.replaceValues("prevExist", ImmutableList.of(String.valueOf(prevExist)));
+      return this;
+   }
+
+   /**
+    * Expires the key after the given number of seconds. Only used when
+    * updating a key.
+    */
+   public CompareKeyOptions ttl(int seconds) {
+      checkArgument(seconds > 0, "ttl must be positive");
+      this.queryParameters.replaceValues("ttl", ImmutableList.of(String.valueOf(seconds)));
+      return this;
+   }
+
+   public static class Builder {
+      /**
+       * @see CompareKeyOptions#prevValue
+       */
+      public static CompareKeyOptions prevValue(String prevValue) {
+         CompareKeyOptions options = new CompareKeyOptions();
+         return options.prevValue(prevValue);
+      }
+
+      /**
+       * @see CompareKeyOptions#prevIndex
+       */
+      public static CompareKeyOptions prevIndex(long prevIndex) {
+         CompareKeyOptions options = new CompareKeyOptions();
+         return options.prevIndex(prevIndex);
+      }
+
+      /**
+       * @see CompareKeyOptions#prevExist
+       */
+      public static CompareKeyOptions prevExist(boolean prevExist) {
+         CompareKeyOptions options = new CompareKeyOptions();
+         return options.prevExist(prevExist);
+      }
+   }
+}
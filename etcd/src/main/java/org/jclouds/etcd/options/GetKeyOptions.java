@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.options;
+
+import org.jclouds.http.options.BaseHttpRequestOptions;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Options for reading a key.
+ */
+public class GetKeyOptions extends BaseHttpRequestOptions {
+
+   /**
+    * Returns the whole subtree under a directory instead of its direct
+    * children only.
+    */
+   public GetKeyOptions recursive(boolean recursive) {
+      this.queryParameters.replaceValues("recursive", ImmutableList.of(String.valueOf(recursive)));
+      return this;
+   }
+
+   /**
+    * Reads through the consensus protocol, so the result reflects every write
+    * acknowledged before, whichever member serves it.
+    */
+   public GetKeyOptions quorum(boolean quorum) {
+      this.queryParameters.replaceValues("quorum", ImmutableList.of(String.valueOf(quorum)));
+      return this;
+   }
+
+   public boolean isRecursive() {
+      return Boolean.parseBoolean(getFirstQueryOrNull("recursive"));
+   }
+
+   public boolean isQuorum() {
+      return Boolean.parseBoolean(getFirstQueryOrNull("quorum"));
+   }
+
+   public static class Builder {
+      /**
+       * @see GetKeyOptions#recursive
+       */
+      public static GetKeyOptions recursive(boolean recursive) {
+         GetKeyOptions options = new GetKeyOptions();
+         return options.recursive(recursive);
+      }
+
+      /**
+       * @see GetKeyOptions#quorum
+       */
+      public static GetKeyOptions quorum(boolean quorum) {
+         GetKeyOptions options = new GetKeyOptions();
+         return options.quorum(quorum);
+      }
+   }
+}
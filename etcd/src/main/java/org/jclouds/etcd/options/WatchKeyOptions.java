@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.options;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.jclouds.http.options.BaseHttpRequestOptions;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Options for long-polling a key with {@code wait=true}.
+ */
+public class WatchKeyOptions extends BaseHttpRequestOptions {
+
+   /**
+    * Returns the first change at or after the given index instead of waiting
+    * for the next one. This is how a watch resumes without missing events.
+    */
+   public WatchKeyOptions waitIndex(long waitIndex) {
+      checkArgument(waitIndex > 0, "waitIndex must be positive");
+      this.queryParameters.replaceValues("waitIndex", ImmutableList.of(String.valueOf(waitIndex)));
+      return this;
+   }
+
+   /**
+    * Watches the whole subtree under the key instead of the key alone.
+    */
+   public WatchKeyOptions recursive(boolean recursive) {
+      this.queryParameters.replaceValues("recursive", ImmutableList.of(String.valueOf(recursive)));
+      return this;
+   }
+
+   public Long getWaitIndex() {
+      String waitIndex = getFirstQueryOrNull("waitIndex");
+      return waitIndex == null ? null : Long.valueOf(waitIndex);
+   }
+
+   public boolean isRecursive() {
+      return Boolean.parseBoolean(getFirstQueryOrNull("recursive"));
+   }
+
+   public static class Builder {
+      /**
+       * @see WatchKeyOptions#waitIndex
+       */
+      public static WatchKeyOptions waitIndex(long waitIndex) {
+         WatchKeyOptions options = new WatchKeyOptions();
+         return options.waitIndex(waitIndex);
+      }
+
+      /**
+       * @see WatchKeyOptions#recursive
+       */
+      public static WatchKeyOptions recursive(boolean recursive) {
+         WatchKeyOptions options = new WatchKeyOptions();
+         return options.recursive(recursive);
+      }
+   }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.recipes;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.etcd.domain.keys.Key;
+import org.jclouds.etcd.features.KeysApi;
+import org.jclouds.logging.Logger;
+
+/**
+ * Elects one leader among the candidates that share a key.
+ * <p>
+ * Each candidate periodically tries to take a {@link LeaseLock} on the key,
+ * and the one holding it renews it. Campaigning happens three times per TTL,
+ * so the leadership of a crashed leader moves on within about one TTL and a
+ * leader that cannot renew stops reporting itself as such before its lease
+ * expires.
+ */
+public class LeaderElection implements Closeable {
+
+   private final Logger logger;
+   private final KeysApi keysApi;
+   private final LeaseLock lock;
+   private final ScheduledExecutorService scheduler;
+
+   private ScheduledFuture<?> campaign;
+   private boolean closed;
+
+   /**
+    * Creates an election that does not log.
+    */
+   public LeaderElection(KeysApi keysApi, String key, String candidate, int ttlSeconds,
+         ScheduledExecutorService scheduler) {
+      this(keysApi, key, candidate, ttlSeconds, scheduler, Logger.NULL);
+   }
+
+   public LeaderElection(KeysApi keysApi, String key, String candidate, int ttlSeconds,
+         ScheduledExecutorService scheduler, Logger logger) {
+      this.logger = checkNotNull(logger, "logger");
+      this.keysApi = checkNotNull(keysApi, "keysApi");
+      this.scheduler = checkNotNull(scheduler, "scheduler");
+      this.lock = new LeaseLock(keysApi, key, candidate, ttlSeconds, scheduler);
+   }
+
+   /**
+    * Starts campaigning for the leadership.
+    */
+   public synchronized void start() {
+      checkState(campaign == null && !closed, "election on %s already started", lock.getKey());
+      long period = Math.max(1, TimeUnit.SECONDS.toMillis(lock.getTtlSeconds()) / 3);
+      campaign = scheduler.scheduleWithFixedDelay(new Runnable() {
+         @Override
+         public void run() {
+            campaign();
+         }
+      }, 0, period, TimeUnit.MILLISECONDS);
+   }
+
+   public String getCandidate() {
+      return lock.getOwner();
+   }
+
+   public boolean isLeader() {
+      return lock.isHeld();
+   }
+
+   /**
+    * Reads the current leader from etcd.
+    *
+    * @return the leader, or {@code null} if there is none
+    */
+   public String getLeader() {
+      Key leader = keysApi.getKey(lock.getKey());
+      return leader == null ? null : leader.node().value();
+   }
+
+   /**
+    * Stops campaigning and gives the leadership up if this candidate holds it.
+    * A campaign in progress is waited for, so it cannot take the lock again
+    * once it has been given up.
+    */
+   @Override
+   public synchronized void close() {
+      closed = true;
+      if (campaign != null) {
+         campaign.cancel(false);
+         campaign = null;
+      }
+      try {
+         lock.unlock();
+      } catch (RuntimeException e) {
+         logger.warn(e, "<< could not resign from %s, it will expire", lock.getKey());
+      }
+   }
+
+   private synchronized void campaign() {
+      if (closed) {
+         return;
+      }
+      try {
+         // Renewing also recovers a lease that was only considered lost locally
+         boolean leader = lock.renew() || lock.tryLock();
+         logger.trace("<< %s leader of %s: %s", lock.getOwner(), lock.getKey(), leader);
+      } catch (RuntimeException e) {
+         // Leadership lapses on its own if renewals keep failing until the TTL
+         logger.warn(e, "<< could not campaign for %s", lock.getKey());
+      }
+   }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.recipes;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.jclouds.etcd.options.CompareKeyOptions.Builder.prevExist;
+import static org.jclouds.etcd.options.CompareKeyOptions.Builder.prevIndex;
+import static org.jclouds.etcd.options.WatchKeyOptions.Builder.waitIndex;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.etcd.domain.keys.CompareResult;
+import org.jclouds.etcd.features.KeysApi;
+
+/**
+ * A lock held through a key with a TTL.
+ * <p>
+ * The lock is taken by creating the key only if it does not exist, and is
+ * released by deleting it only if it has not changed since. The holder has to
+ * {@link #renew()} it before the TTL expires; a holder that crashes loses the
+ * lock when the key expires. {@link #isHeld()} only reports the lock as held
+ * while the last successful renewal is younger than the TTL, so a holder that
+ * cannot reach etcd stops considering itself the owner on time.
+ * <p>
+ * {@link #lock()} waits for the key to change on the given executor, so that
+ * waiting can be interrupted; the executor belongs to the caller, who shuts
+ * it down.
+ */
+public class LeaseLock {
+
+   private final KeysApi keysApi;
+   private final String key;
+   private final String owner;
+   private final int ttlSeconds;
+   private final ExecutorService watches;
+
+   private volatile long heldIndex;
+   private volatile long renewedAt;
+
+   public LeaseLock(KeysApi keysApi, String key, int ttlSeconds, ExecutorService watches) {
+      this(keysApi, key, UUID.randomUUID().toString(), ttlSeconds, watches);
+   }
+
+   public LeaseLock(KeysApi keysApi, String key, String owner, int ttlSeconds, ExecutorService watches) {
+      checkArgument(ttlSeconds > 0, "ttlSeconds must be positive");
+      this.keysApi = checkNotNull(keysApi, "keysApi");
+      this.key = checkNotNull(key, "key");
+      this.owner = checkNotNull(owner, "owner");
+      this.ttlSeconds = ttlSeconds;
+      this.watches = checkNotNull(watches, "watches");
+   }
+
+   public String getKey() {
+      return key;
+   }
+
+   /**
+    * The value the lock key holds while this instance owns it.
+    */
+   public String getOwner() {
+      return owner;
+   }
+
+   public int getTtlSeconds() {
+      return ttlSeconds;
+   }
+
+   /**
+    * Takes the lock if it is free.
+    *
+    * @return whether the lock was taken
+    */
+   public boolean tryLock() {
+      return acquire().succeeded();
+   }
+
+   /**
+    * Takes the lock, waiting for it to be released or to expire if needed.
+    * Waiting watches the key instead of polling it.
+    *
+    * @throws InterruptedException if the thread is interrupted while waiting
+    */
+   public void lock() throws InterruptedException {
+      CompareResult result = acquire();
+      while (!result.succeeded()) {
+         awaitChange(result.index() + 1);
+         result = acquire();
+      }
+   }
+
+   /**
+    * Extends the lease for another TTL.
+    *
+    * @return whether the lock is still held; {@code false} if it had been lost
+    */
+   public boolean renew() {
+      if (heldIndex == 0) {
+         return false;
+      }
+      long start = System.nanoTime();
+      CompareResult result = keysApi.compareAndSwap(key, owner, prevIndex(heldIndex).ttl(ttlSeconds));
+      if (result.succeeded()) {
+         held(result.index(), start);
+         return true;
+      }
+      heldIndex = 0;
+      return false;
+   }
+
+   /**
+    * Releases the lock if this instance still owns it.
+    *
+    * @return whether the lock was still held
+    */
+   public boolean unlock() {
+      long index = heldIndex;
+      if (index == 0) {
+         return false;
+      }
+      heldIndex = 0;
+      return keysApi.compareAndDelete(key, prevIndex(index)).succeeded();
+   }
+
+   /**
+    * Whether this instance owns the lock and its lease cannot have expired yet.
+    */
+   public boolean isHeld() {
+      return heldIndex != 0 && System.nanoTime() - renewedAt < TimeUnit.SECONDS.toNanos(ttlSeconds);
+   }
+
+   private CompareResult acquire() {
+      long start = System.nanoTime();
+      CompareResult result = keysApi.compareAndSwap(key, owner, prevExist(false).ttl(ttlSeconds));
+      if (result.succeeded()) {
+         held(result.index(), start);
+      }
+      return result;
+   }
+
+   /**
+    * Waits for the key to change at or after the given index. An interrupted
+    * wait leaves its watch to end on its own thread.
+    */
+   private void awaitChange(final long index) throws InterruptedException {
+      Future<?> watch = watches.submit(new Runnable() {
+         @Override
+         public void run() {
+            keysApi.watchKey(key, waitIndex(index));
+         }
+      });
+      try {
+         watch.get();
+      } catch (ExecutionException e) {
+         // The watch only saves polling; trying again tells the actual state
+      } catch (InterruptedException e) {
+         watch.cancel(true);
+         throw e;
+      }
+   }
+
+   private void held(long index, long since) {
+      // The lease started no later than the request was sent
+      renewedAt = since;
+      heldIndex = index;
+   }
+}
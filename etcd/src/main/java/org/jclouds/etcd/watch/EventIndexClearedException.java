@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.watch;
+
+/**
+ * Thrown when a watch can no longer be resumed because etcd has already
+ * discarded the events at its wait index. The consumer has to read the current
+ * state again and start a new watch from there.
+ */
+public class EventIndexClearedException extends RuntimeException {
+
+   private static final long serialVersionUID = 1L;
+
+   private final long waitIndex;
+
+   public EventIndexClearedException(long waitIndex, Throwable cause) {
+      super("Events starting at index " + waitIndex + " have been cleared", cause);
+      this.waitIndex = waitIndex;
+   }
+
+   /**
+    * The first index that could not be read.
+    */
+   public long getWaitIndex() {
+      return waitIndex;
+   }
+}
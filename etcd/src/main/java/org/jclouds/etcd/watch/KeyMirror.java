@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.watch;
+
+import static org.jclouds.etcd.options.GetKeyOptions.Builder.recursive;
+import static org.jclouds.etcd.options.WatchKeyOptions.Builder.waitIndex;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.etcd.domain.keys.Key;
+import org.jclouds.etcd.domain.keys.Node;
+import org.jclouds.etcd.features.KeysApi;
+import org.jclouds.logging.Logger;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+
+/**
+ * A local copy of the subtree under a key, kept up to date by a recursive
+ * watch.
+ * <p>
+ * The watch runs on the thread that applies the changes, so a mirror holds a
+ * single watch thread. The subtree is loaded once with a recursive read, and the changes made after
+ * it are applied in {@code modifiedIndex} order, so reads never go to the
+ * network. {@link #index()} is the index the copy reflects: a reader that has
+ * just written a key under the prefix can wait for its own write with
+ * {@link #awaitIndex(long, long, TimeUnit)}.
+ * <p>
+ * If etcd discards the changes the watch has not read yet, the subtree is
+ * loaded again and the watch restarted from there.
+ */
+public class KeyMirror implements Closeable {
+
+   private static final ImmutableSet<String> REMOVALS = ImmutableSet.of("delete", "expire", "compareAndDelete");
+
+   private static final long RELOAD_BACKOFF_MILLIS = 1000;
+
+   private final KeyWatcher watcher;
+   private final KeysApi keysApi;
+   private final String prefix;
+   private final Logger logger;
+   private final Object indexMonitor = new Object();
+
+   private volatile ConcurrentNavigableMap<String, Node> nodes = new ConcurrentSkipListMap<String, Node>();
+   private volatile long index;
+   private volatile boolean synchronize = true;
+   private volatile boolean closed;
+   private volatile WatchStream stream;
+   private Future<?> updater;
+
+   KeyMirror(KeyWatcher watcher, KeysApi keysApi, String prefix, Logger logger) {
+      this.watcher = watcher;
+      this.keysApi = keysApi;
+      this.prefix = normalize(prefix);
+      this.logger = logger;
+   }
+
+   void start(ExecutorService executor) {
+      load();
+      stream = watcher.watchInline(prefix, waitIndex(index + 1).recursive(true));
+      try {
+         updater = executor.submit(new Updater());
+      } catch (RuntimeException e) {
+         stream.close();
+         throw e;
+      }
+   }
+
+   public String getPrefix() {
+      return prefix;
+   }
+
+   /**
+    * Returns the key, or {@code null} if it does not exist. The children of a
+    * directory are not included; use {@link #list(String)} to read them.
+    */
+   public Node get(String key) {
+      return nodes.get(normalize(key));
+   }
+
+   /**
+    * Returns the value of the key, or {@code null} if it does not exist or is a
+    * directory.
+    */
+   public String getValue(String key) {
+      Node node = get(key);
+      return node == null ? null : node.value();
+   }
+
+   /**
+    * Returns all the keys under the given directory, at any depth, sorted by
+    * key.
+    */
+   public SortedMap<String, Node> list(String key) {
+      String dir = normalize(key);
+      return ImmutableSortedMap.copyOfSorted(descendants(nodes, dir));
+   }
+
+   /**
+    * The index of the last change applied to the copy.
+    */
+   public long index() {
+      return index;
+   }
+
+   /**
+    * Waits until the copy reflects the changes up to the given index.
+    *
+    * @return whether the index was reached in time
+    */
+   public boolean awaitIndex(long minIndex, long timeout, TimeUnit unit) throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      synchronized (indexMonitor) {
+         while (index < minIndex) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !synchronize) {
+               return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(indexMonitor, remaining);
+         }
+         return true;
+      }
+   }
+
+   /**
+    * Whether the copy is still being updated. It stops being updated when it
+    * is closed or the watch fails for good, and then keeps serving the last
+    * state it had.
+    */
+   public boolean isSynchronized() {
+      return synchronize;
+   }
+
+   @Override
+   public void close() {
+      closed = true;
+      stopped();
+      if (updater != null) {
+         updater.cancel(true);
+      }
+      if (stream != null) {
+         stream.close();
+      }
+   }
+
+   /**
+    * Replaces the copy with the current content of the subtree.
+    */
+   private void load() {
+      Key current = keysApi.getKey(prefix, recursive(true));
+      ConcurrentNavigableMap<String, Node> loaded = new ConcurrentSkipListMap<String, Node>();
+      long currentIndex;
+      if (current != null) {
+         add(loaded, current.node());
+         currentIndex = current.etcdIndex() != null ? current.etcdIndex() : current.node().modifiedIndex();
+      } else {
+         currentIndex = watcher.currentIndex(prefix);
+      }
+      nodes = loaded;
+      advance(currentIndex);
+   }
+
+   private void apply(Key event) {
+      Node node = event.node();
+      if (node.modifiedIndex() <= index) {
+         // Already part of the loaded state
+         return;
+      }
+      String key = normalize(node.key());
+      if (REMOVALS.contains(event.action())) {
+         nodes.remove(key);
+         descendants(nodes, key).clear();
+      } else {
+         nodes.put(key, withoutChildren(node));
+      }
+      advance(node.modifiedIndex());
+   }
+
+   private void advance(long newIndex) {
+      synchronized (indexMonitor) {
+         index = newIndex;
+         indexMonitor.notifyAll();
+      }
+   }
+
+   private void stopped() {
+      synchronized (indexMonitor) {
+         synchronize = false;
+         indexMonitor.notifyAll();
+      }
+   }
+
+   private static void add(Map<String, Node> nodes, Node node) {
+      if (node.key() != null) {
+         nodes.put(normalize(node.key()), withoutChildren(node));
+      }
+      for (Node child : node.nodes()) {
+         add(nodes, child);
+      }
+   }
+
+   private static Node withoutChildren(Node node) {
+      if (node.nodes().isEmpty()) {
+         return node;
+      }
+      return Node.create(node.createdIndex(), node.dir(), null, node.expiration(), node.key(), node.modifiedIndex(),
+            node.ttl(), node.value());
+   }
+
+   private static SortedMap<String, Node> descendants(ConcurrentNavigableMap<String, Node> nodes, String dir) {
+      String from = dir.endsWith("/") ? dir : dir + "/";
+      // '0' is the character right after '/', so this covers every key starting with "dir/"
+      String to = from.substring(0, from.length() - 1) + '0';
+      return nodes.subMap(from, to);
+   }
+
+   private static String normalize(String key) {
+      return key.startsWith("/") ? key : "/" + key;
+   }
+
+   private class Updater implements Runnable {
+
+      @Override
+      public void run() {
+         try {
+            while (!closed) {
+               try {
+                  apply(stream.take());
+               } catch (EventIndexClearedException e) {
+                  logger.debug("<< mirror of %s fell behind at index %d, reloading", prefix, e.getWaitIndex());
+                  stream.close();
+                  reload();
+               }
+            }
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         } catch (RuntimeException e) {
+            if (!closed) {
+               logger.warn(e, "<< mirror of %s stopped at index %d", prefix, index);
+            }
+         } finally {
+            stopped();
+         }
+      }
+
+      private void reload() throws InterruptedException {
+         while (!closed) {
+            try {
+               load();
+               stream = watcher.watchInline(prefix, waitIndex(index + 1).recursive(true));
+               return;
+            } catch (RuntimeException e) {
+               logger.debug("<< could not reload mirror of %s, retrying: %s", prefix, e.getMessage());
+               Thread.sleep(RELOAD_BACKOFF_MILLIS);
+            }
+         }
+      }
+   }
+}
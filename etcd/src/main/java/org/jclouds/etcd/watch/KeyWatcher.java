@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.watch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static org.jclouds.etcd.config.EtcdProperties.WATCH_BUFFER_SIZE;
+import static org.jclouds.etcd.config.EtcdProperties.WATCH_THREADS;
+
+import java.io.Closeable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Resource;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.etcd.EtcdApi;
+import org.jclouds.etcd.domain.keys.Key;
+import org.jclouds.etcd.features.KeysApi;
+import org.jclouds.etcd.options.WatchKeyOptions;
+import org.jclouds.lifecycle.Closer;
+import org.jclouds.logging.Logger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Opens {@link WatchStream}s on etcd keys.
+ * <p>
+ * Each active watch keeps one long-poll request open on its own thread, and
+ * the number of threads is bounded by
+ * {@link org.jclouds.etcd.config.EtcdProperties#WATCH_THREADS}. A long-poll
+ * that sees no change ends when the socket timeout expires, so idle watches
+ * cost two requests per timeout period: the key is read to move the watch
+ * forward before the long-poll is sent again.
+ */
+@Singleton
+public class KeyWatcher implements Closeable {
+
+   @Resource
+   protected Logger logger = Logger.NULL;
+
+   private final KeysApi keysApi;
+   private final int maxWatches;
+   private final int bufferSize;
+   private final ThreadPoolExecutor executor;
+
+   @Inject
+   KeyWatcher(EtcdApi api, @Named(WATCH_THREADS) int maxWatches, @Named(WATCH_BUFFER_SIZE) int bufferSize,
+         Closer closer) {
+      this(api.keysApi(), maxWatches, bufferSize);
+      closer.addToClose(this);
+   }
+
+   public KeyWatcher(KeysApi keysApi, int maxWatches, int bufferSize) {
+      checkArgument(maxWatches > 0, "maxWatches must be positive");
+      checkArgument(bufferSize > 0, "bufferSize must be positive");
+      this.keysApi = checkNotNull(keysApi, "keysApi");
+      this.maxWatches = maxWatches;
+      this.bufferSize = bufferSize;
+      this.executor = new ThreadPoolExecutor(0, maxWatches, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+            new ThreadFactoryBuilder().setNameFormat("etcd-watch-%d").setDaemon(true).build());
+   }
+
+   /**
+    * Watches the changes made to the key from now on.
+    */
+   public WatchStream watch(String key) {
+      return watch(key, new WatchKeyOptions());
+   }
+
+   /**
+    * Watches the changes made to the key, or to its subtree if the options are
+    * recursive. Without a wait index the stream starts after the current index
+    * of the cluster.
+    *
+    * @throws IllegalStateException if the maximum number of watches are
+    *            already active
+    */
+   public WatchStream watch(String key, WatchKeyOptions options) {
+      WatchStream stream = newStream(key, options);
+      try {
+         stream.start(executor);
+      } catch (RejectedExecutionException e) {
+         throw tooManyWatches(key, e);
+      }
+      return stream;
+   }
+
+   /**
+    * Loads the subtree under the key and keeps a local copy of it up to date.
+    * A mirror uses one watch thread, which both fetches and applies the
+    * changes.
+    *
+    * @throws IllegalStateException if the maximum number of watches are
+    *            already active
+    */
+   public KeyMirror mirror(String key) {
+      checkNotNull(key, "key");
+      KeyMirror mirror = new KeyMirror(this, keysApi, key, logger);
+      try {
+         mirror.start(executor);
+      } catch (RejectedExecutionException e) {
+         throw tooManyWatches(key, e);
+      }
+      return mirror;
+   }
+
+   /**
+    * Stops all the watches.
+    */
+   @Override
+   public void close() {
+      executor.shutdownNow();
+   }
+
+   /**
+    * Watches the key on the thread that takes the changes, without using a
+    * watch thread.
+    */
+   WatchStream watchInline(String key, WatchKeyOptions options) {
+      WatchStream stream = newStream(key, options);
+      stream.startInline();
+      return stream;
+   }
+
+   long currentIndex(String key) {
+      Key current = keysApi.getKey(key);
+      if (current == null) {
+         // The key does not exist yet; listing the root still tells the index
+         current = keysApi.getKey("");
+      }
+      checkState(current != null && current.etcdIndex() != null, "Could not read the current index of the cluster");
+      return current.etcdIndex();
+   }
+
+   private WatchStream newStream(String key, WatchKeyOptions options) {
+      checkNotNull(key, "key");
+      checkNotNull(options, "options");
+      long startIndex = options.getWaitIndex() != null ? options.getWaitIndex() : currentIndex(key) + 1;
+      return new WatchStream(keysApi, key, options.isRecursive(), startIndex, bufferSize, logger);
+   }
+
+   private IllegalStateException tooManyWatches(String key, RejectedExecutionException e) {
+      return new IllegalStateException(String.format("Cannot watch %s: %d watches are already active (see %s)", key,
+            maxWatches, WATCH_THREADS), e);
+   }
+}
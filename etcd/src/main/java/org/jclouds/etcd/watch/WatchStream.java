@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.watch;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.jclouds.etcd.options.WatchKeyOptions.Builder.waitIndex;
+import static org.jclouds.util.Throwables2.getFirstThrowableOfType;
+
+import java.io.Closeable;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import org.jclouds.etcd.domain.keys.Key;
+import org.jclouds.etcd.domain.keys.Node;
+import org.jclouds.etcd.features.KeysApi;
+import org.jclouds.etcd.options.WatchKeyOptions;
+import org.jclouds.logging.Logger;
+import org.jclouds.rest.AuthorizationException;
+
+/**
+ * A stream of the changes made to a key, or to the subtree under it.
+ * <p>
+ * Changes are fetched one long-poll at a time, each one asking for the first
+ * change after the last one received, so no change is lost when a request
+ * fails and has to be sent again. At most {@code bufferSize} changes are
+ * buffered; once the buffer is full no new request is sent until the consumer
+ * catches up.
+ * <p>
+ * A long-poll that sees no change ends when the socket timeout expires. Etcd
+ * only keeps the last 1000 events, so before the next request the key is read
+ * again and, if it has not changed, the wait index is moved to the current
+ * index of the cluster. This is not possible for recursive watches, whose
+ * reads do not show the deleted children: a recursive watch on a quiet subtree
+ * of a busy cluster can fail with an {@link EventIndexClearedException}.
+ * <p>
+ * {@link #nextIndex()} is the index after the last change handed to the
+ * consumer and can be used to resume the stream later with a new watch.
+ */
+public class WatchStream implements Closeable {
+
+   /** Marks the end of the stream in the buffer. */
+   private static final Key END = Key.create("end", Node.create(0, false, null, null, null, 0, 0, null), null);
+
+   /** Etcd answers "400 Bad Request" with this error code when the wait index is too old. */
+   private static final Pattern EVENT_INDEX_CLEARED = Pattern.compile("\"errorCode\"\\s*:\\s*401\\b");
+
+   private static final long MIN_BACKOFF_MILLIS = 100;
+   private static final long MAX_BACKOFF_MILLIS = 5000;
+
+   private final KeysApi keysApi;
+   private final String key;
+   private final boolean recursive;
+   private final BlockingQueue<Key> events;
+   private final AtomicBoolean closed = new AtomicBoolean();
+   private final Logger logger;
+
+   private volatile long nextIndex;
+   private volatile RuntimeException failure;
+   private volatile Future<?> poller;
+   private volatile Poller inline;
+
+   WatchStream(KeysApi keysApi, String key, boolean recursive, long startIndex, int bufferSize, Logger logger) {
+      this.keysApi = keysApi;
+      this.key = key;
+      this.recursive = recursive;
+      this.nextIndex = startIndex;
+      this.events = new ArrayBlockingQueue<Key>(bufferSize);
+      this.logger = logger;
+   }
+
+   void start(ExecutorService executor) {
+      poller = executor.submit(new Poller(nextIndex));
+   }
+
+   /**
+    * Fetches the changes on the thread that takes them instead of on a thread
+    * of its own. Such a stream has a single consumer and does not support
+    * {@link #poll(long, TimeUnit)}.
+    */
+   void startInline() {
+      inline = new Poller(nextIndex);
+   }
+
+   public String getKey() {
+      return key;
+   }
+
+   public boolean isRecursive() {
+      return recursive;
+   }
+
+   /**
+    * The index to resume from to get the changes after the last one returned
+    * by this stream.
+    */
+   public long nextIndex() {
+      return nextIndex;
+   }
+
+   /**
+    * Waits for the next change.
+    *
+    * @throws EventIndexClearedException if the changes after the last one
+    *            returned are no longer available in etcd
+    * @throws IllegalStateException if the stream has been closed
+    */
+   public Key take() throws InterruptedException {
+      checkState(!closed.get(), "watch on %s is closed", key);
+      if (inline != null) {
+         return consume(failure != null ? END : inline.next());
+      }
+      return consume(events.take());
+   }
+
+   /**
+    * Waits up to the given time for the next change.
+    *
+    * @return the next change, or {@code null} if there was none in time
+    * @see #take()
+    */
+   public Key poll(long timeout, TimeUnit unit) throws InterruptedException {
+      checkState(!closed.get(), "watch on %s is closed", key);
+      checkState(inline == null, "watch on %s does not support poll", key);
+      Key event = events.poll(timeout, unit);
+      return event == null ? null : consume(event);
+   }
+
+   public boolean isClosed() {
+      return closed.get();
+   }
+
+   /**
+    * Stops watching. A long-poll in progress keeps its thread until it returns
+    * or times out.
+    */
+   @Override
+   public void close() {
+      if (closed.compareAndSet(false, true)) {
+         if (poller != null) {
+            poller.cancel(true);
+         }
+         events.clear();
+         events.offer(END);
+      }
+   }
+
+   private Key consume(Key event) {
+      if (event == END) {
+         // Leave the marker for any other consumer
+         events.offer(END);
+         if (failure != null) {
+            throw failure;
+         }
+         throw new IllegalStateException(String.format("watch on %s is closed", key));
+      }
+      nextIndex = event.node().modifiedIndex() + 1;
+      return event;
+   }
+
+   private class Poller implements Runnable {
+
+      private long waitIndex;
+      private int failures;
+
+      Poller(long waitIndex) {
+         this.waitIndex = waitIndex;
+      }
+
+      @Override
+      public void run() {
+         try {
+            Key event;
+            do {
+               event = next();
+               if (event == END && closed.get()) {
+                  // close() already left the marker
+                  return;
+               }
+               // The changes already buffered are still handed out before a failure
+               events.put(event);
+            } while (event != END);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+
+      /**
+       * Waits for the next change.
+       *
+       * @return the change, or {@link WatchStream#END} if the stream is closed or failed
+       */
+      Key next() throws InterruptedException {
+         try {
+            while (!closed.get()) {
+               Key event = fetch();
+               if (event != null) {
+                  waitIndex = event.node().modifiedIndex() + 1;
+                  return event;
+               }
+            }
+         } catch (RuntimeException e) {
+            logger.warn(e, "<< watch on %s stopped at index %d", key, waitIndex);
+            failure = e;
+         }
+         return END;
+      }
+
+      /**
+       * Waits for the next change, retrying with the same wait index when the
+       * request fails for a reason that may go away.
+       *
+       * @return the change, or {@code null} if the request has to be sent again
+       */
+      private Key fetch() throws InterruptedException {
+         try {
+            WatchKeyOptions options = waitIndex(waitIndex);
+            if (recursive) {
+               options.recursive(true);
+            }
+            Key event = keysApi.watchKey(key, options);
+            failures = 0;
+            return event;
+         } catch (IllegalArgumentException e) {
+            if (e.getMessage() != null && EVENT_INDEX_CLEARED.matcher(e.getMessage()).find()) {
+               throw new EventIndexClearedException(waitIndex, e);
+            }
+            throw e;
+         } catch (AuthorizationException e) {
+            throw e;
+         } catch (RuntimeException e) {
+            if (closed.get()) {
+               return null;
+            }
+            if (getFirstThrowableOfType(e, SocketTimeoutException.class) != null) {
+               // No change in time: the request is sent again at once, as it did not fail
+               skipIdle();
+               return null;
+            }
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(failures++, 16));
+            logger.debug("<< watch on %s failed at index %d, retrying in %dms: %s", key, waitIndex, backoff,
+                  e.getMessage());
+            Thread.sleep(backoff);
+            return null;
+         }
+      }
+
+      /**
+       * Moves the wait index to the current index of the cluster if the key has
+       * not changed since the wait index. A missing key is left alone, as it may
+       * have been deleted after the wait index.
+       */
+      private void skipIdle() {
+         if (recursive) {
+            return;
+         }
+         try {
+            Key current = keysApi.getKey(key);
+            if (current != null && current.etcdIndex() != null && current.etcdIndex() >= waitIndex
+                  && current.node().modifiedIndex() < waitIndex) {
+               logger.debug("<< watch on %s idle, moving from index %d to %d", key, waitIndex,
+                     current.etcdIndex() + 1);
+               waitIndex = current.etcdIndex() + 1;
+            }
+         } catch (RuntimeException e) {
+            logger.debug("<< could not read %s to move the idle watch from index %d: %s", key, waitIndex,
+                  e.getMessage());
+         }
+      }
+   }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.async;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.etcd.EtcdApi;
+import org.jclouds.etcd.EtcdApiMetadata;
+import org.jclouds.etcd.domain.keys.Key;
+import org.jclouds.etcd.internal.BaseEtcdMockTest;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+/**
+ * Mock tests for the {@link org.jclouds.etcd.async.AsyncKeysApi} and
+ * {@link org.jclouds.etcd.async.BulkKeyWriter} classes.
+ */
+@Test(groups = "unit", testName = "BulkKeyWriterMockTest")
+public class BulkKeyWriterMockTest extends BaseEtcdMockTest {
+
+   public void testCreateKeyAsync() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-create.json")).setResponseCode(201));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+      try {
+         AsyncKeysApi api = new AsyncKeysApi(etcdApi.keysApi(), executor);
+         Key createdKey = api.createKey("hello", "world").get(5, TimeUnit.SECONDS);
+         assertTrue(createdKey.node().value().equals("world"));
+         assertSentWithFormData(server, "PUT", "/" + EtcdApiMetadata.API_VERSION + "/keys/hello", "value=world");
+      } finally {
+         executor.shutdownNow();
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testBulkWriteBoundsRequestsInFlightAndCollectsFailures() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      final AtomicInteger inFlight = new AtomicInteger();
+      final AtomicInteger maxInFlight = new AtomicInteger();
+      server.setDispatcher(new Dispatcher() {
+         @Override
+         public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            int current = inFlight.incrementAndGet();
+            try {
+               int max = maxInFlight.get();
+               while (current > max && !maxInFlight.compareAndSet(max, current)) {
+                  max = maxInFlight.get();
+               }
+               Thread.sleep(10);
+               if (request.getPath().endsWith("/bad")) {
+                  return new MockResponse().setBody("{\"errorCode\":210,\"message\":\"Invalid POST form\"}")
+                        .setResponseCode(400);
+               }
+               return new MockResponse().setBody(payloadFromResource("/keys-create.json")).setResponseCode(201);
+            } finally {
+               inFlight.decrementAndGet();
+            }
+         }
+      });
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(16));
+      try {
+         Map<String, String> keys = Maps.newLinkedHashMap();
+         for (int i = 0; i < 40; i++) {
+            keys.put("key" + i, "value" + i);
+         }
+         keys.put("bad", "value");
+
+         BulkWriteResult result = new BulkKeyWriter(new AsyncKeysApi(etcdApi.keysApi(), executor), 4).write(keys);
+         assertFalse(result.succeeded());
+         assertEquals(result.written(), 40);
+         assertEquals(result.failures().keySet().size(), 1);
+         assertTrue(result.failures().get("bad") instanceof IllegalArgumentException);
+         assertEquals(server.getRequestCount(), 41);
+         assertTrue(maxInFlight.get() <= 4, "at most 4 requests should be in flight, got " + maxInFlight.get());
+      } finally {
+         executor.shutdownNow();
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.cluster;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.Constants;
+import org.jclouds.etcd.EtcdApi;
+import org.jclouds.etcd.EtcdApiMetadata;
+import org.jclouds.etcd.internal.BaseEtcdMockTest;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+/**
+ * Mock tests for the {@link org.jclouds.etcd.cluster.EtcdCluster} class.
+ */
+@Test(groups = "unit", testName = "EtcdClusterMockTest", singleThreaded = true)
+public class EtcdClusterMockTest extends BaseEtcdMockTest {
+
+   private static final String KEYS_PATH = "/" + EtcdApiMetadata.API_VERSION + "/keys";
+   private static final int CONNECTION_TIMEOUT_MILLIS = 500;
+
+   private MockWebServer follower;
+   private MockWebServer leader;
+   private MemberDispatcher followerDispatcher;
+   private MemberDispatcher leaderDispatcher;
+   private ScheduledExecutorService scheduler;
+   private EtcdCluster cluster;
+   private volatile URI leaderURL;
+   private ServerSocket blackhole;
+   private List<Socket> backlog;
+
+   @BeforeMethod
+   public void setUp() throws Exception {
+      follower = mockEtcdJavaWebServer();
+      leader = mockEtcdJavaWebServer();
+      followerDispatcher = new MemberDispatcher();
+      leaderDispatcher = new MemberDispatcher();
+      follower.setDispatcher(followerDispatcher);
+      leader.setDispatcher(leaderDispatcher);
+      leaderURL = endpoint(leader);
+      backlog = Lists.newArrayList();
+      scheduler = Executors.newSingleThreadScheduledExecutor();
+      cluster = new EtcdCluster(new Function<URI, EtcdApi>() {
+         @Override
+         public EtcdApi apply(URI endpoint) {
+            try {
+               return api(endpoint.toURL());
+            } catch (MalformedURLException e) {
+               throw Throwables.propagate(e);
+            }
+         }
+      }, ImmutableList.of(URI.create(follower.getUrl("/").toString())), scheduler, 1, TimeUnit.HOURS);
+      cluster.start();
+   }
+
+   @AfterMethod(alwaysRun = true)
+   public void tearDown() throws Exception {
+      cluster.close();
+      scheduler.shutdownNow();
+      for (Socket socket : backlog) {
+         socket.close();
+      }
+      if (blackhole != null) {
+         blackhole.close();
+      }
+      follower.shutdown();
+      try {
+         leader.shutdown();
+      } catch (Exception e) {
+         // Already stopped by the test
+      }
+   }
+
+   public void testDiscoversMembersAndLeader() throws Exception {
+      assertEquals(cluster.getEndpoints().size(), 2);
+      assertTrue(cluster.getEndpoints().values().iterator().next());
+      assertEquals(cluster.getLeader(), endpoint(leader));
+   }
+
+   public void testSpreadsReadsAndSendsWritesToLeader() throws Exception {
+      int followerRequests = follower.getRequestCount();
+      int leaderRequests = leader.getRequestCount();
+
+      cluster.keysApi().getKey("hello");
+      cluster.keysApi().getKey("hello");
+      assertEquals(follower.getRequestCount(), followerRequests + 1);
+      assertEquals(leader.getRequestCount(), leaderRequests + 1);
+
+      cluster.keysApi().createKey("hello", "world");
+      assertEquals(follower.getRequestCount(), followerRequests + 1);
+      assertEquals(leader.getRequestCount(), leaderRequests + 2);
+   }
+
+   public void testQuorumReads() throws Exception {
+      cluster.keysApi(true).getKey("hello");
+      cluster.keysApi(true).getKey("hello");
+      assertTrue(followerDispatcher.lastPath.endsWith("/hello?quorum=true"));
+      assertTrue(leaderDispatcher.lastPath.endsWith("/hello?quorum=true"));
+   }
+
+   public void testFailsOverWhenLeaderIsDown() throws Exception {
+      leader.shutdown();
+
+      cluster.keysApi().createKey("hello", "world");
+      assertEquals(followerDispatcher.lastPath, KEYS_PATH + "/hello");
+      assertFalse(cluster.getEndpoints().get(endpoint(leader)));
+
+      cluster.keysApi().getKey("hello");
+      cluster.keysApi().getKey("hello");
+      assertEquals(followerDispatcher.lastPath, KEYS_PATH + "/hello");
+   }
+
+   public void testFailsOverWhenLeaderDoesNotAcceptConnections() throws Exception {
+      leaderURL = blackhole();
+      cluster.refresh();
+      assertEquals(cluster.getLeader(), leaderURL);
+
+      // Reads go to each member in turn, so one of the watches goes to the leader first
+      cluster.keysApi().watchKey("hello");
+      cluster.keysApi().watchKey("hello");
+      assertEquals(followerDispatcher.lastPath, KEYS_PATH + "/hello?wait=true");
+      assertFalse(cluster.getEndpoints().get(leaderURL));
+
+      followerDispatcher.lastPath = null;
+      cluster.keysApi().createKey("hello", "world");
+      assertEquals(followerDispatcher.lastPath, KEYS_PATH + "/hello");
+   }
+
+   public void testMemberClientsFailOverQuickly() {
+      Properties defaults = EtcdCluster.memberProperties(new Properties());
+      assertEquals(defaults.getProperty(Constants.PROPERTY_MAX_RETRIES), "0");
+      assertEquals(defaults.getProperty(Constants.PROPERTY_CONNECTION_TIMEOUT),
+            String.valueOf(EtcdCluster.DEFAULT_CONNECTION_TIMEOUT_MILLIS));
+
+      Properties overrides = new Properties();
+      overrides.setProperty(Constants.PROPERTY_CONNECTION_TIMEOUT, "30000");
+      Properties overridden = EtcdCluster.memberProperties(overrides);
+      assertEquals(overridden.getProperty(Constants.PROPERTY_CONNECTION_TIMEOUT), "30000");
+      assertEquals(overridden.getProperty(Constants.PROPERTY_MAX_RETRIES), "0");
+   }
+
+   @Override
+   protected Properties setupProperties() {
+      Properties properties = super.setupProperties();
+      properties.setProperty(Constants.PROPERTY_CONNECTION_TIMEOUT, String.valueOf(CONNECTION_TIMEOUT_MILLIS));
+      return properties;
+   }
+
+   /**
+    * Listens on a port whose accept queue is full, so that connections to it
+    * time out as with an unreachable host.
+    */
+   private URI blackhole() throws Exception {
+      blackhole = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+      InetSocketAddress address = new InetSocketAddress(blackhole.getInetAddress(), blackhole.getLocalPort());
+      while (backlog.size() < 16) {
+         Socket socket = new Socket();
+         try {
+            socket.connect(address, CONNECTION_TIMEOUT_MILLIS);
+         } catch (SocketTimeoutException e) {
+            socket.close();
+            return URI.create("http://127.0.0.1:" + blackhole.getLocalPort());
+         }
+         backlog.add(socket);
+      }
+      throw new SkipException("the accept queue of a server socket cannot be filled on this platform");
+   }
+
+   private static URI endpoint(MockWebServer server) {
+      String url = server.getUrl("/").toString();
+      return URI.create(url.substring(0, url.length() - 1));
+   }
+
+   private class MemberDispatcher extends Dispatcher {
+
+      private volatile String lastPath;
+
+      @Override
+      public MockResponse dispatch(RecordedRequest request) {
+         String path = request.getPath();
+         lastPath = path;
+         if (path.equals("/" + EtcdApiMetadata.API_VERSION + "/members")) {
+            return new MockResponse().setBody(String.format("{\"members\":[%s,%s]}",
+                  member("f1", endpoint(follower)), member("l1", leaderURL)));
+         } else if (path.equals("/" + EtcdApiMetadata.API_VERSION + "/stats/self")) {
+            return new MockResponse().setBody(payloadFromResource("/self.json").replace("924e2e83e93f2560", "l1"));
+         } else if (path.equals("/health")) {
+            return new MockResponse().setBody(payloadFromResource("/health.json"));
+         } else if (request.getMethod().equals("PUT")) {
+            return new MockResponse().setBody(payloadFromResource("/keys-create.json")).setResponseCode(201);
+         }
+         return new MockResponse().setBody(payloadFromResource("/keys-get.json"));
+      }
+
+      private String member(String id, URI clientURL) {
+         return String.format("{\"id\":\"%s\",\"name\":\"%s\",\"peerURLs\":[],\"clientURLs\":[\"%s\"]}", id, id,
+               clientURL);
+      }
+   }
+}
@@ -16,14 +16,20 @@
  */
 package org.jclouds.etcd.features;
 
+import static org.jclouds.etcd.options.WatchKeyOptions.Builder.recursive;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import org.jclouds.etcd.EtcdApi;
 import org.jclouds.etcd.EtcdApiMetadata;
+import org.jclouds.etcd.domain.keys.CompareResult;
 import org.jclouds.etcd.domain.keys.Key;
 import org.jclouds.etcd.internal.BaseEtcdMockTest;
+import org.jclouds.etcd.options.CompareKeyOptions;
+import org.jclouds.etcd.options.GetKeyOptions;
 import org.testng.annotations.Test;
 
 import com.squareup.okhttp.mockwebserver.MockResponse;
@@ -76,7 +82,8 @@ public class KeysApiMockTest extends BaseEtcdMockTest {
    public void testGetKey() throws Exception {
       MockWebServer server = mockEtcdJavaWebServer();
 
-      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-get.json")).setResponseCode(200));
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-get.json")).setResponseCode(200)
+            .addHeader("X-Etcd-Index", "42"));
       EtcdApi etcdApi = api(server.getUrl("/"));
       KeysApi api = etcdApi.keysApi();
       try {
@@ -84,6 +91,7 @@ public class KeysApiMockTest extends BaseEtcdMockTest {
          assertNotNull(foundKey);
          assertTrue(foundKey.node().key().equals("/hello"));
          assertTrue(foundKey.node().value().equals("world"));
+         assertEquals(foundKey.etcdIndex(), Long.valueOf(42));
          assertSent(server, "GET", "/" + EtcdApiMetadata.API_VERSION + "/keys/hello");
       } finally {
          etcdApi.close();
@@ -91,6 +99,27 @@ public class KeysApiMockTest extends BaseEtcdMockTest {
       }
    }
 
+   public void testGetKeyRecursive() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-get-recursive.json")).setResponseCode(200)
+            .addHeader("X-Etcd-Index", "50"));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeysApi api = etcdApi.keysApi();
+      try {
+         Key foundKey = api.getKey("config", GetKeyOptions.Builder.recursive(true));
+         assertNotNull(foundKey);
+         assertTrue(foundKey.node().dir());
+         assertEquals(foundKey.node().nodes().size(), 2);
+         assertEquals(foundKey.node().nodes().get(0).nodes().size(), 2);
+         assertEquals(foundKey.etcdIndex(), Long.valueOf(50));
+         assertSent(server, "GET", "/" + EtcdApiMetadata.API_VERSION + "/keys/config?recursive=true");
+      } finally {
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
    public void testGetNonExistentKey() throws Exception {
       MockWebServer server = mockEtcdJavaWebServer();
 
@@ -108,6 +137,45 @@ public class KeysApiMockTest extends BaseEtcdMockTest {
       }
    }
 
+   public void testWatchKey() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-watch.json")).setResponseCode(200)
+            .addHeader("X-Etcd-Index", "39"));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeysApi api = etcdApi.keysApi();
+      try {
+         Key changedKey = api.watchKey("hello");
+         assertNotNull(changedKey);
+         assertTrue(changedKey.action().equals("set"));
+         assertTrue(changedKey.node().modifiedIndex() == 40);
+         assertEquals(changedKey.etcdIndex(), Long.valueOf(39));
+         assertSent(server, "GET", "/" + EtcdApiMetadata.API_VERSION + "/keys/hello?wait=true");
+      } finally {
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testWatchKeyRecursiveFromIndex() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-watch-next.json")).setResponseCode(200));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeysApi api = etcdApi.keysApi();
+      try {
+         Key changedKey = api.watchKey("hello", recursive(true).waitIndex(41));
+         assertNotNull(changedKey);
+         assertTrue(changedKey.node().value().equals("again"));
+         assertTrue(changedKey.prevNode().value().equals("world"));
+         assertSent(server, "GET",
+               "/" + EtcdApiMetadata.API_VERSION + "/keys/hello?wait=true&recursive=true&waitIndex=41");
+      } finally {
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
    public void testDeleteKey() throws Exception {
       MockWebServer server = mockEtcdJavaWebServer();
 
@@ -141,4 +209,97 @@ public class KeysApiMockTest extends BaseEtcdMockTest {
          server.shutdown();
       }
    }
+
+   public void testCompareAndSwap() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-create.json")).setResponseCode(200));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeysApi api = etcdApi.keysApi();
+      try {
+         CompareResult result = api.compareAndSwap("hello", "world", CompareKeyOptions.Builder.prevValue("old"));
+         assertTrue(result.succeeded());
+         assertTrue(result.key().node().value().equals("world"));
+         assertEquals(result.index(), 40);
+         assertSentWithFormData(server, "PUT", "/" + EtcdApiMetadata.API_VERSION + "/keys/hello?prevValue=old",
+               "value=world");
+      } finally {
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testCompareAndSwapFailed() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-compare-failed.json")).setResponseCode(412));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeysApi api = etcdApi.keysApi();
+      try {
+         CompareResult result = api.compareAndSwap("hello", "world", CompareKeyOptions.Builder.prevIndex(7));
+         assertFalse(result.succeeded());
+         assertNull(result.key());
+         assertEquals(result.errorCode(), CompareResult.COMPARE_FAILED);
+         assertEquals(result.index(), 42);
+         assertSentWithFormData(server, "PUT", "/" + EtcdApiMetadata.API_VERSION + "/keys/hello?prevIndex=7",
+               "value=world");
+      } finally {
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testCompareAndSwapKeyExists() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-compare-exists.json")).setResponseCode(412));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeysApi api = etcdApi.keysApi();
+      try {
+         CompareResult result = api.compareAndSwap("lock", "owner", CompareKeyOptions.Builder.prevExist(false).ttl(10));
+         assertFalse(result.succeeded());
+         assertEquals(result.errorCode(), CompareResult.KEY_EXISTS);
+         assertSentWithFormData(server, "PUT",
+               "/" + EtcdApiMetadata.API_VERSION + "/keys/lock?prevExist=false&ttl=10", "value=owner");
+      } finally {
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testCompareAndDelete() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-delete.json")).setResponseCode(200));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeysApi api = etcdApi.keysApi();
+      try {
+         CompareResult result = api.compareAndDelete("hello", CompareKeyOptions.Builder.prevValue("world"));
+         assertTrue(result.succeeded());
+         assertTrue(result.key().prevNode().value().equals("world"));
+         assertSent(server, "DELETE", "/" + EtcdApiMetadata.API_VERSION + "/keys/hello?prevValue=world");
+      } finally {
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testCompareAndDeleteNonExistentKey() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(
+            new MockResponse().setBody(payloadFromResource("/keys-get-delete-nonexistent.json")).setResponseCode(404));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeysApi api = etcdApi.keysApi();
+      try {
+         CompareResult result = api.compareAndDelete("foo", CompareKeyOptions.Builder.prevIndex(3));
+         assertFalse(result.succeeded());
+         assertEquals(result.errorCode(), CompareResult.KEY_NOT_FOUND);
+         assertEquals(result.index(), 16);
+         assertSent(server, "DELETE", "/" + EtcdApiMetadata.API_VERSION + "/keys/foo?prevIndex=3");
+      } finally {
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
 }
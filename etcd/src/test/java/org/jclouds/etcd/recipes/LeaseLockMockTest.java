@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.recipes;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.etcd.EtcdApi;
+import org.jclouds.etcd.EtcdApiMetadata;
+import org.jclouds.etcd.internal.BaseEtcdMockTest;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+/**
+ * Mock tests for the {@link org.jclouds.etcd.recipes.LeaseLock} class.
+ */
+@Test(groups = "unit", testName = "LeaseLockMockTest")
+public class LeaseLockMockTest extends BaseEtcdMockTest {
+
+   private static final String LOCK_PATH = "/" + EtcdApiMetadata.API_VERSION + "/keys/lock";
+
+   private ExecutorService watches;
+
+   @BeforeClass
+   public void setUp() {
+      watches = Executors.newCachedThreadPool();
+   }
+
+   @AfterClass(alwaysRun = true)
+   public void tearDown() {
+      watches.shutdownNow();
+   }
+
+   public void testLockRenewUnlock() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-lock-create.json")).setResponseCode(201));
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-lock-renew.json")).setResponseCode(200));
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-lock-delete.json")).setResponseCode(200));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      try {
+         LeaseLock lock = new LeaseLock(etcdApi.keysApi(), "lock", "owner", 10);
+         assertTrue(lock.tryLock());
+         assertTrue(lock.isHeld());
+         assertTrue(lock.renew());
+         assertTrue(lock.unlock());
+         assertFalse(lock.isHeld());
+         assertSentWithFormData(server, "PUT", LOCK_PATH + "?prevExist=false&ttl=10", "value=owner");
+         assertSentWithFormData(server, "PUT", LOCK_PATH + "?prevIndex=43&ttl=10", "value=owner");
+         assertSent(server, "DELETE", LOCK_PATH + "?prevIndex=44");
+      } finally {
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testTryLockHeldByOther() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-compare-exists.json")).setResponseCode(412));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      try {
+         LeaseLock lock = new LeaseLock(etcdApi.keysApi(), "lock", "owner", 10);
+         assertFalse(lock.tryLock());
+         assertFalse(lock.isHeld());
+         assertFalse(lock.renew());
+         assertFalse(lock.unlock());
+         assertSentWithFormData(server, "PUT", LOCK_PATH + "?prevExist=false&ttl=10", "value=owner");
+      } finally {
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testLockWaitsForRelease() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-compare-exists.json")).setResponseCode(412));
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-lock-expire.json")).setResponseCode(200));
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-lock-create.json")).setResponseCode(201));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      try {
+         LeaseLock lock = new LeaseLock(etcdApi.keysApi(), "lock", "owner", 10);
+         lock.lock();
+         assertTrue(lock.isHeld());
+         assertSentWithFormData(server, "PUT", LOCK_PATH + "?prevExist=false&ttl=10", "value=owner");
+         assertSent(server, "GET", LOCK_PATH + "?wait=true&waitIndex=43");
+         assertSentWithFormData(server, "PUT", LOCK_PATH + "?prevExist=false&ttl=10", "value=owner");
+      } finally {
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   @Test(expectedExceptions = RejectedExecutionException.class)
+   public void testLockWaitsOnTheGivenExecutor() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-compare-exists.json")).setResponseCode(412));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      ExecutorService stopped = Executors.newSingleThreadExecutor();
+      stopped.shutdown();
+      try {
+         new LeaseLock(etcdApi.keysApi(), "lock", "owner", 10, stopped).lock();
+      } finally {
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testLockIsInterruptible() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-compare-exists.json")).setResponseCode(412));
+      server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      try {
+         final LeaseLock lock = new LeaseLock(etcdApi.keysApi(), "lock", "owner", 10);
+         final CountDownLatch interrupted = new CountDownLatch(1);
+         Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+               try {
+                  lock.lock();
+               } catch (InterruptedException e) {
+                  interrupted.countDown();
+               }
+            }
+         });
+         waiter.start();
+         assertSentWithFormData(server, "PUT", LOCK_PATH + "?prevExist=false&ttl=10", "value=owner");
+         assertSent(server, "GET", LOCK_PATH + "?wait=true&waitIndex=43");
+         waiter.interrupt();
+         assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+         assertFalse(lock.isHeld());
+      } finally {
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+}
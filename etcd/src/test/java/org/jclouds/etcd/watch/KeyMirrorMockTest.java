@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.watch;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.etcd.EtcdApi;
+import org.jclouds.etcd.EtcdApiMetadata;
+import org.jclouds.etcd.internal.BaseEtcdMockTest;
+import org.testng.annotations.Test;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link org.jclouds.etcd.watch.KeyMirror} class.
+ */
+@Test(groups = "unit", testName = "KeyMirrorMockTest", singleThreaded = true)
+public class KeyMirrorMockTest extends BaseEtcdMockTest {
+
+   private static final String KEYS_PATH = "/" + EtcdApiMetadata.API_VERSION + "/keys";
+
+   public void testMirrorAppliesChanges() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-get-recursive.json")).setResponseCode(200)
+            .addHeader("X-Etcd-Index", "50"));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeyWatcher watcher = new KeyWatcher(etcdApi.keysApi(), 1, 10);
+      try {
+         KeyMirror mirror = watcher.mirror("config");
+         assertEquals(mirror.index(), 50);
+         assertEquals(mirror.getValue("config/db/url"), "jdbc:h2:mem:test");
+         assertEquals(mirror.getValue("/config/name"), "app");
+         assertTrue(mirror.get("config/db").dir());
+         assertTrue(mirror.get("config/db").nodes().isEmpty());
+         assertEquals(mirror.list("config").keySet().size(), 4);
+         assertEquals(mirror.list("config/db").keySet().size(), 2);
+         assertSent(server, "GET", KEYS_PATH + "/config?recursive=true");
+
+         server.enqueue(
+               new MockResponse().setBody(payloadFromResource("/keys-watch-mirror-set.json")).setResponseCode(200));
+         assertTrue(mirror.awaitIndex(51, 5, TimeUnit.SECONDS));
+         assertEquals(mirror.getValue("config/db/url"), "jdbc:h2:file:test");
+         assertSent(server, "GET", KEYS_PATH + "/config?wait=true&waitIndex=51&recursive=true");
+
+         server.enqueue(
+               new MockResponse().setBody(payloadFromResource("/keys-watch-mirror-delete.json")).setResponseCode(200));
+         assertTrue(mirror.awaitIndex(52, 5, TimeUnit.SECONDS));
+         assertNull(mirror.get("config/db"));
+         assertNull(mirror.get("config/db/url"));
+         assertEquals(mirror.list("config").keySet().size(), 1);
+         assertEquals(mirror.getValue("config/name"), "app");
+         assertSent(server, "GET", KEYS_PATH + "/config?wait=true&waitIndex=52&recursive=true");
+
+         assertFalse(mirror.awaitIndex(53, 100, TimeUnit.MILLISECONDS));
+         mirror.close();
+         assertFalse(mirror.isSynchronized());
+      } finally {
+         watcher.close();
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testMirrorReloadsWhenIndexIsCleared() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-get-recursive.json")).setResponseCode(200)
+            .addHeader("X-Etcd-Index", "50"));
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-watch-cleared.json")).setResponseCode(400));
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-get-recursive.json")).setResponseCode(200)
+            .addHeader("X-Etcd-Index", "2010"));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeyWatcher watcher = new KeyWatcher(etcdApi.keysApi(), 1, 10);
+      try {
+         KeyMirror mirror = watcher.mirror("config");
+         assertTrue(mirror.awaitIndex(2010, 5, TimeUnit.SECONDS));
+         assertEquals(mirror.getValue("config/db/url"), "jdbc:h2:mem:test");
+         assertSent(server, "GET", KEYS_PATH + "/config?recursive=true");
+         assertSent(server, "GET", KEYS_PATH + "/config?wait=true&waitIndex=51&recursive=true");
+         assertSent(server, "GET", KEYS_PATH + "/config?recursive=true");
+         assertSent(server, "GET", KEYS_PATH + "/config?wait=true&waitIndex=2011&recursive=true");
+         mirror.close();
+      } finally {
+         watcher.close();
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+}
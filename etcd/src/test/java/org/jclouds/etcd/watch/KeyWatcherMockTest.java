@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.etcd.watch;
+
+import static org.jclouds.etcd.options.WatchKeyOptions.Builder.waitIndex;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.Constants;
+import org.jclouds.etcd.EtcdApi;
+import org.jclouds.etcd.EtcdApiMetadata;
+import org.jclouds.etcd.domain.keys.Key;
+import org.jclouds.etcd.internal.BaseEtcdMockTest;
+import org.testng.annotations.Test;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+/**
+ * Mock tests for the {@link org.jclouds.etcd.watch.KeyWatcher} class.
+ */
+@Test(groups = "unit", testName = "KeyWatcherMockTest", singleThreaded = true)
+public class KeyWatcherMockTest extends BaseEtcdMockTest {
+
+   private static final String KEYS_PATH = "/" + EtcdApiMetadata.API_VERSION + "/keys";
+
+   public void testWatchStartsAfterCurrentIndex() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-get.json")).setResponseCode(200)
+            .addHeader("X-Etcd-Index", "39"));
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-watch.json")).setResponseCode(200));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeyWatcher watcher = new KeyWatcher(etcdApi.keysApi(), 1, 10);
+      try {
+         WatchStream stream = watcher.watch("hello");
+         assertEquals(stream.nextIndex(), 40);
+         Key event = stream.take();
+         assertEquals(event.node().modifiedIndex(), 40);
+         assertEquals(stream.nextIndex(), 41);
+         assertSent(server, "GET", KEYS_PATH + "/hello");
+         assertSent(server, "GET", KEYS_PATH + "/hello?wait=true&waitIndex=40");
+         stream.close();
+      } finally {
+         watcher.close();
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testWatchResumesFromLastIndexAfterFailure() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-watch.json")).setResponseCode(200));
+      server.enqueue(new MockResponse().setResponseCode(500));
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-watch-next.json")).setResponseCode(200));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeyWatcher watcher = new KeyWatcher(etcdApi.keysApi(), 1, 10);
+      try {
+         WatchStream stream = watcher.watch("hello", waitIndex(40));
+         assertEquals(stream.take().node().modifiedIndex(), 40);
+         assertEquals(stream.take().node().modifiedIndex(), 41);
+         assertSent(server, "GET", KEYS_PATH + "/hello?wait=true&waitIndex=40");
+         assertSent(server, "GET", KEYS_PATH + "/hello?wait=true&waitIndex=41");
+         assertSent(server, "GET", KEYS_PATH + "/hello?wait=true&waitIndex=41");
+         stream.close();
+      } finally {
+         watcher.close();
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testWatchFailsWhenIndexIsCleared() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-watch.json")).setResponseCode(200));
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-watch-cleared.json")).setResponseCode(400));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeyWatcher watcher = new KeyWatcher(etcdApi.keysApi(), 1, 10);
+      try {
+         WatchStream stream = watcher.watch("hello", waitIndex(40));
+         assertEquals(stream.take().node().modifiedIndex(), 40);
+         try {
+            stream.take();
+            fail("Expected the watch to fail");
+         } catch (EventIndexClearedException e) {
+            assertEquals(e.getWaitIndex(), 41);
+         }
+         assertEquals(stream.nextIndex(), 41);
+      } finally {
+         watcher.close();
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testIdleWatchMovesToCurrentIndex() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-get.json")).setResponseCode(200)
+            .addHeader("X-Etcd-Index", "1500"));
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-watch.json")).setResponseCode(200));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeyWatcher watcher = new KeyWatcher(etcdApi.keysApi(), 1, 10);
+      try {
+         WatchStream stream = watcher.watch("hello", waitIndex(40));
+         assertEquals(stream.take().node().modifiedIndex(), 40);
+         assertSent(server, "GET", KEYS_PATH + "/hello?wait=true&waitIndex=40");
+         assertSent(server, "GET", KEYS_PATH + "/hello");
+         assertSent(server, "GET", KEYS_PATH + "/hello?wait=true&waitIndex=1501");
+         stream.close();
+      } finally {
+         watcher.close();
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testIdleWatchKeepsIndexWhenKeyChanged() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-get.json")).setResponseCode(200)
+            .addHeader("X-Etcd-Index", "1500"));
+      server.enqueue(new MockResponse().setBody(payloadFromResource("/keys-watch.json")).setResponseCode(200));
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeyWatcher watcher = new KeyWatcher(etcdApi.keysApi(), 1, 10);
+      try {
+         // The key was modified at index 39, which the watch has not seen yet
+         WatchStream stream = watcher.watch("hello", waitIndex(39));
+         assertEquals(stream.take().node().modifiedIndex(), 40);
+         assertSent(server, "GET", KEYS_PATH + "/hello?wait=true&waitIndex=39");
+         assertSent(server, "GET", KEYS_PATH + "/hello");
+         assertSent(server, "GET", KEYS_PATH + "/hello?wait=true&waitIndex=39");
+         stream.close();
+      } finally {
+         watcher.close();
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   public void testWatchPollTimesOut() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeyWatcher watcher = new KeyWatcher(etcdApi.keysApi(), 1, 10);
+      try {
+         WatchStream stream = watcher.watch("hello", waitIndex(40));
+         assertNull(stream.poll(100, TimeUnit.MILLISECONDS));
+         stream.close();
+         assertTrue(stream.isClosed());
+      } finally {
+         watcher.close();
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   @Test(expectedExceptions = IllegalStateException.class)
+   public void testTooManyWatches() throws Exception {
+      MockWebServer server = mockEtcdJavaWebServer();
+
+      EtcdApi etcdApi = api(server.getUrl("/"));
+      KeyWatcher watcher = new KeyWatcher(etcdApi.keysApi(), 1, 10);
+      try {
+         watcher.watch("hello", waitIndex(40));
+         watcher.watch("world", waitIndex(40));
+      } finally {
+         watcher.close();
+         etcdApi.close();
+         server.shutdown();
+      }
+   }
+
+   @Override
+   protected Properties setupProperties() {
+      Properties properties = super.setupProperties();
+      // Short enough for the idle watch tests to time out quickly
+      properties.setProperty(Constants.PROPERTY_SO_TIMEOUT, "500");
+      return properties;
+   }
+}
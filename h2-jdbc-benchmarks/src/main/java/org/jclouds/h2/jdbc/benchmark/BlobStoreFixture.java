@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.h2.jdbc.benchmark;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.jdbc.reference.JdbcConstants;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+
+/**
+ * A blobstore of the h2-jdbc provider backed by a fresh H2 database, either
+ * in memory or in a temporary directory, with the given chunk settings.
+ */
+public final class BlobStoreFixture implements Closeable {
+
+   public static final String IN_MEMORY = "mem";
+   public static final String FILE = "file";
+
+   private static final int BLOCK_SIZE = 1024 * 1024;
+   private static final AtomicInteger DATABASES = new AtomicInteger();
+
+   private final BlobStoreContext context;
+   private final File directory;
+   private final byte[] block;
+
+   private BlobStoreFixture(BlobStoreContext context, File directory) {
+      this.context = context;
+      this.directory = directory;
+      this.block = new byte[BLOCK_SIZE];
+      new Random(0).nextBytes(block);
+   }
+
+   public static BlobStoreFixture create(String storage, int chunkSize) {
+      return create(storage, chunkSize, false);
+   }
+
+   /**
+    * @param storage {@link #IN_MEMORY} or {@link #FILE}
+    * @param chunkSize the size of the chunks blobs are split into
+    * @param adaptiveChunkSize whether the chunk size adapts to the size of each blob
+    */
+   public static BlobStoreFixture create(String storage, int chunkSize, boolean adaptiveChunkSize) {
+      File directory = null;
+      String url;
+      if (IN_MEMORY.equals(storage)) {
+         // The database lives as long as the connection pool keeps a connection open
+         url = "jdbc:h2:mem:jclouds-benchmark-" + DATABASES.incrementAndGet();
+      } else if (FILE.equals(storage)) {
+         directory = Files.createTempDir();
+         url = "jdbc:h2:" + new File(directory, "jclouds-db").getAbsolutePath();
+      } else {
+         throw new IllegalArgumentException("Unknown storage: " + storage);
+      }
+
+      Properties overrides = new Properties();
+      overrides.setProperty(JdbcConstants.PROPERTY_DATASOURCE_URL, url);
+      // Keep background collection passes out of the measurements
+      overrides.setProperty(JdbcConstants.PROPERTY_GC_INTERVAL, "0");
+      overrides.setProperty(JdbcConstants.PROPERTY_CHUNK_SIZE, String.valueOf(chunkSize));
+      overrides.setProperty(JdbcConstants.PROPERTY_ADAPTIVE_CHUNK_SIZE, String.valueOf(adaptiveChunkSize));
+      BlobStoreContext context = ContextBuilder.newBuilder("h2-jdbc")
+            .overrides(overrides)
+            .buildView(BlobStoreContext.class);
+      return new BlobStoreFixture(context, directory);
+   }
+
+   public BlobStore getBlobStore() {
+      return context.getBlobStore();
+   }
+
+   /**
+    * @return a blob of the given size whose content is generated while it is
+    *         read, so even the largest blobs do not have to fit in the heap
+    */
+   public Blob newBlob(String name, long size) {
+      ByteSource repeated = ByteSource.concat(Collections.nCopies((int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE),
+            ByteSource.wrap(block)));
+      return getBlobStore().blobBuilder(name)
+            .payload(repeated.slice(0, size))
+            .contentLength(size)
+            .build();
+   }
+
+   @Override
+   public void close() throws IOException {
+      context.close();
+      if (directory != null) {
+         deleteRecursively(directory);
+      }
+   }
+
+   private static void deleteRecursively(File file) {
+      File[] children = file.listFiles();
+      if (children != null) {
+         for (File child : children) {
+            deleteRecursively(child);
+         }
+      }
+      file.delete();
+   }
+
+}
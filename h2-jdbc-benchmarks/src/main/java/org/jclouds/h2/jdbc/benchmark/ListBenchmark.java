@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.h2.jdbc.benchmark;
+
+import static org.jclouds.blobstore.options.ListContainerOptions.Builder.afterMarker;
+import static org.jclouds.blobstore.options.ListContainerOptions.Builder.inDirectory;
+import static org.jclouds.blobstore.options.ListContainerOptions.Builder.recursive;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.PageSet;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Listing latency against the number of blobs in the container and the depth
+ * of the directory tree they are spread over, ten directories per level.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListBenchmark {
+
+   private static final String CONTAINER = "benchmark";
+   private static final int FANOUT = 10;
+
+   @Param({ BlobStoreFixture.IN_MEMORY, BlobStoreFixture.FILE })
+   public String storage;
+
+   @Param({ "100", "1000", "10000" })
+   public int blobCount;
+
+   @Param({ "0", "1", "4" })
+   public int depth;
+
+   private BlobStoreFixture fixture;
+   private BlobStore blobStore;
+   private ListContainerOptions deepestDirectory;
+
+   @Setup(Level.Trial)
+   public void setUp() {
+      fixture = BlobStoreFixture.create(storage, 1024 * 1024);
+      blobStore = fixture.getBlobStore();
+      blobStore.createContainerInLocation(null, CONTAINER);
+      for (int i = 0; i < blobCount; i++) {
+         blobStore.putBlob(CONTAINER, fixture.newBlob(directory(i) + "blob-" + i, 1));
+      }
+      String directory = directory(0);
+      deepestDirectory = directory.isEmpty() ? ListContainerOptions.NONE
+            : inDirectory(directory.substring(0, directory.length() - 1));
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws IOException {
+      fixture.close();
+   }
+
+   /** Lists the top level, where deeper blobs are folded into common prefixes. */
+   @Benchmark
+   public int listTopLevel() {
+      return blobStore.list(CONTAINER).size();
+   }
+
+   @Benchmark
+   public int listDeepestDirectory() {
+      return blobStore.list(CONTAINER, deepestDirectory).size();
+   }
+
+   @Benchmark
+   public int listFirstPageRecursive() {
+      return blobStore.list(CONTAINER, recursive()).size();
+   }
+
+   /** Pages through the whole container. */
+   @Benchmark
+   public int listAllRecursive() {
+      int count = 0;
+      PageSet<? extends StorageMetadata> page = blobStore.list(CONTAINER, recursive());
+      count += page.size();
+      while (page.getNextMarker() != null) {
+         page = blobStore.list(CONTAINER, afterMarker(page.getNextMarker()).recursive());
+         count += page.size();
+      }
+      return count;
+   }
+
+   private String directory(int blob) {
+      StringBuilder directory = new StringBuilder();
+      int n = blob;
+      for (int level = 0; level < depth; level++) {
+         directory.append("dir").append(n % FANOUT).append('/');
+         n /= FANOUT;
+      }
+      return directory.toString();
+   }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.h2.jdbc.benchmark;
+
+import static org.jclouds.blobstore.options.ListContainerOptions.Builder.recursive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Concurrent mixed workload on one blobstore: readers fetch preloaded blobs
+ * while writers, a deleter and a lister work on the same container. Writers
+ * create new keys which the deleter removes afterwards, so no two threads
+ * ever update the same blob at the same time.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MixedWorkloadBenchmark {
+
+   private static final String CONTAINER = "benchmark";
+   private static final int PRELOADED_BLOBS = 1000;
+
+   @Param({ BlobStoreFixture.IN_MEMORY, BlobStoreFixture.FILE })
+   public String storage;
+
+   @Param({ "4096", "262144" })
+   public long blobSize;
+
+   private final AtomicLong churned = new AtomicLong();
+   private final Queue<String> toDelete = new ConcurrentLinkedQueue<String>();
+   private BlobStoreFixture fixture;
+   private BlobStore blobStore;
+
+   @State(Scope.Thread)
+   public static class Keys {
+      private final Random random = new Random();
+
+      String preloaded() {
+         return "data/blob-" + random.nextInt(PRELOADED_BLOBS);
+      }
+   }
+
+   @Setup(Level.Trial)
+   public void setUp() {
+      fixture = BlobStoreFixture.create(storage, 1024 * 1024);
+      blobStore = fixture.getBlobStore();
+      blobStore.createContainerInLocation(null, CONTAINER);
+      for (int i = 0; i < PRELOADED_BLOBS; i++) {
+         blobStore.putBlob(CONTAINER, fixture.newBlob("data/blob-" + i, blobSize));
+      }
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws IOException {
+      fixture.close();
+   }
+
+   @Benchmark
+   @Group("mixed")
+   @GroupThreads(4)
+   public long get(Keys keys) throws IOException {
+      Blob blob = blobStore.getBlob(CONTAINER, keys.preloaded());
+      InputStream is = blob.getPayload().openStream();
+      try {
+         return ByteStreams.copy(is, ByteStreams.nullOutputStream());
+      } finally {
+         is.close();
+      }
+   }
+
+   @Benchmark
+   @Group("mixed")
+   @GroupThreads(2)
+   public String put() {
+      String key = "churn/blob-" + churned.incrementAndGet();
+      String etag = blobStore.putBlob(CONTAINER, fixture.newBlob(key, blobSize));
+      toDelete.add(key);
+      return etag;
+   }
+
+   @Benchmark
+   @Group("mixed")
+   @GroupThreads(1)
+   public boolean delete() {
+      String key = toDelete.poll();
+      if (key == null) {
+         return false;
+      }
+      blobStore.removeBlob(CONTAINER, key);
+      return true;
+   }
+
+   @Benchmark
+   @Group("mixed")
+   @GroupThreads(1)
+   public int list() {
+      return blobStore.list(CONTAINER, recursive()).size();
+   }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.h2.jdbc.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Put and get throughput of single blobs across blob sizes and chunk sizes.
+ * Each put overwrites the same blob, so the database does not grow during a
+ * run and every put also releases the chunks of the previous one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PutGetBenchmark {
+
+   private static final String CONTAINER = "benchmark";
+   private static final String PUT_BLOB = "put-blob";
+   private static final String GET_BLOB = "get-blob";
+
+   @Param({ BlobStoreFixture.IN_MEMORY, BlobStoreFixture.FILE })
+   public String storage;
+
+   @Param({ "1024", "1048576", "67108864", "1073741824" })
+   public long blobSize;
+
+   @Param({ "262144", "1048576", "4194304" })
+   public int chunkSize;
+
+   /** Lets large blobs use larger chunks and small ones be stored inline. */
+   @Param({ "false", "true" })
+   public boolean adaptiveChunkSize;
+
+   private BlobStoreFixture fixture;
+   private BlobStore blobStore;
+
+   @Setup(Level.Trial)
+   public void setUp() {
+      fixture = BlobStoreFixture.create(storage, chunkSize, adaptiveChunkSize);
+      blobStore = fixture.getBlobStore();
+      blobStore.createContainerInLocation(null, CONTAINER);
+      blobStore.putBlob(CONTAINER, fixture.newBlob(GET_BLOB, blobSize));
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws IOException {
+      fixture.close();
+   }
+
+   @Benchmark
+   public String put() {
+      return blobStore.putBlob(CONTAINER, fixture.newBlob(PUT_BLOB, blobSize));
+   }
+
+   @Benchmark
+   public long get() throws IOException {
+      Blob blob = blobStore.getBlob(CONTAINER, GET_BLOB);
+      InputStream is = blob.getPayload().openStream();
+      try {
+         return ByteStreams.copy(is, ByteStreams.nullOutputStream());
+      } finally {
+         is.close();
+      }
+   }
+
+}
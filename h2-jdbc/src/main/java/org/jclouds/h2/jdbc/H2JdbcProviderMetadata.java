@@ -16,6 +16,12 @@
  */
 package org.jclouds.h2.jdbc;
 
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_DATASOURCE_DRIVER;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_DATASOURCE_URL;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_DATASOURCE_USER;
+
+import java.util.Properties;
+
 import org.jclouds.h2.jdbc.config.H2JdbcBlobStoreContextModule;
 import org.jclouds.jdbc.JdbcApiMetadata;
 import org.jclouds.providers.ProviderMetadata;
@@ -43,6 +49,14 @@ public class H2JdbcProviderMetadata extends BaseProviderMetadata {
       super(builder);
    }
 
+   public static Properties defaultProperties() {
+      Properties properties = JdbcApiMetadata.defaultProperties();
+      properties.setProperty(PROPERTY_DATASOURCE_URL, H2JdbcBlobStoreContextModule.DEFAULT_URL);
+      properties.setProperty(PROPERTY_DATASOURCE_DRIVER, "org.h2.Driver");
+      properties.setProperty(PROPERTY_DATASOURCE_USER, "sa");
+      return properties;
+   }
+
    public static class Builder extends BaseProviderMetadata.Builder {
       protected Builder() {
          id("h2-jdbc")
@@ -50,7 +64,8 @@ public class H2JdbcProviderMetadata extends BaseProviderMetadata {
                .apiMetadata(new JdbcApiMetadata()
                      .toBuilder()
                      .defaultModule(H2JdbcBlobStoreContextModule.class)
-                     .build());
+                     .build())
+               .defaultProperties(H2JdbcProviderMetadata.defaultProperties());
       }
 
       @Override
@@ -19,20 +19,20 @@ package org.jclouds.h2.jdbc.config;
 import java.util.Properties;
 
 import org.jclouds.jdbc.config.JdbcBlobStoreContextModule;
-
-import com.google.inject.persist.jpa.JpaPersistModule;
+import org.jclouds.jdbc.config.JdbcPersistModule;
 
 public class H2JdbcBlobStoreContextModule extends JdbcBlobStoreContextModule {
 
-   private static final String DEFAULT_FILE = "./jclouds-db";
+   public static final String DEFAULT_URL = "jdbc:h2:./jclouds-db";
 
    protected void configure() {
       super.configure();
 
       Properties properties = new Properties();
-      properties.setProperty("hibernate.connection.url", "jdbc:h2:" + DEFAULT_FILE);
+      // Only used when the connection pool is disabled by clearing jclouds.jdbc.datasource.url
+      properties.setProperty("hibernate.connection.url", DEFAULT_URL);
 
-      install(new JpaPersistModule("jclouds-h2").properties(properties));
+      install(new JdbcPersistModule("jclouds-h2", properties));
    }
 
 }
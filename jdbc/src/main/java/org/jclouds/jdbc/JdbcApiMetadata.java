@@ -25,6 +25,37 @@ import org.jclouds.blobstore.BlobStoreContext;
 import org.jclouds.jdbc.config.JdbcBlobStoreContextModule;
 
 import java.net.URI;
+import java.util.Properties;
+
+import static org.jclouds.jdbc.reference.JdbcConstants.DEFAULT_CHUNK_SIZE;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_ADAPTIVE_CHUNK_SIZE;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_BUFFER_POOL_SIZE;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_CACHE_DIRECTORY;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_CACHE_SIZE;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_CHUNK_FLUSH_INTERVAL;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_CHUNK_SIZE;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_CHUNK_STORE;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_COMPRESSION;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_CONTAINER_CACHE_SIZE;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_DATASOURCE_DRIVER;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_DATASOURCE_PASSWORD;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_DATASOURCE_URL;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_DATASOURCE_USER;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_DEDUPLICATION;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_GC_BATCHES_PER_SECOND;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_GC_BATCH_SIZE;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_GC_INTERVAL;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_INLINE_THRESHOLD;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_METRICS;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_METRICS_JMX;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_MULTIPART_PARALLELISM;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_POOL_LEAK_DETECTION_TIMEOUT;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_POOL_MAX_SIZE;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_POOL_MAX_WAIT;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_POOL_MIN_IDLE;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_POOL_STATEMENT_CACHE_SIZE;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_READ_AHEAD_CHUNKS;
+import static org.jclouds.jdbc.reference.JdbcConstants.PROPERTY_UPLOAD_PIPELINE_DEPTH;
 
 /**
  * Implementation of {@link ApiMetadata} for jclouds Jdbc BlobStore
@@ -45,6 +76,39 @@ public class JdbcApiMetadata extends BaseApiMetadata {
       super(builder);
    }
 
+   public static Properties defaultProperties() {
+      Properties properties = BaseApiMetadata.defaultProperties();
+      properties.setProperty(PROPERTY_READ_AHEAD_CHUNKS, "2");
+      properties.setProperty(PROPERTY_CHUNK_FLUSH_INTERVAL, "8");
+      properties.setProperty(PROPERTY_UPLOAD_PIPELINE_DEPTH, "4");
+      properties.setProperty(PROPERTY_BUFFER_POOL_SIZE, String.valueOf(16 * DEFAULT_CHUNK_SIZE));
+      properties.setProperty(PROPERTY_MULTIPART_PARALLELISM, "8");
+      properties.setProperty(PROPERTY_DEDUPLICATION, "false");
+      properties.setProperty(PROPERTY_CONTAINER_CACHE_SIZE, "1000");
+      properties.setProperty(PROPERTY_COMPRESSION, "NONE");
+      properties.setProperty(PROPERTY_CHUNK_SIZE, String.valueOf(DEFAULT_CHUNK_SIZE));
+      properties.setProperty(PROPERTY_ADAPTIVE_CHUNK_SIZE, "false");
+      properties.setProperty(PROPERTY_INLINE_THRESHOLD, "4096");
+      properties.setProperty(PROPERTY_CHUNK_STORE, "jpa");
+      properties.setProperty(PROPERTY_DATASOURCE_URL, "");
+      properties.setProperty(PROPERTY_DATASOURCE_DRIVER, "");
+      properties.setProperty(PROPERTY_DATASOURCE_USER, "");
+      properties.setProperty(PROPERTY_DATASOURCE_PASSWORD, "");
+      properties.setProperty(PROPERTY_POOL_MAX_SIZE, "20");
+      properties.setProperty(PROPERTY_POOL_MIN_IDLE, "2");
+      properties.setProperty(PROPERTY_POOL_MAX_WAIT, "30000");
+      properties.setProperty(PROPERTY_POOL_STATEMENT_CACHE_SIZE, "64");
+      properties.setProperty(PROPERTY_POOL_LEAK_DETECTION_TIMEOUT, "300");
+      properties.setProperty(PROPERTY_GC_INTERVAL, "3600");
+      properties.setProperty(PROPERTY_GC_BATCH_SIZE, "500");
+      properties.setProperty(PROPERTY_GC_BATCHES_PER_SECOND, "10");
+      properties.setProperty(PROPERTY_CACHE_DIRECTORY, "");
+      properties.setProperty(PROPERTY_CACHE_SIZE, String.valueOf(256L * 1024 * 1024));
+      properties.setProperty(PROPERTY_METRICS, "none");
+      properties.setProperty(PROPERTY_METRICS_JMX, "true");
+      return properties;
+   }
+
    public static class Builder extends BaseApiMetadata.Builder<Builder> {
 
       protected Builder() {
@@ -58,6 +122,7 @@ public class JdbcApiMetadata extends BaseApiMetadata {
          .version("1")
          .documentation(URI.create("http://www.jclouds.org/documentation/userguide/blobstore-guide"))
          .view(BlobStoreContext.class)
+         .defaultProperties(JdbcApiMetadata.defaultProperties())
          .defaultModules(ImmutableSet.<Class<? extends Module>>of(JdbcBlobStoreContextModule.class));
       }
 
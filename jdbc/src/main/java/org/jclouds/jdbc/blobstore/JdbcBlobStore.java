@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.blobstore;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.jclouds.Constants;
+import org.jclouds.blobstore.ContainerNotFoundException;
+import org.jclouds.blobstore.config.LocalBlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.blobstore.domain.PageSet;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.options.CopyOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.jclouds.blobstore.options.PutOptions;
+import org.jclouds.blobstore.strategy.internal.MultipartUploadSlicingAlgorithm;
+import org.jclouds.blobstore.util.ForwardingBlobStore;
+import org.jclouds.io.Payload;
+import org.jclouds.io.PayloadSlicer;
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.jclouds.jdbc.strategy.JdbcStorageStrategy;
+
+import javax.inject.Named;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.propagate;
+
+/**
+ * Blob store backed by a database. Most operations are served by
+ * {@link LocalBlobStore}; the ones it implements by loading every blob in a
+ * container are answered with queries instead. Multipart uploads and copies
+ * are stored natively on the chunk model.
+ */
+@Singleton
+public class JdbcBlobStore extends ForwardingBlobStore {
+
+   private static final long MAXIMUM_MULTIPART_PART_SIZE = 5L * 1024 * 1024 * 1024;
+   private static final int MAXIMUM_NUMBER_OF_PARTS = 10 * 1000;
+
+   private final JdbcStorageStrategy storageStrategy;
+   private final PayloadSlicer slicer;
+   private final ListeningExecutorService userExecutor;
+   private final int defaultChunkSize;
+   // Shared by all uploads, so concurrent uploads cannot exhaust the connection pool
+   private final Semaphore partPermits;
+
+   @Inject
+   JdbcBlobStore(LocalBlobStore localBlobStore, JdbcStorageStrategy storageStrategy, PayloadSlicer slicer,
+         @Named(Constants.PROPERTY_USER_THREADS) ListeningExecutorService userExecutor,
+         @Named(JdbcConstants.PROPERTY_CHUNK_SIZE) int defaultChunkSize,
+         @Named(JdbcConstants.PROPERTY_MULTIPART_PARALLELISM) int multipartParallelism) {
+      super(localBlobStore);
+      this.storageStrategy = storageStrategy;
+      this.slicer = slicer;
+      this.userExecutor = userExecutor;
+      this.defaultChunkSize = defaultChunkSize;
+      this.partPermits = new Semaphore(Math.max(1, multipartParallelism));
+   }
+
+   @Override
+   public String putBlob(String container, Blob blob, PutOptions options) {
+      if (options.isMultipart()) {
+         return putMultipartBlob(container, blob, options);
+      }
+      return delegate().putBlob(container, blob, options);
+   }
+
+   @Override
+   public PageSet<? extends StorageMetadata> list(String container) {
+      return list(container, ListContainerOptions.NONE);
+   }
+
+   @Override
+   public PageSet<? extends StorageMetadata> list(String container, ListContainerOptions options) {
+      if (!storageStrategy.containerExists(container)) {
+         throw new ContainerNotFoundException(container, null);
+      }
+      return storageStrategy.list(container, options);
+   }
+
+   @Override
+   public long countBlobs(String container) {
+      return countBlobs(container, ListContainerOptions.NONE);
+   }
+
+   @Override
+   public long countBlobs(String container, ListContainerOptions options) {
+      return storageStrategy.countBlobs(container, options);
+   }
+
+   @Override
+   public void removeBlobs(String container, Iterable<String> names) {
+      storageStrategy.removeBlobs(container, names);
+   }
+
+   @Override
+   public String copyBlob(String fromContainer, String fromName, String toContainer, String toName,
+         CopyOptions options) {
+      if (options.ifMatch() != null || options.ifNoneMatch() != null || options.ifModifiedSince() != null
+            || options.ifUnmodifiedSince() != null) {
+         // LocalBlobStore checks the preconditions and copies the content
+         return delegate().copyBlob(fromContainer, fromName, toContainer, toName, options);
+      }
+      if (!storageStrategy.containerExists(fromContainer)) {
+         throw new ContainerNotFoundException(fromContainer, null);
+      }
+      if (!storageStrategy.containerExists(toContainer)) {
+         throw new ContainerNotFoundException(toContainer, null);
+      }
+      return storageStrategy.copyBlob(fromContainer, fromName, toContainer, toName, options);
+   }
+
+   @Override
+   public MultipartUpload initiateMultipartUpload(String container, BlobMetadata blobMetadata, PutOptions options) {
+      if (!storageStrategy.containerExists(container)) {
+         throw new ContainerNotFoundException(container, null);
+      }
+      return storageStrategy.initiateMultipartUpload(container, blobMetadata, options);
+   }
+
+   @Override
+   public void abortMultipartUpload(MultipartUpload mpu) {
+      storageStrategy.abortMultipartUpload(mpu);
+   }
+
+   @Override
+   public String completeMultipartUpload(MultipartUpload mpu, List<MultipartPart> parts) {
+      return storageStrategy.completeMultipartUpload(mpu, parts);
+   }
+
+   @Override
+   public MultipartPart uploadMultipartPart(MultipartUpload mpu, int partNumber, Payload payload) {
+      try {
+         return storageStrategy.uploadMultipartPart(mpu, partNumber, payload);
+      } catch (IOException e) {
+         throw propagate(e);
+      }
+   }
+
+   @Override
+   public List<MultipartPart> listMultipartUpload(MultipartUpload mpu) {
+      return storageStrategy.listMultipartUpload(mpu);
+   }
+
+   @Override
+   public List<MultipartUpload> listMultipartUploads(String container) {
+      return storageStrategy.listMultipartUploads(container);
+   }
+
+   /**
+    * @return the configured default chunk size; multipart puts use the chunk size of their container
+    */
+   @Override
+   public long getMinimumMultipartPartSize() {
+      return defaultChunkSize;
+   }
+
+   @Override
+   public long getMaximumMultipartPartSize() {
+      return MAXIMUM_MULTIPART_PART_SIZE;
+   }
+
+   @Override
+   public int getMaximumNumberOfParts() {
+      return MAXIMUM_NUMBER_OF_PARTS;
+   }
+
+   /**
+    * Uploads a blob as a multipart upload, in parts of at least the chunk size
+    * of the container. The parts of a repeatable payload are stored
+    * concurrently, each in its own transaction, with at most
+    * {@link JdbcConstants#PROPERTY_MULTIPART_PARALLELISM} parts in flight.
+    */
+   private String putMultipartBlob(String container, Blob blob, PutOptions options) {
+      final MultipartUpload mpu = initiateMultipartUpload(container, blob.getMetadata(), options);
+      try {
+         long contentLength = checkNotNull(blob.getMetadata().getContentMetadata().getContentLength(),
+               "must provide content-length to use multi-part upload");
+         MultipartUploadSlicingAlgorithm algorithm = new MultipartUploadSlicingAlgorithm(
+               storageStrategy.getChunkSize(container), getMaximumMultipartPartSize(), getMaximumNumberOfParts());
+         long partSize = algorithm.calculateChunkSize(contentLength);
+         Payload payload = blob.getPayload();
+
+         List<MultipartPart> parts = Lists.newArrayList();
+         if (!payload.isRepeatable()) {
+            // The slices of a stream have to be read one after the other
+            int partNumber = 1;
+            for (Payload part : slicer.slice(payload, partSize)) {
+               parts.add(uploadMultipartPart(mpu, partNumber++, part));
+            }
+            return completeMultipartUpload(mpu, parts);
+         }
+
+         List<ListenableFuture<MultipartPart>> futures = Lists.newArrayList();
+         try {
+            int partNumber = 1;
+            for (final Payload part : slicer.slice(payload, partSize)) {
+               final int number = partNumber++;
+               partPermits.acquireUninterruptibly();
+               try {
+                  futures.add(userExecutor.submit(new Callable<MultipartPart>() {
+                     @Override
+                     public MultipartPart call() {
+                        try {
+                           return uploadMultipartPart(mpu, number, part);
+                        } finally {
+                           partPermits.release();
+                        }
+                     }
+                  }));
+               } catch (RuntimeException e) {
+                  partPermits.release();
+                  throw e;
+               }
+            }
+         } finally {
+            // Wait for every part, so none is still being written if the upload is aborted
+            Futures.getUnchecked(Futures.successfulAsList(futures));
+         }
+         parts.addAll(Futures.getUnchecked(Futures.allAsList(futures)));
+         return completeMultipartUpload(mpu, parts);
+      } catch (RuntimeException e) {
+         abortMultipartUpload(mpu);
+         throw e;
+      }
+   }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.config;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Resource;
+import javax.inject.Named;
+
+import org.jclouds.blobstore.reference.BlobStoreConstants;
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.jclouds.jdbc.service.ChunkGarbageCollector;
+import org.jclouds.lifecycle.Closer;
+import org.jclouds.logging.Logger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+
+/**
+ * Runs the chunk garbage collector periodically on a background thread.
+ */
+public class ChunkGarbageCollectorScheduler {
+
+   @Resource
+   @Named(BlobStoreConstants.BLOBSTORE_LOGGER)
+   protected Logger logger = Logger.NULL;
+
+   // Depends on the JPA initializer so the collector is stopped before the persistence service
+   @Inject
+   private ChunkGarbageCollectorScheduler(JPAInitializer jpaInitializer, final ChunkGarbageCollector collector,
+         @Named(JdbcConstants.PROPERTY_GC_INTERVAL) long interval, Closer closer) {
+      if (interval <= 0) {
+         return;
+      }
+      final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("jclouds-jdbc-gc-%d").setDaemon(true).build());
+      executor.scheduleWithFixedDelay(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               long reclaimed = collector.collect();
+               logger.debug("Chunk garbage collection reclaimed %d bytes", reclaimed);
+            } catch (RuntimeException e) {
+               // Thrown out of the task, it would cancel the next runs
+               logger.warn(e, "Chunk garbage collection failed");
+            }
+         }
+      }, interval, interval, TimeUnit.SECONDS);
+      closer.addToClose(new Closeable() {
+         @Override
+         public void close() {
+            executor.shutdownNow();
+            try {
+               // Lets a running batch finish before the persistence service is stopped
+               executor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+         }
+      });
+   }
+
+}
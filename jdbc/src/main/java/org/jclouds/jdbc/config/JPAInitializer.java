@@ -17,16 +17,34 @@
 package org.jclouds.jdbc.config;
 
 import java.io.Closeable;
+import java.util.Properties;
 
+import org.jclouds.jdbc.datasource.DataSourceSupplier;
+import org.jclouds.jdbc.datasource.MeteredDataSource;
 import org.jclouds.lifecycle.Closer;
 
+import com.google.common.base.Optional;
+import com.google.inject.Binding;
 import com.google.inject.Inject;
+import com.google.inject.Injector;
 import com.google.inject.persist.PersistService;
 
+import static com.google.common.base.Preconditions.checkState;
+
 public class JPAInitializer {
 
+   private static final String NON_JTA_DATA_SOURCE = "javax.persistence.nonJtaDataSource";
+
    @Inject
-   private JPAInitializer(final PersistService persistService, Closer closer) {
+   private JPAInitializer(final PersistService persistService, Closer closer, DataSourceSupplier dataSourceSupplier,
+         Injector injector) {
+      Optional<MeteredDataSource> dataSource = dataSourceSupplier.get();
+      if (dataSource.isPresent()) {
+         Binding<Properties> unitProperties = injector.getExistingBinding(JdbcPersistModule.UNIT_PROPERTIES);
+         checkState(unitProperties != null, "A data source is configured but the persistence unit was not installed "
+               + "with JdbcPersistModule");
+         unitProperties.getProvider().get().put(NON_JTA_DATA_SOURCE, dataSource.get());
+      }
       persistService.start();
       closer.addToClose(new Closeable() {
          @Override
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.config;
+
+import java.util.Properties;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+import com.google.inject.persist.jpa.JpaPersistModule;
+
+/**
+ * Installs a persistence unit so that the data source configured for the
+ * blobstore, if any, can be handed to it when it is started.
+ */
+public class JdbcPersistModule extends AbstractModule {
+
+   /**
+    * Key of the properties the persistence unit is created with.
+    */
+   public static final Key<Properties> UNIT_PROPERTIES = Key.get(Properties.class,
+         Names.named("jclouds.jdbc.persistence-unit-properties"));
+
+   private final String unit;
+   private final Properties properties;
+
+   public JdbcPersistModule(String unit) {
+      this(unit, new Properties());
+   }
+
+   public JdbcPersistModule(String unit, Properties properties) {
+      this.unit = unit;
+      // Copied since the data source is added to it later on
+      this.properties = new Properties();
+      this.properties.putAll(properties);
+   }
+
+   @Override
+   protected void configure() {
+      install(new JpaPersistModule(unit).properties(properties));
+      bind(UNIT_PROPERTIES).toInstance(properties);
+   }
+
+}
@@ -18,25 +18,37 @@ package org.jclouds.jdbc.conversion;
 
 import com.google.common.base.Function;
 import com.google.common.hash.HashCode;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import org.jclouds.Constants;
 import org.jclouds.blobstore.domain.Blob;
 import org.jclouds.blobstore.domain.BlobBuilder;
 import org.jclouds.blobstore.domain.StorageType;
 import org.jclouds.jdbc.entity.BlobEntity;
 import org.jclouds.jdbc.entity.PayloadEntity;
+import org.jclouds.jdbc.reference.JdbcConstants;
 import org.jclouds.jdbc.service.JdbcService;
-import org.jclouds.jdbc.util.JdbcInputStream;
+import org.jclouds.jdbc.util.JdbcByteSource;
+
+import javax.inject.Named;
 
 public class BlobEntityToBlob implements Function<BlobEntity, Blob> {
 
    private final Provider<BlobBuilder> blobBuilders;
    private final JdbcService jdbcService;
+   private final ListeningExecutorService userExecutor;
+   private final int readAheadChunks;
 
    @Inject
-   BlobEntityToBlob(Provider<BlobBuilder> blobBuilders, JdbcService jdbcService) {
+   BlobEntityToBlob(Provider<BlobBuilder> blobBuilders, JdbcService jdbcService,
+         @Named(Constants.PROPERTY_USER_THREADS) ListeningExecutorService userExecutor,
+         @Named(JdbcConstants.PROPERTY_READ_AHEAD_CHUNKS) int readAheadChunks) {
       this.blobBuilders = blobBuilders;
       this.jdbcService = jdbcService;
+      this.userExecutor = userExecutor;
+      this.readAheadChunks = readAheadChunks;
    }
 
    @Override
@@ -54,7 +66,17 @@ public class BlobEntityToBlob implements Function<BlobEntity, Blob> {
          builder.type(StorageType.FOLDER);
       }
       else {
-         builder.payload(new JdbcInputStream(jdbcService, blobEntity.getPayload().getChunks()));
+         // The chunk list is only read when the payload is opened, so metadata reads and
+         // conditional requests that fail do not touch the chunks
+         if (payload.getInlineData() != null) {
+            builder.payload(ByteSource.wrap(payload.getInlineData()));
+         } else if (payload.getContentLength() != null) {
+            builder.payload(new JdbcByteSource(jdbcService, payload.getId(), payload.getContentLength(), userExecutor,
+                  readAheadChunks));
+         } else {
+            builder.payload(new JdbcByteSource(jdbcService, jdbcService.findChunkReferences(payload.getId()),
+                  userExecutor, readAheadChunks));
+         }
       }
 
       Blob blob = builder.build();
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.datasource;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.sql.DataSource;
+import java.io.Closeable;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.jclouds.lifecycle.Closer;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.inject.Inject;
+
+/**
+ * Supplies the data source handed to the persistence unit: the one bound by
+ * the application if any, otherwise a built-in pool when a JDBC url is
+ * configured. Either way it is wrapped in a {@link MeteredDataSource}.
+ */
+@Singleton
+public class DataSourceSupplier implements Supplier<Optional<MeteredDataSource>> {
+
+   @Inject(optional = true)
+   private DataSource externalDataSource;
+
+   private final String url;
+   private final String driver;
+   private final String user;
+   private final String password;
+   private final int maxSize;
+   private final int minIdle;
+   private final int maxWait;
+   private final int statementCacheSize;
+   private final int leakDetectionTimeout;
+   private final Closer closer;
+
+   private Optional<MeteredDataSource> dataSource;
+
+   @Inject
+   DataSourceSupplier(@Named(JdbcConstants.PROPERTY_DATASOURCE_URL) String url,
+         @Named(JdbcConstants.PROPERTY_DATASOURCE_DRIVER) String driver,
+         @Named(JdbcConstants.PROPERTY_DATASOURCE_USER) String user,
+         @Named(JdbcConstants.PROPERTY_DATASOURCE_PASSWORD) String password,
+         @Named(JdbcConstants.PROPERTY_POOL_MAX_SIZE) int maxSize,
+         @Named(JdbcConstants.PROPERTY_POOL_MIN_IDLE) int minIdle,
+         @Named(JdbcConstants.PROPERTY_POOL_MAX_WAIT) int maxWait,
+         @Named(JdbcConstants.PROPERTY_POOL_STATEMENT_CACHE_SIZE) int statementCacheSize,
+         @Named(JdbcConstants.PROPERTY_POOL_LEAK_DETECTION_TIMEOUT) int leakDetectionTimeout,
+         Closer closer) {
+      this.url = url;
+      this.driver = driver;
+      this.user = user;
+      this.password = password;
+      this.maxSize = maxSize;
+      this.minIdle = Math.min(minIdle, maxSize);
+      this.maxWait = maxWait;
+      this.statementCacheSize = statementCacheSize;
+      this.leakDetectionTimeout = leakDetectionTimeout;
+      this.closer = closer;
+   }
+
+   @Override
+   public synchronized Optional<MeteredDataSource> get() {
+      if (dataSource == null) {
+         if (externalDataSource != null) {
+            dataSource = Optional.of(new MeteredDataSource(externalDataSource));
+         } else if (!Strings.isNullOrEmpty(url)) {
+            dataSource = Optional.of(new MeteredDataSource(createPool()));
+         } else {
+            dataSource = Optional.absent();
+         }
+      }
+      return dataSource;
+   }
+
+   private DataSource createPool() {
+      PoolProperties properties = new PoolProperties();
+      properties.setUrl(url);
+      if (!Strings.isNullOrEmpty(driver)) {
+         properties.setDriverClassName(driver);
+      }
+      properties.setUsername(Strings.emptyToNull(user));
+      properties.setPassword(Strings.emptyToNull(password));
+      properties.setMaxActive(maxSize);
+      properties.setMaxIdle(maxSize);
+      properties.setMinIdle(minIdle);
+      properties.setInitialSize(minIdle);
+      properties.setMaxWait(maxWait);
+      if (statementCacheSize > 0) {
+         properties.setJdbcInterceptors("StatementCache(prepared=true,callable=false,max=" + statementCacheSize + ")");
+      }
+      if (leakDetectionTimeout > 0) {
+         // Only logs the stack trace of the borrower, the connection is left alone
+         properties.setSuspectTimeout(leakDetectionTimeout);
+         properties.setLogAbandoned(true);
+      }
+      final org.apache.tomcat.jdbc.pool.DataSource pool = new org.apache.tomcat.jdbc.pool.DataSource(properties);
+      closer.addToClose(new Closeable() {
+         @Override
+         public void close() {
+            pool.close();
+         }
+      });
+      return pool;
+   }
+
+}
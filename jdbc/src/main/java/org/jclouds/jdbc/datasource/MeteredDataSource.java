@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.datasource;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Data source measuring how long connections take to obtain and how many are
+ * in use. It wraps the data source given to the persistence unit, whether it
+ * is the built-in pool or one supplied by the application.
+ */
+public class MeteredDataSource implements DataSource, MeteredDataSourceMXBean {
+
+   private final DataSource delegate;
+   private final AtomicInteger activeConnections = new AtomicInteger();
+   private final AtomicLong connectionRequests = new AtomicLong();
+   private final AtomicLong totalWaitNanos = new AtomicLong();
+   private final AtomicLong maxWaitNanos = new AtomicLong();
+
+   public MeteredDataSource(DataSource delegate) {
+      this.delegate = checkNotNull(delegate, "delegate");
+   }
+
+   public DataSource getDelegate() {
+      return delegate;
+   }
+
+   @Override
+   public Connection getConnection() throws SQLException {
+      long start = System.nanoTime();
+      Connection connection = delegate.getConnection();
+      return track(connection, System.nanoTime() - start);
+   }
+
+   @Override
+   public Connection getConnection(String username, String password) throws SQLException {
+      long start = System.nanoTime();
+      Connection connection = delegate.getConnection(username, password);
+      return track(connection, System.nanoTime() - start);
+   }
+
+   /**
+    * @return the number of connections obtained and not closed yet
+    */
+   @Override
+   public int getActiveConnections() {
+      return activeConnections.get();
+   }
+
+   /**
+    * @return the number of idle connections of the built-in pool, or -1 if the
+    *         data source is not the built-in pool
+    */
+   @Override
+   public int getIdleConnections() {
+      if (delegate instanceof org.apache.tomcat.jdbc.pool.DataSource) {
+         return ((org.apache.tomcat.jdbc.pool.DataSource) delegate).getIdle();
+      }
+      return -1;
+   }
+
+   /**
+    * @return the number of connections obtained so far
+    */
+   @Override
+   public long getConnectionRequests() {
+      return connectionRequests.get();
+   }
+
+   /**
+    * @return the total time spent waiting for connections, in milliseconds
+    */
+   @Override
+   public long getTotalWaitMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+   }
+
+   /**
+    * @return the longest time spent waiting for a connection, in milliseconds
+    */
+   @Override
+   public long getMaxWaitMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+   }
+
+   @Override
+   public PrintWriter getLogWriter() throws SQLException {
+      return delegate.getLogWriter();
+   }
+
+   @Override
+   public void setLogWriter(PrintWriter out) throws SQLException {
+      delegate.setLogWriter(out);
+   }
+
+   @Override
+   public void setLoginTimeout(int seconds) throws SQLException {
+      delegate.setLoginTimeout(seconds);
+   }
+
+   @Override
+   public int getLoginTimeout() throws SQLException {
+      return delegate.getLoginTimeout();
+   }
+
+   // Part of DataSource since Java 7
+   public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+      throw new SQLFeatureNotSupportedException();
+   }
+
+   @Override
+   public <T> T unwrap(Class<T> iface) throws SQLException {
+      return iface.isInstance(this) ? iface.cast(this) : delegate.unwrap(iface);
+   }
+
+   @Override
+   public boolean isWrapperFor(Class<?> iface) throws SQLException {
+      return iface.isInstance(this) || delegate.isWrapperFor(iface);
+   }
+
+   private Connection track(final Connection connection, long waitNanos) {
+      connectionRequests.incrementAndGet();
+      totalWaitNanos.addAndGet(waitNanos);
+      long max = maxWaitNanos.get();
+      while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+         max = maxWaitNanos.get();
+      }
+      activeConnections.incrementAndGet();
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+            new InvocationHandler() {
+               private boolean closed;
+
+               @Override
+               public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                  if ("close".equals(method.getName()) && method.getParameterTypes().length == 0) {
+                     synchronized (this) {
+                        if (!closed) {
+                           closed = true;
+                           activeConnections.decrementAndGet();
+                        }
+                     }
+                  }
+                  try {
+                     return method.invoke(connection, args);
+                  } catch (InvocationTargetException e) {
+                     throw e.getCause();
+                  }
+               }
+            });
+   }
+
+}
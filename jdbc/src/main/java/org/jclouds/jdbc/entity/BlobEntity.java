@@ -17,9 +17,11 @@
 package org.jclouds.jdbc.entity;
 
 import org.jclouds.blobstore.domain.BlobAccess;
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.jclouds.jdbc.util.UserMetadataCodec;
 
 import javax.persistence.CascadeType;
-import javax.persistence.ElementCollection;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
@@ -45,11 +47,14 @@ public class BlobEntity {
    @Id
    private String key;
 
-   @OneToOne(cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+   // Table and column names are pinned as bulk deletes refer to them in native SQL
+   @OneToOne(cascade = CascadeType.ALL, fetch = FetchType.EAGER, orphanRemoval = true)
+   @JoinColumn(name = "payload_id")
    private PayloadEntity payload;
 
-   @ElementCollection(fetch = FetchType.EAGER)
-   public Map<String, String> userMetadata;
+   // Serialized into one column, so loading or listing blobs reads a single row per blob
+   @Column(length = JdbcConstants.MAX_USER_METADATA_LENGTH)
+   private String userMetadata;
 
    private Date creationDate;
    private Date lastModified;
@@ -80,7 +85,7 @@ public class BlobEntity {
       this.lastModified = lastModified;
       this.payload = payload;
       this.blobAccess = blobAccess;
-      this.userMetadata = userMetadata;
+      this.userMetadata = UserMetadataCodec.encode(userMetadata);
       this.size = size;
       this.etag = etag;
       this.directory = directory;
@@ -143,11 +148,11 @@ public class BlobEntity {
    }
 
    public Map<String, String> getUserMetadata() {
-      return userMetadata;
+      return UserMetadataCodec.decode(userMetadata);
    }
 
    public void setUserMetadata(Map<String, String> userMetadata) {
-      this.userMetadata = userMetadata;
+      this.userMetadata = UserMetadataCodec.encode(userMetadata);
    }
 
    public Long getSize() {
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.entity;
+
+import org.jclouds.jdbc.util.UserMetadataCodec;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Projection of the columns needed to list a blob, read without loading the
+ * blob entity or its chunks.
+ */
+public class BlobSummary {
+
+   private final String key;
+   private final boolean directory;
+   private final String etag;
+   private final Date creationDate;
+   private final Date lastModified;
+   private final String contentType;
+   private final Long contentLength;
+   private final byte[] contentMD5;
+   private final String userMetadata;
+
+   public BlobSummary(String key, boolean directory, String etag, Date creationDate, Date lastModified,
+         String contentType, Long contentLength, byte[] contentMD5, String userMetadata) {
+      this.key = key;
+      this.directory = directory;
+      this.etag = etag;
+      this.creationDate = creationDate;
+      this.lastModified = lastModified;
+      this.contentType = contentType;
+      this.contentLength = contentLength;
+      this.contentMD5 = contentMD5;
+      this.userMetadata = userMetadata;
+   }
+
+   public String getKey() {
+      return key;
+   }
+
+   public boolean isDirectory() {
+      return directory;
+   }
+
+   public String getEtag() {
+      return etag;
+   }
+
+   public Date getCreationDate() {
+      return creationDate;
+   }
+
+   public Date getLastModified() {
+      return lastModified;
+   }
+
+   public String getContentType() {
+      return contentType;
+   }
+
+   public Long getContentLength() {
+      return contentLength;
+   }
+
+   public byte[] getContentMD5() {
+      return contentMD5;
+   }
+
+   public Map<String, String> getUserMetadata() {
+      return UserMetadataCodec.decode(userMetadata);
+   }
+
+}
@@ -17,31 +17,77 @@
 package org.jclouds.jdbc.entity;
 
 import org.jclouds.jdbc.reference.JdbcConstants;
+import org.jclouds.jdbc.util.ChunkCodec;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Lob;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
 
 @Entity
-@Table
+@Table(name = "ChunkEntity", indexes = @Index(name = "ChunkEntity_hash", columnList = "hash"))
+@Cacheable(false)
 public class ChunkEntity {
 
+   // Table and row of the id generator, pinned as the schema migration and the jdbc chunk store move it forward
+   // in native SQL
+   public static final String ID_TABLE = "ChunkIds";
+   public static final String ID_NAME_COLUMN = "sequence_name";
+   public static final String ID_VALUE_COLUMN = "next_val";
+   public static final String ID_NAME = "chunkIds";
+   public static final int ID_ALLOCATION_SIZE = 64;
+
+   // A table generator keeps ids available before the insert, so chunk inserts can be batched. Table and column
+   // names are pinned as the jdbc chunk store and the schema migration refer to them in native SQL
    @Id
-   @GeneratedValue
+   @Column(name = "id")
+   @TableGenerator(name = ID_NAME, table = ID_TABLE, pkColumnName = ID_NAME_COLUMN, valueColumnName = ID_VALUE_COLUMN,
+         pkColumnValue = ID_NAME, allocationSize = ID_ALLOCATION_SIZE)
+   @GeneratedValue(strategy = GenerationType.TABLE, generator = ID_NAME)
    private Long id;
 
    @Lob
-   @Column(length = JdbcConstants.DEFAULT_CHUNK_SIZE)
+   @Column(name = "data", length = JdbcConstants.MAX_CHUNK_SIZE)
    private byte[] data;
 
+   // Uncompressed size of the data
+   @Column(name = "size")
    private int size;
 
+   // Codec the data is compressed with, null if it is stored as is
+   @Enumerated(EnumType.STRING)
+   @Column(name = "codec")
+   private ChunkCodec codec;
+
+   // Content hash, only set when chunk deduplication is enabled
+   @Column(name = "hash")
+   private String hash;
+
+   // Number of payload positions pointing at this chunk
+   @Column(name = "referenceCount")
+   private int referenceCount = 1;
+
    public ChunkEntity(byte[] data, int size) {
+      this(data, size, null);
+   }
+
+   public ChunkEntity(byte[] data, int size, String hash) {
+      this(data, size, hash, null);
+   }
+
+   public ChunkEntity(byte[] data, int size, String hash, ChunkCodec codec) {
       this.data = data;
       this.size = size;
+      this.hash = hash;
+      this.codec = codec;
    }
 
    public ChunkEntity() {
@@ -70,4 +116,28 @@ public class ChunkEntity {
    public void setSize(int size) {
       this.size = size;
    }
+
+   public ChunkCodec getCodec() {
+      return codec;
+   }
+
+   public void setCodec(ChunkCodec codec) {
+      this.codec = codec;
+   }
+
+   public String getHash() {
+      return hash;
+   }
+
+   public void setHash(String hash) {
+      this.hash = hash;
+   }
+
+   public int getReferenceCount() {
+      return referenceCount;
+   }
+
+   public void setReferenceCount(int referenceCount) {
+      this.referenceCount = referenceCount;
+   }
 }
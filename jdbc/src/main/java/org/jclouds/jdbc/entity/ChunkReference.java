@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.entity;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+
+/**
+ * Position of a chunk inside a payload: the chunk it points to, the offset of
+ * its first byte in the payload and the number of bytes it holds.
+ */
+@Embeddable
+public class ChunkReference {
+
+   @Column(name = "chunk_id", nullable = false)
+   private Long chunkId;
+
+   @Column(name = "chunk_offset", nullable = false)
+   private long chunkOffset;
+
+   @Column(name = "chunk_size", nullable = false)
+   private int chunkSize;
+
+   public ChunkReference(Long chunkId, long chunkOffset, int chunkSize) {
+      this.chunkId = chunkId;
+      this.chunkOffset = chunkOffset;
+      this.chunkSize = chunkSize;
+   }
+
+   public ChunkReference() {
+   }
+
+   public Long getChunkId() {
+      return chunkId;
+   }
+
+   public void setChunkId(Long chunkId) {
+      this.chunkId = chunkId;
+   }
+
+   public long getChunkOffset() {
+      return chunkOffset;
+   }
+
+   public void setChunkOffset(long chunkOffset) {
+      this.chunkOffset = chunkOffset;
+   }
+
+   public int getChunkSize() {
+      return chunkSize;
+   }
+
+   public void setChunkSize(int chunkSize) {
+      this.chunkSize = chunkSize;
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if (this == o)
+         return true;
+      if (o == null || getClass() != o.getClass())
+         return false;
+
+      ChunkReference that = (ChunkReference) o;
+
+      return chunkOffset == that.chunkOffset && chunkSize == that.chunkSize && chunkId.equals(that.chunkId);
+   }
+
+   @Override
+   public int hashCode() {
+      int result = chunkId.hashCode();
+      result = 31 * result + (int) (chunkOffset ^ (chunkOffset >>> 32));
+      result = 31 * result + chunkSize;
+      return result;
+   }
+
+}
@@ -17,9 +17,12 @@
 package org.jclouds.jdbc.entity;
 
 import org.jclouds.blobstore.domain.ContainerAccess;
+import org.jclouds.jdbc.util.ChunkCodec;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.PrePersist;
@@ -41,6 +44,16 @@ public class ContainerEntity {
 
    private ContainerAccess containerAccess;
 
+   // Codec new chunks of the container are compressed with
+   @Enumerated(EnumType.STRING)
+   private ChunkCodec compression;
+
+   // Size new payloads of the container are split into, null for the configured default
+   private Integer chunkSize;
+
+   // Whether the chunk size adapts to the content length of new payloads, null for the configured default
+   private Boolean adaptiveChunkSize;
+
    public ContainerEntity() {
    }
 
@@ -91,6 +104,30 @@ public class ContainerEntity {
       this.containerAccess = containerAccess;
    }
 
+   public ChunkCodec getCompression() {
+      return compression;
+   }
+
+   public void setCompression(ChunkCodec compression) {
+      this.compression = compression;
+   }
+
+   public Integer getChunkSize() {
+      return chunkSize;
+   }
+
+   public void setChunkSize(Integer chunkSize) {
+      this.chunkSize = chunkSize;
+   }
+
+   public Boolean getAdaptiveChunkSize() {
+      return adaptiveChunkSize;
+   }
+
+   public void setAdaptiveChunkSize(Boolean adaptiveChunkSize) {
+      this.adaptiveChunkSize = adaptiveChunkSize;
+   }
+
    public static Builder builder() {
       return new Builder();
    }
@@ -98,6 +135,9 @@ public class ContainerEntity {
    public static class Builder {
       private String name;
       private ContainerAccess containerAccess;
+      private ChunkCodec compression;
+      private Integer chunkSize;
+      private Boolean adaptiveChunkSize;
 
       public Builder() {
       }
@@ -112,8 +152,27 @@ public class ContainerEntity {
          return this;
       }
 
+      public Builder compression(ChunkCodec compression){
+         this.compression = compression;
+         return this;
+      }
+
+      public Builder chunkSize(Integer chunkSize){
+         this.chunkSize = chunkSize;
+         return this;
+      }
+
+      public Builder adaptiveChunkSize(Boolean adaptiveChunkSize){
+         this.adaptiveChunkSize = adaptiveChunkSize;
+         return this;
+      }
+
       public ContainerEntity build() {
-         return new ContainerEntity(null, name, null, containerAccess);
+         ContainerEntity containerEntity = new ContainerEntity(null, name, null, containerAccess);
+         containerEntity.setCompression(compression);
+         containerEntity.setChunkSize(chunkSize);
+         containerEntity.setAdaptiveChunkSize(adaptiveChunkSize);
+         return containerEntity;
       }
    }
 }
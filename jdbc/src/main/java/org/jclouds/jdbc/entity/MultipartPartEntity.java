@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.entity;
+
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.OrderColumn;
+import javax.persistence.PrePersist;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import java.util.Date;
+import java.util.List;
+
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = { "uploadId", "partNumber" }))
+public class MultipartPartEntity {
+
+   @Id
+   @GeneratedValue
+   private Long id;
+
+   @Column(nullable = false)
+   private String uploadId;
+
+   private int partNumber;
+
+   // Offsets are relative to the part, they are shifted when the parts are stitched together
+   @ElementCollection(fetch = FetchType.LAZY)
+   @CollectionTable(name = "MultipartPartChunk", joinColumns = @JoinColumn(name = "part_id"))
+   @OrderColumn(name = "seq")
+   private List<ChunkReference> chunks;
+
+   private long partSize;
+   private String etag;
+   private Date lastModified;
+
+   public MultipartPartEntity(String uploadId, int partNumber, List<ChunkReference> chunks, long partSize,
+         String etag) {
+      this.uploadId = uploadId;
+      this.partNumber = partNumber;
+      this.chunks = chunks;
+      this.partSize = partSize;
+      this.etag = etag;
+   }
+
+   public MultipartPartEntity() {
+   }
+
+   @PrePersist
+   private void defaults() {
+      this.lastModified = new Date();
+   }
+
+   public Long getId() {
+      return id;
+   }
+
+   public void setId(Long id) {
+      this.id = id;
+   }
+
+   public String getUploadId() {
+      return uploadId;
+   }
+
+   public void setUploadId(String uploadId) {
+      this.uploadId = uploadId;
+   }
+
+   public int getPartNumber() {
+      return partNumber;
+   }
+
+   public void setPartNumber(int partNumber) {
+      this.partNumber = partNumber;
+   }
+
+   public List<ChunkReference> getChunks() {
+      return chunks;
+   }
+
+   public void setChunks(List<ChunkReference> chunks) {
+      this.chunks = chunks;
+   }
+
+   public long getPartSize() {
+      return partSize;
+   }
+
+   public void setPartSize(long partSize) {
+      this.partSize = partSize;
+   }
+
+   public String getEtag() {
+      return etag;
+   }
+
+   public void setEtag(String etag) {
+      this.etag = etag;
+   }
+
+   public Date getLastModified() {
+      return lastModified;
+   }
+
+   public void setLastModified(Date lastModified) {
+      this.lastModified = lastModified;
+   }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.entity;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
+import javax.persistence.Table;
+import java.util.Date;
+
+@Entity
+@Table(indexes = @Index(name = "MultipartUploadEntity_container", columnList = "containerId"))
+public class MultipartUploadEntity {
+
+   @Id
+   private String id;
+
+   // Not a relationship, so pending uploads do not prevent deleting their container
+   @Column(nullable = false)
+   private Long containerId;
+
+   @Column(nullable = false)
+   private String key;
+
+   private Date initiated;
+
+   public MultipartUploadEntity(String id, Long containerId, String key) {
+      this.id = id;
+      this.containerId = containerId;
+      this.key = key;
+   }
+
+   public MultipartUploadEntity() {
+   }
+
+   @PrePersist
+   private void defaults() {
+      if (initiated == null) {
+         this.initiated = new Date();
+      }
+   }
+
+   public String getId() {
+      return id;
+   }
+
+   public void setId(String id) {
+      this.id = id;
+   }
+
+   public Long getContainerId() {
+      return containerId;
+   }
+
+   public void setContainerId(Long containerId) {
+      this.containerId = containerId;
+   }
+
+   public String getKey() {
+      return key;
+   }
+
+   public void setKey(String key) {
+      this.key = key;
+   }
+
+   public Date getInitiated() {
+      return initiated;
+   }
+
+   public void setInitiated(Date initiated) {
+      this.initiated = initiated;
+   }
+
+}
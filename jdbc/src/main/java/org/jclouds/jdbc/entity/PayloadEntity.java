@@ -17,12 +17,17 @@
 package org.jclouds.jdbc.entity;
 
 import com.google.common.collect.ImmutableList;
+import org.jclouds.jdbc.reference.JdbcConstants;
 
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
 import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.OrderColumn;
 import java.util.Date;
 import java.util.List;
 
@@ -33,8 +38,20 @@ public class PayloadEntity {
    @GeneratedValue
    private Long id;
 
-   @ElementCollection(fetch = FetchType.EAGER)
-   private List<Long> chunks;
+   // Ordered, as deduplicated payloads may reference the same chunk more than once. The offsets
+   // let range reads start at the first chunk they need. Lazy, so reading blob metadata does not
+   // load the chunk list; streams look it up by payload id when opened.
+   @ElementCollection(fetch = FetchType.LAZY)
+   @CollectionTable(name = "PayloadChunk", joinColumns = @JoinColumn(name = "payload_id"))
+   @OrderColumn(name = "seq")
+   private List<ChunkReference> chunks;
+
+   // Size the content was split into chunks with, null for payloads stored before it was recorded
+   private Integer chunkSize;
+
+   // Content of small payloads, stored here instead of in chunks; null when the payload has chunks
+   @Column(length = JdbcConstants.MAX_INLINE_SIZE)
+   private byte[] inlineData;
 
    private String cacheControl;
    private String contentType;
@@ -45,7 +62,7 @@ public class PayloadEntity {
    private String contentEncoding;
    private Date expires;
 
-   public PayloadEntity(List<Long> chunks, String cacheControl, String contentType, Long contentLength, byte[] contentMD5,
+   public PayloadEntity(List<ChunkReference> chunks, String cacheControl, String contentType, Long contentLength, byte[] contentMD5,
          String contentDisposition, String contentLanguage, String contentEncoding, Date expires) {
       this.chunks = chunks;
       this.cacheControl = cacheControl;
@@ -69,14 +86,30 @@ public class PayloadEntity {
       this.id = id;
    }
 
-   public List<Long> getChunks() {
+   public List<ChunkReference> getChunks() {
       return chunks;
    }
 
-   public void setChunks(List<Long> chunks) {
+   public void setChunks(List<ChunkReference> chunks) {
       this.chunks = chunks;
    }
 
+   public Integer getChunkSize() {
+      return chunkSize;
+   }
+
+   public void setChunkSize(Integer chunkSize) {
+      this.chunkSize = chunkSize;
+   }
+
+   public byte[] getInlineData() {
+      return inlineData;
+   }
+
+   public void setInlineData(byte[] inlineData) {
+      this.inlineData = inlineData;
+   }
+
    public String getCacheControl() {
       return cacheControl;
    }
@@ -146,7 +179,7 @@ public class PayloadEntity {
    }
 
    public static class Builder {
-      private List<Long> chunks;
+      private List<ChunkReference> chunks;
       private String cacheControl;
       private String contentType;
       private Long contentLength;
@@ -160,7 +193,7 @@ public class PayloadEntity {
          this.chunks = ImmutableList.of();
       }
 
-      public Builder chunks(List<Long> chunks) {
+      public Builder chunks(List<ChunkReference> chunks) {
          this.chunks = chunks;
          return this;
       }
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.metrics;
+
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Built-in registry keeping the statistics of each operation in memory. They
+ * are exposed through JMX unless disabled.
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry {
+
+   private final Map<Operation, OperationStats> stats;
+
+   public DefaultMetricsRegistry() {
+      EnumMap<Operation, OperationStats> stats = Maps.newEnumMap(Operation.class);
+      for (Operation operation : Operation.values()) {
+         stats.put(operation, new OperationStats());
+      }
+      this.stats = Collections.unmodifiableMap(stats);
+   }
+
+   @Override
+   public void record(Operation operation, long nanos, long bytes, long rows) {
+      stats.get(operation).record(nanos, bytes, rows);
+   }
+
+   public OperationStats getStats(Operation operation) {
+      return stats.get(operation);
+   }
+
+   public Map<Operation, OperationStats> getStats() {
+      return stats;
+   }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.metrics;
+
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+import org.jclouds.jdbc.datasource.DataSourceSupplier;
+import org.jclouds.jdbc.datasource.MeteredDataSource;
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.jclouds.lifecycle.Closer;
+
+import javax.inject.Named;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Entry point of the instrumentation of the blobstore. Operations call
+ * {@link #start()} and one of the {@code stop} methods, which only read the
+ * clock and reach the registry when metrics are enabled.
+ * <p>
+ * {@link JdbcConstants#PROPERTY_METRICS} selects the registry: {@code none},
+ * {@code default} for the built-in one, or the class name of a
+ * {@link MetricsRegistry} implementation. The statistics of the built-in
+ * registry are registered as MBeans unless
+ * {@link JdbcConstants#PROPERTY_METRICS_JMX} is false, and so are those of the
+ * data source, even when operation metrics are disabled.
+ */
+@Singleton
+public class JdbcMetrics {
+
+   private static final String JMX_DOMAIN = "org.apache.jclouds.jdbc";
+   private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+   private final MetricsRegistry registry;
+   private final boolean enabled;
+
+   @Inject
+   JdbcMetrics(@Named(JdbcConstants.PROPERTY_METRICS) String registry,
+         @Named(JdbcConstants.PROPERTY_METRICS_JMX) boolean jmx, Injector injector,
+         DataSourceSupplier dataSourceSupplier, Closer closer) {
+      this(createRegistry(registry, injector));
+      if (jmx) {
+         // The data source is registered whatever the registry, its pool is worth watching on its own
+         registerMBeans(dataSourceSupplier.get(), closer);
+      }
+   }
+
+   public JdbcMetrics(MetricsRegistry registry) {
+      this.registry = registry;
+      this.enabled = registry != null;
+   }
+
+   public boolean isEnabled() {
+      return enabled;
+   }
+
+   /**
+    * @return the registry, or null when metrics are disabled
+    */
+   public MetricsRegistry getRegistry() {
+      return registry;
+   }
+
+   /**
+    * @return the start time of an operation, 0 when metrics are disabled
+    */
+   public long start() {
+      return enabled ? System.nanoTime() : 0;
+   }
+
+   public void stop(Operation operation, long start) {
+      stop(operation, start, 0, 0);
+   }
+
+   public void stop(Operation operation, long start, long bytes, long rows) {
+      if (enabled) {
+         registry.record(operation, System.nanoTime() - start, bytes, rows);
+      }
+   }
+
+   private static MetricsRegistry createRegistry(String name, Injector injector) {
+      if ("none".equalsIgnoreCase(name)) {
+         return null;
+      } else if ("default".equalsIgnoreCase(name)) {
+         return new DefaultMetricsRegistry();
+      }
+      try {
+         return injector.getInstance(Class.forName(name).asSubclass(MetricsRegistry.class));
+      } catch (ClassNotFoundException e) {
+         throw new IllegalArgumentException("Unknown metrics registry: " + name, e);
+      } catch (ClassCastException e) {
+         throw new IllegalArgumentException(name + " is not a " + MetricsRegistry.class.getName(), e);
+      }
+   }
+
+   private void registerMBeans(Optional<MeteredDataSource> dataSource, Closer closer) {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      final List<ObjectName> names = new CopyOnWriteArrayList<ObjectName>();
+      // Several contexts may live in the same JVM
+      String instance = String.valueOf(INSTANCES.incrementAndGet());
+      try {
+         if (registry instanceof DefaultMetricsRegistry) {
+            for (Map.Entry<Operation, OperationStats> entry : ((DefaultMetricsRegistry) registry).getStats()
+                  .entrySet()) {
+               ObjectName name = new ObjectName(JMX_DOMAIN + ":type=Operation,instance=" + instance + ",name="
+                     + entry.getKey().name().toLowerCase(Locale.ENGLISH));
+               server.registerMBean(entry.getValue(), name);
+               names.add(name);
+            }
+         }
+         if (dataSource.isPresent()) {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=DataSource,instance=" + instance);
+            server.registerMBean(dataSource.get(), name);
+            names.add(name);
+         }
+      } catch (JMException e) {
+         throw new IllegalStateException("Could not register the JDBC blobstore MBeans", e);
+      }
+      closer.addToClose(new Closeable() {
+         @Override
+         public void close() {
+            for (ObjectName name : names) {
+               try {
+                  server.unregisterMBean(name);
+               } catch (JMException e) {
+                  // Already unregistered, nothing else to do while closing
+               }
+            }
+         }
+      });
+   }
+
+}
@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.metrics;
+
+/**
+ * Receives the measurements of the JDBC blobstore. Implementations are selected
+ * with {@link org.jclouds.jdbc.reference.JdbcConstants#PROPERTY_METRICS} and
+ * created by the injector, and must be thread safe.
+ */
+public interface MetricsRegistry {
+
+   /**
+    * Records one execution of an operation.
+    *
+    * @param nanos time the operation took
+    * @param bytes bytes moved by the operation, 0 if it moves none
+    * @param rows  rows or items the operation read or wrote, 0 if not relevant
+    */
+   void record(Operation operation, long nanos, long bytes, long rows);
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count, latency histogram, bytes and rows of one operation. Latencies are
+ * counted in power of two buckets of microseconds, so percentiles are upper
+ * bounds within a factor of two and recording never allocates or locks.
+ */
+public class OperationStats implements OperationStatsMXBean {
+
+   private static final int BUCKETS = 64;
+
+   private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+   private final AtomicLong count = new AtomicLong();
+   private final AtomicLong totalNanos = new AtomicLong();
+   private final AtomicLong maxNanos = new AtomicLong();
+   private final AtomicLong bytes = new AtomicLong();
+   private final AtomicLong rows = new AtomicLong();
+
+   public void record(long nanos, long bytes, long rows) {
+      long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+      buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(micros));
+      count.incrementAndGet();
+      totalNanos.addAndGet(nanos);
+      long max = maxNanos.get();
+      while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+         max = maxNanos.get();
+      }
+      if (bytes != 0) {
+         this.bytes.addAndGet(bytes);
+      }
+      if (rows != 0) {
+         this.rows.addAndGet(rows);
+      }
+   }
+
+   @Override
+   public long getCount() {
+      return count.get();
+   }
+
+   @Override
+   public double getMeanMillis() {
+      long n = count.get();
+      return n == 0 ? 0 : toMillis(totalNanos.get()) / n;
+   }
+
+   @Override
+   public double getMaxMillis() {
+      return toMillis(maxNanos.get());
+   }
+
+   @Override
+   public double get50thPercentileMillis() {
+      return percentileMillis(0.50);
+   }
+
+   @Override
+   public double get95thPercentileMillis() {
+      return percentileMillis(0.95);
+   }
+
+   @Override
+   public double get99thPercentileMillis() {
+      return percentileMillis(0.99);
+   }
+
+   @Override
+   public long getBytes() {
+      return bytes.get();
+   }
+
+   @Override
+   public long getRows() {
+      return rows.get();
+   }
+
+   /**
+    * @return the upper bound of the bucket holding the given fraction of the
+    *         recorded latencies
+    */
+   public double percentileMillis(double fraction) {
+      long total = 0;
+      long[] snapshot = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+         snapshot[i] = buckets.get(i);
+         total += snapshot[i];
+      }
+      if (total == 0) {
+         return 0;
+      }
+      long rank = (long) Math.ceil(fraction * total);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         seen += snapshot[i];
+         if (seen >= rank) {
+            // Bucket i holds latencies below 2^i microseconds
+            return Math.min(Math.pow(2, i) / 1000, getMaxMillis());
+         }
+      }
+      return getMaxMillis();
+   }
+
+   private static double toMillis(long nanos) {
+      return nanos / 1000000.0;
+   }
+
+}
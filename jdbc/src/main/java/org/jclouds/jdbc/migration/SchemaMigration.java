@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.migration;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.jclouds.jdbc.entity.ChunkEntity;
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.jclouds.jdbc.util.ChunkCodec;
+import org.jclouds.jdbc.util.UserMetadataCodec;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Upgrades a database created by previous versions to the current schema.
+ * <ul>
+ * <li>The user metadata, which previous versions mapped as an element
+ * collection with the default JPA names, one row per entry in the
+ * BlobEntity_userMetadata table, moves into the userMetadata column of
+ * BlobEntity.</li>
+ * <li>The chunk lists of payloads, kept without order or offsets in the
+ * PayloadEntity_chunks table, move into PayloadChunk with their position,
+ * offset and size.</li>
+ * <li>Chunks without a reference count get the number of payload and part
+ * positions pointing at them, and chunks without a codec are marked as stored
+ * as is.</li>
+ * <li>The chunk id generator is moved past the ids already in use.</li>
+ * </ul>
+ * The old tables are dropped. It does nothing on a database that has already
+ * been migrated, and runs in a single transaction where the database allows
+ * it. The other columns and tables of the current schema are left to the
+ * persistence provider, for instance with {@code hibernate.hbm2ddl.auto=update}.
+ * <p>
+ * Run it before starting the blobstore on an existing database, either from
+ * code or with {@code java org.jclouds.jdbc.migration.SchemaMigration url [user [password]]}.
+ */
+public final class SchemaMigration {
+
+   // Default names of the collection table of BlobEntity.userMetadata and of its columns
+   private static final String LEGACY_USER_METADATA_TABLE = "BlobEntity_userMetadata";
+   private static final String LEGACY_CONTAINER_COLUMN = "BlobEntity_id";
+   private static final String LEGACY_KEY_COLUMN = "BlobEntity_key";
+   private static final String LEGACY_METADATA_KEY_COLUMN = "userMetadata_KEY";
+   private static final String LEGACY_METADATA_VALUE_COLUMN = "userMetadata";
+   // Default names of the collection table of PayloadEntity.chunks and of its columns
+   private static final String LEGACY_CHUNKS_TABLE = "PayloadEntity_chunks";
+   private static final String LEGACY_PAYLOAD_COLUMN = "PayloadEntity_id";
+   private static final String LEGACY_CHUNK_COLUMN = "chunks";
+   private static final String BLOB_TABLE = "BlobEntity";
+   private static final String COLUMN = "userMetadata";
+   private static final String CHUNK_TABLE = "ChunkEntity";
+   private static final String PAYLOAD_CHUNK_TABLE = "PayloadChunk";
+   private static final String PART_CHUNK_TABLE = "MultipartPartChunk";
+   private static final int BATCH_SIZE = 500;
+
+   private SchemaMigration() {
+      throw new AssertionError("intentionally unimplemented");
+   }
+
+   public static void main(String[] args) throws SQLException {
+      if (args.length < 1) {
+         System.err.println("Usage: SchemaMigration url [user [password]]");
+         System.exit(1);
+      }
+      Connection connection = DriverManager.getConnection(args[0], args.length > 1 ? args[1] : null,
+            args.length > 2 ? args[2] : null);
+      try {
+         System.out.println(migrate(connection) ? "Migrated the database" : "The database is up to date");
+      } finally {
+         connection.close();
+      }
+   }
+
+   public static boolean migrate(DataSource dataSource) throws SQLException {
+      Connection connection = dataSource.getConnection();
+      try {
+         return migrate(connection);
+      } finally {
+         connection.close();
+      }
+   }
+
+   /**
+    * @return whether the database had tables of previous versions to migrate
+    */
+   public static boolean migrate(Connection connection) throws SQLException {
+      boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try {
+         boolean migrated = migrateUserMetadata(connection);
+         migrated |= migrateChunkLists(connection);
+         if (tableExists(connection.getMetaData(), CHUNK_TABLE)) {
+            backfillChunks(connection);
+            seedChunkIds(connection);
+         }
+         connection.commit();
+         return migrated;
+      } catch (SQLException e) {
+         connection.rollback();
+         throw e;
+      } finally {
+         connection.setAutoCommit(autoCommit);
+      }
+   }
+
+   private static boolean migrateUserMetadata(Connection connection) throws SQLException {
+      if (!tableExists(connection.getMetaData(), LEGACY_USER_METADATA_TABLE)) {
+         return false;
+      }
+      addColumnIfMissing(connection, BLOB_TABLE, COLUMN, "VARCHAR(" + JdbcConstants.MAX_USER_METADATA_LENGTH + ")");
+      copyUserMetadata(connection);
+      execute(connection, "DROP TABLE " + LEGACY_USER_METADATA_TABLE);
+      return true;
+   }
+
+   private static boolean migrateChunkLists(Connection connection) throws SQLException {
+      if (!tableExists(connection.getMetaData(), LEGACY_CHUNKS_TABLE)) {
+         return false;
+      }
+      if (!tableExists(connection.getMetaData(), PAYLOAD_CHUNK_TABLE)) {
+         execute(connection, "CREATE TABLE " + PAYLOAD_CHUNK_TABLE + " (payload_id BIGINT NOT NULL, "
+               + "seq INTEGER NOT NULL, chunk_id BIGINT NOT NULL, chunk_offset BIGINT NOT NULL, "
+               + "chunk_size INTEGER NOT NULL, PRIMARY KEY (payload_id, seq))");
+      }
+      copyChunkLists(connection);
+      execute(connection, "DROP TABLE " + LEGACY_CHUNKS_TABLE);
+      return true;
+   }
+
+   private static void copyUserMetadata(Connection connection) throws SQLException {
+      Statement select = connection.createStatement();
+      PreparedStatement update = connection.prepareStatement("UPDATE " + BLOB_TABLE + " SET " + COLUMN
+            + " = ? WHERE id = ? AND key = ?");
+      try {
+         ResultSet rows = select.executeQuery("SELECT " + LEGACY_CONTAINER_COLUMN + ", " + LEGACY_KEY_COLUMN + ", "
+               + LEGACY_METADATA_KEY_COLUMN + ", " + LEGACY_METADATA_VALUE_COLUMN + " FROM " + LEGACY_USER_METADATA_TABLE
+               + " ORDER BY " + LEGACY_CONTAINER_COLUMN + ", " + LEGACY_KEY_COLUMN);
+         int blobs = 0;
+         long containerId = 0;
+         String key = null;
+         Map<String, String> userMetadata = Maps.newLinkedHashMap();
+         while (rows.next()) {
+            if (key != null && (rows.getLong(1) != containerId || !rows.getString(2).equals(key))) {
+               addUpdate(update, containerId, key, userMetadata);
+               if (++blobs % BATCH_SIZE == 0) {
+                  update.executeBatch();
+               }
+               userMetadata.clear();
+            }
+            containerId = rows.getLong(1);
+            key = rows.getString(2);
+            userMetadata.put(rows.getString(3), rows.getString(4));
+         }
+         rows.close();
+         if (key != null) {
+            addUpdate(update, containerId, key, userMetadata);
+            blobs++;
+         }
+         update.executeBatch();
+      } finally {
+         update.close();
+         select.close();
+      }
+   }
+
+   private static void addUpdate(PreparedStatement update, long containerId, String key,
+         Map<String, String> userMetadata) throws SQLException {
+      update.setString(1, UserMetadataCodec.encode(userMetadata));
+      update.setLong(2, containerId);
+      update.setString(3, key);
+      update.addBatch();
+   }
+
+   private static void copyChunkLists(Connection connection) throws SQLException {
+      Statement select = connection.createStatement();
+      PreparedStatement insert = connection.prepareStatement("INSERT INTO " + PAYLOAD_CHUNK_TABLE
+            + " (payload_id, seq, chunk_id, chunk_offset, chunk_size) VALUES (?, ?, ?, ?, ?)");
+      try {
+         // The order of the chunks was not stored, but each payload created its chunks one after the other
+         ResultSet rows = select.executeQuery("SELECT l." + LEGACY_PAYLOAD_COLUMN + ", l." + LEGACY_CHUNK_COLUMN
+               + ", c.size FROM " + LEGACY_CHUNKS_TABLE + " l JOIN " + CHUNK_TABLE + " c ON c.id = l."
+               + LEGACY_CHUNK_COLUMN + " ORDER BY l." + LEGACY_PAYLOAD_COLUMN + ", l." + LEGACY_CHUNK_COLUMN);
+         int references = 0;
+         Long payloadId = null;
+         int seq = 0;
+         long offset = 0;
+         while (rows.next()) {
+            if (payloadId == null || rows.getLong(1) != payloadId) {
+               payloadId = rows.getLong(1);
+               seq = 0;
+               offset = 0;
+            }
+            int size = rows.getInt(3);
+            insert.setLong(1, payloadId);
+            insert.setInt(2, seq++);
+            insert.setLong(3, rows.getLong(2));
+            insert.setLong(4, offset);
+            insert.setInt(5, size);
+            insert.addBatch();
+            offset += size;
+            if (++references % BATCH_SIZE == 0) {
+               insert.executeBatch();
+            }
+         }
+         rows.close();
+         insert.executeBatch();
+      } finally {
+         insert.close();
+         select.close();
+      }
+   }
+
+   private static void backfillChunks(Connection connection) throws SQLException {
+      DatabaseMetaData metaData = connection.getMetaData();
+      addColumnIfMissing(connection, CHUNK_TABLE, "codec", "VARCHAR(255)");
+      addColumnIfMissing(connection, CHUNK_TABLE, "hash", "VARCHAR(255)");
+      addColumnIfMissing(connection, CHUNK_TABLE, "referenceCount", "INTEGER");
+      // Previous versions did not compress chunks
+      execute(connection, "UPDATE " + CHUNK_TABLE + " SET codec = '" + ChunkCodec.NONE.name()
+            + "' WHERE codec IS NULL");
+      List<String> counts = Lists.newArrayList();
+      for (String table : new String[] { PAYLOAD_CHUNK_TABLE, PART_CHUNK_TABLE }) {
+         if (tableExists(metaData, table)) {
+            counts.add("(SELECT COUNT(*) FROM " + table + " r WHERE r.chunk_id = " + CHUNK_TABLE + ".id)");
+         }
+      }
+      // Unreferenced chunks get a count of zero, so the garbage collector deletes them
+      execute(connection, "UPDATE " + CHUNK_TABLE + " SET referenceCount = "
+            + (counts.isEmpty() ? "0" : Joiner.on(" + ").join(counts)) + " WHERE referenceCount IS NULL");
+   }
+
+   /**
+    * Moves the chunk id generator one block past the largest chunk id. The
+    * providers read its value differently: EclipseLink hands out the ids after
+    * it, Hibernate the block ending at it or, with its legacy hi/lo mapping,
+    * the block starting at the value times the block size. All of them start
+    * past the largest id from there.
+    */
+   private static void seedChunkIds(Connection connection) throws SQLException {
+      if (!tableExists(connection.getMetaData(), ChunkEntity.ID_TABLE)) {
+         execute(connection, "CREATE TABLE " + ChunkEntity.ID_TABLE + " (" + ChunkEntity.ID_NAME_COLUMN
+               + " VARCHAR(255) NOT NULL PRIMARY KEY, " + ChunkEntity.ID_VALUE_COLUMN + " BIGINT)");
+      }
+      Long maxId = selectLong(connection, "SELECT MAX(id) FROM " + CHUNK_TABLE);
+      long value = (maxId == null ? 0 : maxId) + ChunkEntity.ID_ALLOCATION_SIZE;
+      Long current = selectLong(connection, "SELECT " + ChunkEntity.ID_VALUE_COLUMN + " FROM " + ChunkEntity.ID_TABLE
+            + " WHERE " + ChunkEntity.ID_NAME_COLUMN + " = '" + ChunkEntity.ID_NAME + "'");
+      if (current != null && current >= value) {
+         return;
+      }
+      PreparedStatement update = connection.prepareStatement("UPDATE " + ChunkEntity.ID_TABLE + " SET "
+            + ChunkEntity.ID_VALUE_COLUMN + " = ? WHERE " + ChunkEntity.ID_NAME_COLUMN + " = ?");
+      PreparedStatement insert = connection.prepareStatement("INSERT INTO " + ChunkEntity.ID_TABLE + " ("
+            + ChunkEntity.ID_NAME_COLUMN + ", " + ChunkEntity.ID_VALUE_COLUMN + ") VALUES (?, ?)");
+      try {
+         update.setLong(1, value);
+         update.setString(2, ChunkEntity.ID_NAME);
+         if (update.executeUpdate() == 0) {
+            insert.setString(1, ChunkEntity.ID_NAME);
+            insert.setLong(2, value);
+            insert.executeUpdate();
+         }
+      } finally {
+         insert.close();
+         update.close();
+      }
+   }
+
+   private static Long selectLong(Connection connection, String sql) throws SQLException {
+      Statement statement = connection.createStatement();
+      try {
+         ResultSet rows = statement.executeQuery(sql);
+         try {
+            if (!rows.next()) {
+               return null;
+            }
+            long value = rows.getLong(1);
+            return rows.wasNull() ? null : value;
+         } finally {
+            rows.close();
+         }
+      } finally {
+         statement.close();
+      }
+   }
+
+   private static void addColumnIfMissing(Connection connection, String table, String column, String type)
+         throws SQLException {
+      if (!columnExists(connection.getMetaData(), table, column)) {
+         execute(connection, "ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+      }
+   }
+
+   private static void execute(Connection connection, String sql) throws SQLException {
+      Statement statement = connection.createStatement();
+      try {
+         statement.execute(sql);
+      } finally {
+         statement.close();
+      }
+   }
+
+   // Unquoted identifiers may be stored in upper or lower case depending on the database
+   private static boolean tableExists(DatabaseMetaData metaData, String table) throws SQLException {
+      for (String name : new String[] { table, table.toUpperCase(Locale.ENGLISH), table.toLowerCase(Locale.ENGLISH) }) {
+         ResultSet tables = metaData.getTables(null, null, name, null);
+         try {
+            if (tables.next()) {
+               return true;
+            }
+         } finally {
+            tables.close();
+         }
+      }
+      return false;
+   }
+
+   private static boolean columnExists(DatabaseMetaData metaData, String table, String column) throws SQLException {
+      for (String name : new String[] { table, table.toUpperCase(Locale.ENGLISH), table.toLowerCase(Locale.ENGLISH) }) {
+         ResultSet columns = metaData.getColumns(null, null, name, null);
+         try {
+            while (columns.next()) {
+               if (column.equalsIgnoreCase(columns.getString("COLUMN_NAME"))) {
+                  return true;
+               }
+            }
+         } finally {
+            columns.close();
+         }
+      }
+      return false;
+   }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.options;
+
+import org.jclouds.blobstore.options.CreateContainerOptions;
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.jclouds.jdbc.util.ChunkCodec;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Container creation options of the jdbc blobstore.
+ */
+public class JdbcCreateContainerOptions extends CreateContainerOptions {
+
+   private ChunkCodec compression;
+   private Integer chunkSize;
+   private Boolean adaptiveChunkSize;
+
+   /**
+    * Compresses the chunks of the blobs stored in the container with the given
+    * codec, instead of the one configured for the blobstore.
+    */
+   public JdbcCreateContainerOptions compression(ChunkCodec compression) {
+      this.compression = checkNotNull(compression, "compression");
+      return this;
+   }
+
+   public ChunkCodec getCompression() {
+      return compression;
+   }
+
+   /**
+    * Splits the payloads stored in the container into chunks of the given
+    * size, instead of the one configured for the blobstore.
+    */
+   public JdbcCreateContainerOptions chunkSize(int chunkSize) {
+      checkArgument(chunkSize > 0 && chunkSize <= JdbcConstants.MAX_CHUNK_SIZE,
+            "chunk size must be between 1 and %s", JdbcConstants.MAX_CHUNK_SIZE);
+      this.chunkSize = chunkSize;
+      return this;
+   }
+
+   public Integer getChunkSize() {
+      return chunkSize;
+   }
+
+   /**
+    * Adapts the chunk size to the content length of each payload stored in
+    * the container: small payloads are stored inline and large ones in larger
+    * chunks.
+    */
+   public JdbcCreateContainerOptions adaptiveChunkSize(boolean adaptiveChunkSize) {
+      this.adaptiveChunkSize = adaptiveChunkSize;
+      return this;
+   }
+
+   public Boolean getAdaptiveChunkSize() {
+      return adaptiveChunkSize;
+   }
+
+   @Override
+   public JdbcCreateContainerOptions publicRead() {
+      super.publicRead();
+      return this;
+   }
+
+   public static class Builder {
+
+      /**
+       * @see JdbcCreateContainerOptions#compression(ChunkCodec)
+       */
+      public static JdbcCreateContainerOptions compression(ChunkCodec compression) {
+         return new JdbcCreateContainerOptions().compression(compression);
+      }
+
+      /**
+       * @see JdbcCreateContainerOptions#chunkSize(int)
+       */
+      public static JdbcCreateContainerOptions chunkSize(int chunkSize) {
+         return new JdbcCreateContainerOptions().chunkSize(chunkSize);
+      }
+
+      /**
+       * @see JdbcCreateContainerOptions#adaptiveChunkSize(boolean)
+       */
+      public static JdbcCreateContainerOptions adaptiveChunkSize(boolean adaptiveChunkSize) {
+         return new JdbcCreateContainerOptions().adaptiveChunkSize(adaptiveChunkSize);
+      }
+
+      /**
+       * @see JdbcCreateContainerOptions#publicRead()
+       */
+      public static JdbcCreateContainerOptions publicRead() {
+         return new JdbcCreateContainerOptions().publicRead();
+      }
+   }
+}
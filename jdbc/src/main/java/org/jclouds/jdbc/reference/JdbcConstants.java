@@ -23,6 +23,189 @@ public final class JdbcConstants {
 
     public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
 
+    /**
+     * Largest chunk size a container can use, which is also the length of
+     * the chunk data column.
+     */
+    public static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Largest payload stored inline in its payload row, which is also the
+     * length of the inline data column.
+     */
+    public static final int MAX_INLINE_SIZE = 32 * 1024;
+
+    /**
+     * Maximum length of the user metadata of a blob, once serialized.
+     */
+    public static final int MAX_USER_METADATA_LENGTH = 8192;
+
+    /**
+     * Number of chunks fetched in the background ahead of the one being read.
+     * Zero disables read-ahead.
+     */
+    public static final String PROPERTY_READ_AHEAD_CHUNKS = "jclouds.jdbc.read-ahead-chunks";
+
+    /**
+     * Number of chunks an upload reads, hashes and compresses ahead on a
+     * background thread while the previous ones are written, 0 to read and
+     * write them in turn on the calling thread.
+     */
+    public static final String PROPERTY_UPLOAD_PIPELINE_DEPTH = "jclouds.jdbc.upload-pipeline-depth";
+
+    /**
+     * Number of chunks written before they are flushed to the database and
+     * detached from the persistence context during an upload.
+     */
+    public static final String PROPERTY_CHUNK_FLUSH_INTERVAL = "jclouds.jdbc.chunk-flush-interval";
+
+    /**
+     * Maximum number of bytes the idle chunk buffers kept for reuse by uploads
+     * may take, across all chunk sizes.
+     */
+    public static final String PROPERTY_BUFFER_POOL_SIZE = "jclouds.jdbc.buffer-pool-size";
+
+    /**
+     * Maximum number of multipart upload parts written concurrently, across
+     * all uploads. Each part holds a database connection while it is written,
+     * so this should stay below the size of the connection pool.
+     */
+    public static final String PROPERTY_MULTIPART_PARALLELISM = "jclouds.jdbc.multipart.parallelism";
+
+    /**
+     * Whether chunks with identical content are stored only once and shared
+     * between payloads.
+     */
+    public static final String PROPERTY_DEDUPLICATION = "jclouds.jdbc.deduplication";
+
+    /**
+     * Maximum number of container name to id mappings cached in memory.
+     */
+    public static final String PROPERTY_CONTAINER_CACHE_SIZE = "jclouds.jdbc.container-cache-size";
+
+    /**
+     * Codec chunks are compressed with in containers created without an
+     * explicit one: NONE, LZ4 or DEFLATE.
+     */
+    public static final String PROPERTY_COMPRESSION = "jclouds.jdbc.compression";
+
+    /**
+     * Size of the chunks payloads are split into in containers created
+     * without an explicit one, at most {@link #MAX_CHUNK_SIZE}.
+     */
+    public static final String PROPERTY_CHUNK_SIZE = "jclouds.jdbc.chunk-size";
+
+    /**
+     * Whether containers created without an explicit setting adapt the chunk
+     * size to the declared content length of each payload: payloads up to
+     * {@link #PROPERTY_INLINE_THRESHOLD} bytes are stored inline, and large
+     * payloads get larger chunks.
+     */
+    public static final String PROPERTY_ADAPTIVE_CHUNK_SIZE = "jclouds.jdbc.adaptive-chunk-size";
+
+    /**
+     * Largest payload stored inline in its payload row by containers with an
+     * adaptive chunk size, at most {@link #MAX_INLINE_SIZE}.
+     */
+    public static final String PROPERTY_INLINE_THRESHOLD = "jclouds.jdbc.inline-threshold";
+
+    /**
+     * How chunk content is written and read: "jpa" through the persistence
+     * provider, or "jdbc" with plain JDBC statements on connections of the
+     * blobstore data source.
+     */
+    public static final String PROPERTY_CHUNK_STORE = "jclouds.jdbc.chunk-store";
+
+    /**
+     * JDBC url of the built-in connection pool handed to the persistence
+     * unit. When empty, the connection settings of the persistence unit are
+     * used instead, unless a {@link javax.sql.DataSource} is bound.
+     */
+    public static final String PROPERTY_DATASOURCE_URL = "jclouds.jdbc.datasource.url";
+
+    /**
+     * JDBC driver class of the built-in connection pool.
+     */
+    public static final String PROPERTY_DATASOURCE_DRIVER = "jclouds.jdbc.datasource.driver";
+
+    /**
+     * User the built-in connection pool connects as.
+     */
+    public static final String PROPERTY_DATASOURCE_USER = "jclouds.jdbc.datasource.user";
+
+    /**
+     * Password the built-in connection pool connects with.
+     */
+    public static final String PROPERTY_DATASOURCE_PASSWORD = "jclouds.jdbc.datasource.password";
+
+    /**
+     * Maximum number of connections opened by the built-in connection pool.
+     */
+    public static final String PROPERTY_POOL_MAX_SIZE = "jclouds.jdbc.pool.max-size";
+
+    /**
+     * Number of idle connections the built-in connection pool keeps open.
+     */
+    public static final String PROPERTY_POOL_MIN_IDLE = "jclouds.jdbc.pool.min-idle";
+
+    /**
+     * Milliseconds to wait for a free connection before failing.
+     */
+    public static final String PROPERTY_POOL_MAX_WAIT = "jclouds.jdbc.pool.max-wait";
+
+    /**
+     * Number of prepared statements cached per pooled connection, 0 to
+     * disable statement caching.
+     */
+    public static final String PROPERTY_POOL_STATEMENT_CACHE_SIZE = "jclouds.jdbc.pool.statement-cache-size";
+
+    /**
+     * Seconds a connection may stay borrowed before it is logged as a possible
+     * leak, 0 to disable leak detection.
+     */
+    public static final String PROPERTY_POOL_LEAK_DETECTION_TIMEOUT = "jclouds.jdbc.pool.leak-detection-timeout";
+
+    /**
+     * Seconds between two passes of the collector deleting the chunks no blob
+     * references anymore, 0 to disable it.
+     */
+    public static final String PROPERTY_GC_INTERVAL = "jclouds.jdbc.gc.interval";
+
+    /**
+     * Number of chunks the collector scans per transaction.
+     */
+    public static final String PROPERTY_GC_BATCH_SIZE = "jclouds.jdbc.gc.batch-size";
+
+    /**
+     * Maximum number of batches the collector scans per second.
+     */
+    public static final String PROPERTY_GC_BATCHES_PER_SECOND = "jclouds.jdbc.gc.batches-per-second";
+
+    /**
+     * Directory of the local disk cache of chunks read from the database,
+     * empty to disable the cache. Its content is deleted on startup.
+     */
+    public static final String PROPERTY_CACHE_DIRECTORY = "jclouds.jdbc.cache.directory";
+
+    /**
+     * Maximum number of bytes the local chunk cache may take on disk.
+     */
+    public static final String PROPERTY_CACHE_SIZE = "jclouds.jdbc.cache.size";
+
+    /**
+     * Registry operation metrics are recorded in: "none" to disable them,
+     * "default" for the built-in registry, or the class name of a
+     * {@link org.jclouds.jdbc.metrics.MetricsRegistry} implementation.
+     */
+    public static final String PROPERTY_METRICS = "jclouds.jdbc.metrics";
+
+    /**
+     * Whether the built-in metrics and the data source metrics are exposed as
+     * MBeans. The data source metrics are exposed even when operation metrics
+     * are disabled.
+     */
+    public static final String PROPERTY_METRICS_JMX = "jclouds.jdbc.metrics.jmx";
+
     private JdbcConstants() {
         throw new AssertionError("Intentionally Unimplemented");
     }
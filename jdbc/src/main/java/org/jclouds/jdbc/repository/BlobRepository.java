@@ -16,39 +16,284 @@
  */
 package org.jclouds.jdbc.repository;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import org.jclouds.jdbc.entity.BlobEntity;
 import org.jclouds.jdbc.entity.BlobEntityPK;
-import org.jclouds.jdbc.entity.ContainerEntity;
+import org.jclouds.jdbc.entity.BlobSummary;
+import org.jclouds.jdbc.entity.PayloadEntity;
 
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.util.Collection;
 import java.util.List;
 
 @Singleton
 public class BlobRepository extends GenericRepository<BlobEntity, BlobEntityPK> {
 
+   private static final int MAX_KEYS_PER_STATEMENT = 500;
+
    @Inject
    private BlobRepository(Provider<EntityManager> entityManager) {
       super(entityManager);
    }
 
-    public List<BlobEntity> findBlobsByContainer(ContainerEntity containerEntity) {
+    public List<BlobEntity> findBlobsByContainer(Long containerId) {
         return entityManager.get().createQuery("SELECT b FROM " + entityClass.getName() + " b "
               + "WHERE"
-              + " b.containerEntity = :containerEntity", entityClass)
-                .setParameter("containerEntity", containerEntity)
+              + " b.containerEntity.id = :containerId", entityClass)
+                .setParameter("containerId", containerId)
                 .getResultList();
     }
 
-   public List<BlobEntity> findBlobsByDirectory(ContainerEntity containerEntity, String directory) {
+   public List<BlobEntity> findBlobsByDirectory(Long containerId, String directory) {
       return entityManager.get().createQuery("SELECT b FROM " + entityClass.getName() + " b "
-            + "WHERE b.containerEntity = :containerEntity AND b.key != :directoryName AND b.key LIKE :directoryLike ", entityClass)
-            .setParameter("containerEntity", containerEntity)
+            + "WHERE b.containerEntity.id = :containerId AND b.key != :directoryName AND b.key LIKE :directoryLike ", entityClass)
+            .setParameter("containerId", containerId)
             .setParameter("directoryName", directory)
             .setParameter("directoryLike", directory + "%")
             .getResultList();
    }
 
+   public List<String> findBlobKeysByContainer(Long containerId) {
+      return entityManager.get().createQuery("SELECT b.key FROM " + entityClass.getName() + " b "
+            + "WHERE b.containerEntity.id = :containerId ORDER BY b.key", String.class)
+            .setParameter("containerId", containerId)
+            .getResultList();
+   }
+
+   /**
+    * Reads, in key order, the blobs whose key starts with the given prefix and
+    * sorts after the given key, leaving out the keys starting with skipPrefix
+    * if it is set. The query seeks on the (container, key) primary key index
+    * and stops after maxResults rows.
+    */
+   public List<BlobSummary> findBlobSummaries(Long containerId, String prefix, String afterKey,
+         String skipPrefix, int maxResults) {
+      StringBuilder query = new StringBuilder("SELECT NEW " + BlobSummary.class.getName()
+            + "(b.key, b.directory, b.etag, b.creationDate, b.lastModified, p.contentType, p.contentLength, "
+            + "p.contentMD5, b.userMetadata) FROM " + entityClass.getName() + " b JOIN b.payload p "
+            + "WHERE b.containerEntity.id = :containerId");
+      if (prefix != null && !prefix.isEmpty()) {
+         query.append(" AND b.key LIKE :prefix ESCAPE '!'");
+      }
+      if (afterKey != null) {
+         query.append(" AND b.key > :afterKey");
+      }
+      if (skipPrefix != null) {
+         // Does not depend on how the collation orders the keys under the skipped prefix
+         query.append(" AND b.key NOT LIKE :skipPrefix ESCAPE '!'");
+      }
+      query.append(" ORDER BY b.key");
+      TypedQuery<BlobSummary> typedQuery = entityManager.get().createQuery(query.toString(), BlobSummary.class)
+            .setParameter("containerId", containerId)
+            .setMaxResults(maxResults);
+      if (prefix != null && !prefix.isEmpty()) {
+         typedQuery.setParameter("prefix", escapeLike(prefix) + "%");
+      }
+      if (afterKey != null) {
+         typedQuery.setParameter("afterKey", afterKey);
+      }
+      if (skipPrefix != null) {
+         typedQuery.setParameter("skipPrefix", escapeLike(skipPrefix) + "%");
+      }
+      return typedQuery.getResultList();
+   }
+
+   public boolean blobExists(Long containerId, String key) {
+      return !entityManager.get().createQuery("SELECT b.key FROM " + entityClass.getName() + " b "
+            + "WHERE b.containerEntity.id = :containerId AND b.key = :key", String.class)
+            .setParameter("containerId", containerId)
+            .setParameter("key", key)
+            .setMaxResults(1)
+            .getResultList()
+            .isEmpty();
+   }
+
+   /**
+    * Counts the blobs of a container, or only the ones inside a directory when
+    * one is given.
+    */
+   public long countBlobs(Long containerId, String directory, boolean recursive) {
+      BlobSelection selection = directory == null ? BlobSelection.all() : BlobSelection.directory(directory, recursive);
+      TypedQuery<Long> query = entityManager.get().createQuery("SELECT COUNT(b) FROM " + entityClass.getName()
+            + " b WHERE " + selection.jpql("b"), Long.class);
+      selection.bind(query, containerId);
+      return query.getSingleResult();
+   }
+
+   /**
+    * Lists the keys of the blobs directly inside a directory, leaving out
+    * subdirectories.
+    */
+   public List<String> findFileKeysInDirectory(Long containerId, String directory) {
+      BlobSelection selection = BlobSelection.directory(directory, false);
+      TypedQuery<String> query = entityManager.get().createQuery("SELECT b.key FROM " + entityClass.getName()
+            + " b WHERE " + selection.jpql("b") + " AND b.directory = false", String.class);
+      selection.bind(query, containerId);
+      return query.getResultList();
+   }
+
+   /**
+    * Deletes all the blobs of a container, or only the ones inside a directory
+    * when one is given, with their payloads.
+    *
+    * @return the ids of the chunks the deleted payloads referenced
+    */
+   public List<Long> deleteBlobs(Long containerId, String directory) {
+      return deleteBlobs(containerId, directory == null ? BlobSelection.all()
+            : BlobSelection.directory(directory, true));
+   }
+
+   /**
+    * Deletes the blobs with the given keys, with their payloads.
+    *
+    * @return the ids of the chunks the deleted payloads referenced
+    */
+   public List<Long> deleteBlobsByKeys(Long containerId, Collection<String> keys) {
+      ImmutableList.Builder<Long> chunkIds = ImmutableList.builder();
+      for (List<String> partition : Iterables.partition(ImmutableSet.copyOf(keys), MAX_KEYS_PER_STATEMENT)) {
+         chunkIds.addAll(deleteBlobs(containerId, BlobSelection.keys(partition)));
+      }
+      return chunkIds.build();
+   }
+
+   /**
+    * Removes the selected blobs with a fixed number of statements. The chunk
+    * collection table cannot be targeted by JPQL, so its rows are removed with
+    * a native statement first.
+    */
+   private List<Long> deleteBlobs(Long containerId, BlobSelection selection) {
+      EntityManager em = entityManager.get();
+      TypedQuery<Long> chunkQuery = em.createQuery("SELECT c.chunkId FROM " + entityClass.getName() + " b "
+            + "JOIN b.payload p JOIN p.chunks c WHERE " + selection.jpql("b"), Long.class);
+      selection.bind(chunkQuery, containerId);
+      List<Long> chunkIds = chunkQuery.getResultList();
+
+      TypedQuery<Long> payloadQuery = em.createQuery("SELECT p.id FROM " + entityClass.getName() + " b "
+            + "JOIN b.payload p WHERE " + selection.jpql("b"), Long.class);
+      selection.bind(payloadQuery, containerId);
+      List<Long> payloadIds = payloadQuery.getResultList();
+      if (payloadIds.isEmpty()) {
+         return chunkIds;
+      }
+
+      List<Object> parameters = Lists.newArrayList();
+      executeNative("DELETE FROM PayloadChunk WHERE payload_id IN (SELECT payload_id FROM BlobEntity WHERE "
+            + selection.sql("id", "key", containerId, parameters) + ")", parameters);
+
+      Query blobDelete = em.createQuery("DELETE FROM " + entityClass.getName() + " b WHERE " + selection.jpql("b"));
+      selection.bind(blobDelete, containerId);
+      blobDelete.executeUpdate();
+      for (List<Long> ids : Iterables.partition(payloadIds, MAX_KEYS_PER_STATEMENT)) {
+         em.createQuery("DELETE FROM " + PayloadEntity.class.getName() + " p WHERE p.id IN :ids")
+               .setParameter("ids", ids)
+               .executeUpdate();
+      }
+      return chunkIds;
+   }
+
+   private void executeNative(String sql, List<Object> parameters) {
+      Query query = entityManager.get().createNativeQuery(sql);
+      for (int i = 0; i < parameters.size(); i++) {
+         query.setParameter(i + 1, parameters.get(i));
+      }
+      query.executeUpdate();
+   }
+
+   private static String escapeLike(String value) {
+      return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+   }
+
+   /**
+    * The blobs of a container targeted by a bulk statement: all of them, the
+    * ones inside a directory or the ones with the given keys. The condition can
+    * be rendered both in JPQL and in native SQL.
+    */
+   private static final class BlobSelection {
+
+      private final String directory;
+      private final boolean recursive;
+      private final Collection<String> keys;
+
+      private BlobSelection(String directory, boolean recursive, Collection<String> keys) {
+         this.directory = directory;
+         this.recursive = recursive;
+         this.keys = keys;
+      }
+
+      static BlobSelection all() {
+         return new BlobSelection(null, true, null);
+      }
+
+      static BlobSelection directory(String directory, boolean recursive) {
+         return new BlobSelection(directory.endsWith("/") ? directory : directory + "/", recursive, null);
+      }
+
+      static BlobSelection keys(Collection<String> keys) {
+         return new BlobSelection(null, true, keys);
+      }
+
+      String jpql(String alias) {
+         StringBuilder condition = new StringBuilder(alias + ".containerEntity.id = :containerId");
+         if (directory != null) {
+            condition.append(" AND " + alias + ".key LIKE :prefix ESCAPE '!' AND " + alias + ".key <> :directory");
+            if (!recursive) {
+               condition.append(" AND " + alias + ".key NOT LIKE :nested ESCAPE '!'");
+            }
+         }
+         if (keys != null) {
+            condition.append(" AND " + alias + ".key IN :keys");
+         }
+         return condition.toString();
+      }
+
+      void bind(Query query, Long containerId) {
+         query.setParameter("containerId", containerId);
+         if (directory != null) {
+            query.setParameter("prefix", escapeLike(directory) + "%");
+            query.setParameter("directory", directory);
+            if (!recursive) {
+               query.setParameter("nested", escapeLike(directory) + "%/%");
+            }
+         }
+         if (keys != null) {
+            query.setParameter("keys", keys);
+         }
+      }
+
+      String sql(String containerColumn, String keyColumn, Long containerId,
+            List<Object> parameters) {
+         parameters.add(containerId);
+         StringBuilder condition = new StringBuilder(containerColumn + " = ?" + parameters.size());
+         if (directory != null) {
+            parameters.add(escapeLike(directory) + "%");
+            condition.append(" AND " + keyColumn + " LIKE ?" + parameters.size() + " ESCAPE '!'");
+            parameters.add(directory);
+            condition.append(" AND " + keyColumn + " <> ?" + parameters.size());
+            if (!recursive) {
+               parameters.add(escapeLike(directory) + "%/%");
+               condition.append(" AND " + keyColumn + " NOT LIKE ?" + parameters.size() + " ESCAPE '!'");
+            }
+         }
+         if (keys != null) {
+            condition.append(" AND " + keyColumn + " IN (");
+            boolean first = true;
+            for (String key : keys) {
+               parameters.add(key);
+               condition.append(first ? "?" : ", ?").append(parameters.size());
+               first = false;
+            }
+            condition.append(")");
+         }
+         return condition.toString();
+      }
+   }
+
 }
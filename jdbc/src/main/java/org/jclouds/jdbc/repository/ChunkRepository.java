@@ -16,19 +16,213 @@
  */
 package org.jclouds.jdbc.repository;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
 import org.jclouds.jdbc.entity.ChunkEntity;
+import org.jclouds.jdbc.entity.MultipartPartEntity;
+import org.jclouds.jdbc.entity.PayloadEntity;
 
 import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkState;
 
 @Singleton
 public class ChunkRepository extends GenericRepository<ChunkEntity, Long> {
 
+   private static final int MAX_IDS_PER_STATEMENT = 500;
+
    @Inject
    private ChunkRepository(Provider<EntityManager> entityManager) {
       super(entityManager);
    }
 
+   public Long findChunkIdByHash(String hash, int size) {
+      List<Long> ids = entityManager.get().createQuery("SELECT c.id FROM " + entityClass.getName() + " c "
+            + "WHERE c.hash = :hash AND c.size = :size", Long.class)
+            .setParameter("hash", hash)
+            .setParameter("size", size)
+            .setFlushMode(FlushModeType.COMMIT)
+            .setMaxResults(1)
+            .getResultList();
+      return ids.isEmpty() ? null : ids.get(0);
+   }
+
+   /**
+    * Adds a reference to a chunk, unless it has already been released by all its
+    * owners and is about to be deleted.
+    *
+    * @return true if the reference was added
+    */
+   public boolean retain(Long id) {
+      return entityManager.get().createQuery("UPDATE " + entityClass.getName() + " c "
+            + "SET c.referenceCount = c.referenceCount + 1 WHERE c.id = :id AND c.referenceCount > 0")
+            .setParameter("id", id)
+            .executeUpdate() == 1;
+   }
+
+   /**
+    * Adds one reference per occurrence of a chunk id, so a new payload can share
+    * the chunks of an existing one.
+    *
+    * @throws IllegalStateException if some chunk has already been released by all its owners
+    */
+   public void retain(Collection<Long> chunkIds) {
+      if (chunkIds.isEmpty()) {
+         return;
+      }
+      ListMultimap<Integer, Long> idsByCount = idsByCount(HashMultiset.create(chunkIds));
+      int updated = 0;
+      for (Integer count : idsByCount.keySet()) {
+         for (List<Long> ids : Iterables.partition(idsByCount.get(count), MAX_IDS_PER_STATEMENT)) {
+            updated += entityManager.get().createQuery("UPDATE " + entityClass.getName() + " c "
+                  + "SET c.referenceCount = c.referenceCount + :count WHERE c.id IN :ids AND c.referenceCount > 0")
+                  .setParameter("count", count)
+                  .setParameter("ids", ids)
+                  .executeUpdate();
+         }
+      }
+      checkState(updated == idsByCount.size(), "Some chunks are no longer referenced");
+   }
+
+   /**
+    * Removes one reference per occurrence of a chunk id and deletes the chunks
+    * nobody references anymore.
+    *
+    * @return the ids of the deleted chunks
+    */
+   public List<Long> release(Collection<Long> chunkIds) {
+      if (chunkIds.isEmpty()) {
+         return ImmutableList.of();
+      }
+      Multiset<Long> references = HashMultiset.create(chunkIds);
+      ListMultimap<Integer, Long> idsByCount = idsByCount(references);
+      for (Integer count : idsByCount.keySet()) {
+         for (List<Long> ids : Iterables.partition(idsByCount.get(count), MAX_IDS_PER_STATEMENT)) {
+            entityManager.get().createQuery("UPDATE " + entityClass.getName() + " c "
+                  + "SET c.referenceCount = c.referenceCount - :count WHERE c.id IN :ids")
+                  .setParameter("count", count)
+                  .setParameter("ids", ids)
+                  .executeUpdate();
+         }
+      }
+      List<Long> deleted = Lists.newArrayList();
+      for (List<Long> ids : Iterables.partition(ImmutableList.copyOf(references.elementSet()),
+            MAX_IDS_PER_STATEMENT)) {
+         List<Long> unreferenced = entityManager.get().createQuery("SELECT c.id FROM " + entityClass.getName() + " c "
+               + "WHERE c.id IN :ids AND c.referenceCount <= 0", Long.class)
+               .setParameter("ids", ids)
+               .getResultList();
+         if (!unreferenced.isEmpty()) {
+            entityManager.get().createQuery("DELETE FROM " + entityClass.getName() + " c WHERE c.id IN :ids")
+                  .setParameter("ids", unreferenced)
+                  .executeUpdate();
+            deleted.addAll(unreferenced);
+         }
+      }
+      return deleted;
+   }
+
+   /**
+    * @return the reference counts of up to max chunks with an id greater than the given one, in
+    *         ascending id order
+    */
+   public Map<Long, Integer> findReferenceCountsAfter(long after, int max) {
+      List<Object[]> rows = entityManager.get().createQuery("SELECT c.id, c.referenceCount FROM "
+            + entityClass.getName() + " c WHERE c.id > :after ORDER BY c.id", Object[].class)
+            .setParameter("after", after)
+            .setMaxResults(max)
+            .getResultList();
+      Map<Long, Integer> referenceCounts = Maps.newLinkedHashMap();
+      for (Object[] row : rows) {
+         referenceCounts.put((Long) row[0], ((Number) row[1]).intValue());
+      }
+      return referenceCounts;
+   }
+
+   /**
+    * @return the given chunk ids a payload or a multipart part points to
+    */
+   public Set<Long> findReferencedIds(Collection<Long> chunkIds) {
+      Set<Long> referenced = Sets.newHashSet();
+      for (List<Long> ids : Iterables.partition(ImmutableList.copyOf(chunkIds), MAX_IDS_PER_STATEMENT)) {
+         for (String owner : ImmutableList.of(PayloadEntity.class.getName(), MultipartPartEntity.class.getName())) {
+            referenced.addAll(entityManager.get().createQuery("SELECT DISTINCT r.chunkId FROM " + owner + " o "
+                  + "JOIN o.chunks r WHERE r.chunkId IN :ids", Long.class)
+                  .setParameter("ids", ids)
+                  .getResultList());
+         }
+      }
+      return referenced;
+   }
+
+   /**
+    * Deletes the given chunks if no payload or multipart part points to them
+    * and their reference count is still the given one. Both conditions are
+    * part of the delete statement, so a chunk an upload started using since
+    * the counts were read is kept: the upload has retained it, which changed
+    * its count.
+    *
+    * @param referenceCounts the reference count each chunk must still have, by id
+    * @return the uncompressed size of each deleted chunk, by id
+    */
+   public Map<Long, Integer> deleteUnreferenced(Map<Long, Integer> referenceCounts) {
+      ListMultimap<Integer, Long> idsByCount = ArrayListMultimap.create();
+      for (Map.Entry<Long, Integer> entry : referenceCounts.entrySet()) {
+         idsByCount.put(entry.getValue(), entry.getKey());
+      }
+      Map<Long, Integer> deleted = Maps.newHashMap();
+      for (Integer count : idsByCount.keySet()) {
+         for (List<Long> ids : Iterables.partition(idsByCount.get(count), MAX_IDS_PER_STATEMENT)) {
+            Map<Long, Integer> sizes = Maps.newHashMap();
+            for (Object[] row : entityManager.get().createQuery("SELECT c.id, c.size FROM " + entityClass.getName()
+                  + " c WHERE c.id IN :ids", Object[].class)
+                  .setParameter("ids", ids)
+                  .getResultList()) {
+               sizes.put((Long) row[0], ((Number) row[1]).intValue());
+            }
+            int updated = entityManager.get().createQuery("DELETE FROM " + entityClass.getName() + " c "
+                  + "WHERE c.id IN :ids AND c.referenceCount = :count "
+                  + "AND c.id NOT IN (SELECT r.chunkId FROM " + PayloadEntity.class.getName() + " p "
+                  + "JOIN p.chunks r WHERE r.chunkId IN :ids) "
+                  + "AND c.id NOT IN (SELECT r.chunkId FROM " + MultipartPartEntity.class.getName() + " m "
+                  + "JOIN m.chunks r WHERE r.chunkId IN :ids)")
+                  .setParameter("ids", ids)
+                  .setParameter("count", count)
+                  .executeUpdate();
+            if (updated != sizes.size()) {
+               // Some chunks were kept, or were already gone
+               sizes.keySet().removeAll(entityManager.get().createQuery("SELECT c.id FROM " + entityClass.getName()
+                     + " c WHERE c.id IN :ids", Long.class)
+                     .setParameter("ids", ids)
+                     .getResultList());
+            }
+            deleted.putAll(sizes);
+         }
+      }
+      return deleted;
+   }
+
+   private static ListMultimap<Integer, Long> idsByCount(Multiset<Long> references) {
+      ListMultimap<Integer, Long> idsByCount = ArrayListMultimap.create();
+      for (Multiset.Entry<Long> entry : references.entrySet()) {
+         idsByCount.put(entry.getCount(), entry.getElement());
+      }
+      return idsByCount;
+   }
+
 }
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.repository;
+
+import com.google.inject.ProvidedBy;
+import org.jclouds.jdbc.entity.ChunkEntity;
+import org.jclouds.jdbc.util.ChunkCodec;
+
+/**
+ * Moves chunk content between the application and the database. Chunk
+ * metadata such as hashes and reference counts is always handled by
+ * {@link ChunkRepository}; a chunk store only decides how the bytes are
+ * written and read. Chunk stores are called within the current transaction,
+ * but may write on connections of their own, leaving the chunks of a failed
+ * upload to the garbage collector.
+ */
+@ProvidedBy(ChunkStoreProvider.class)
+public interface ChunkStore {
+
+   /**
+    * Starts writing the chunks of a payload.
+    */
+   Writer newWriter();
+
+   /**
+    * Reads a chunk with its content.
+    *
+    * @return the chunk, or null if it does not exist
+    */
+   ChunkEntity read(Long id);
+
+   /**
+    * Writes the chunks of a payload. A writer is used by a single thread.
+    */
+   interface Writer {
+
+      /**
+       * Adds a chunk. The chunk has an id when this method returns, but its
+       * content may only be sent to the database by {@link #flush()}, so the
+       * data buffer must not be reused until the flush returns.
+       *
+       * @param data the content of the chunk, compressed with the codec if there is one
+       * @param size the uncompressed size of the chunk
+       * @param hash the content hash, or null
+       * @param codec the codec the data is compressed with, or null
+       * @return the chunk, with its id
+       */
+      ChunkEntity write(byte[] data, int size, String hash, ChunkCodec codec);
+
+      /**
+       * Sends the chunks written since the last flush to the database and
+       * detaches them from the persistence context, if they were in it. Their
+       * data buffers are no longer used once this method returns.
+       */
+      void flush();
+   }
+}
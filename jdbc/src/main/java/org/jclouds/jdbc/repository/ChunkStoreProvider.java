@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.repository;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import org.jclouds.jdbc.reference.JdbcConstants;
+
+import javax.inject.Named;
+
+/**
+ * Picks the chunk store configured with {@link JdbcConstants#PROPERTY_CHUNK_STORE}.
+ */
+public class ChunkStoreProvider implements Provider<ChunkStore> {
+
+   private final String chunkStore;
+   private final Provider<JpaChunkStore> jpaChunkStore;
+   private final Provider<JdbcChunkStore> jdbcChunkStore;
+
+   @Inject
+   ChunkStoreProvider(@Named(JdbcConstants.PROPERTY_CHUNK_STORE) String chunkStore,
+         Provider<JpaChunkStore> jpaChunkStore, Provider<JdbcChunkStore> jdbcChunkStore) {
+      this.chunkStore = chunkStore;
+      this.jpaChunkStore = jpaChunkStore;
+      this.jdbcChunkStore = jdbcChunkStore;
+   }
+
+   @Override
+   public ChunkStore get() {
+      if ("jpa".equalsIgnoreCase(chunkStore)) {
+         return jpaChunkStore.get();
+      } else if ("jdbc".equalsIgnoreCase(chunkStore)) {
+         return jdbcChunkStore.get();
+      }
+      throw new IllegalArgumentException("Unknown chunk store: " + chunkStore);
+   }
+
+}
@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.repository;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import org.jclouds.jdbc.datasource.DataSourceSupplier;
+import org.jclouds.jdbc.datasource.MeteredDataSource;
+import org.jclouds.jdbc.entity.ChunkEntity;
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.jclouds.jdbc.util.ChunkCodec;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Chunk store writing and reading chunk content with plain JDBC, bypassing
+ * the persistence context. Each flush is one batched insert, with the content
+ * streamed with {@link PreparedStatement#setBinaryStream}, and reads stream it
+ * back with {@link ResultSet#getBinaryStream}.
+ * <p>
+ * It uses connections of the blobstore data source, outside of the current
+ * transaction, so it needs the built-in pool or a data source bound by the
+ * application. The chunks of a failed upload are then committed anyway, and
+ * left to the garbage collector. Ids are reserved in blocks from the table
+ * generator of {@link ChunkEntity}, moving it past them so that the
+ * persistence provider does not hand them out again. Tested with H2 on
+ * EclipseLink and HSQLDB on Hibernate.
+ */
+@Singleton
+public class JdbcChunkStore implements ChunkStore {
+
+   private static final String INSERT_CHUNK = "INSERT INTO ChunkEntity (id, data, size, codec, hash, referenceCount) "
+         + "VALUES (?, ?, ?, ?, ?, ?)";
+   private static final String SELECT_CHUNK = "SELECT size, codec, hash, referenceCount, data FROM ChunkEntity "
+         + "WHERE id = ?";
+   private static final String SELECT_ID_VALUE = "SELECT " + ChunkEntity.ID_VALUE_COLUMN + " FROM "
+         + ChunkEntity.ID_TABLE + " WHERE " + ChunkEntity.ID_NAME_COLUMN + " = ?";
+   private static final String UPDATE_ID_VALUE = "UPDATE " + ChunkEntity.ID_TABLE + " SET "
+         + ChunkEntity.ID_VALUE_COLUMN + " = ? WHERE " + ChunkEntity.ID_NAME_COLUMN + " = ? AND "
+         + ChunkEntity.ID_VALUE_COLUMN + " = ?";
+   private static final String INSERT_ID_VALUE = "INSERT INTO " + ChunkEntity.ID_TABLE + " ("
+         + ChunkEntity.ID_NAME_COLUMN + ", " + ChunkEntity.ID_VALUE_COLUMN + ") VALUES (?, ?)";
+   // Property enabling the table generator of Hibernate that reads the value like EclipseLink
+   private static final String HIBERNATE_NEW_GENERATOR_MAPPINGS = "hibernate.id.new_generator_mappings";
+   // Number of generator allocations reserved at once
+   private static final int RESERVED_ALLOCATIONS = 16;
+
+   private final DataSourceSupplier dataSourceSupplier;
+   private final Provider<EntityManagerFactory> entityManagerFactory;
+
+   // Next reserved id and the end of the reserved ids, excluded
+   private long nextId;
+   private long reservedUntil;
+
+   @Inject
+   JdbcChunkStore(DataSourceSupplier dataSourceSupplier, Provider<EntityManagerFactory> entityManagerFactory) {
+      this.dataSourceSupplier = dataSourceSupplier;
+      this.entityManagerFactory = entityManagerFactory;
+   }
+
+   @Override
+   public Writer newWriter() {
+      return new Writer() {
+         private final List<ChunkEntity> pending = Lists.newArrayList();
+
+         @Override
+         public ChunkEntity write(byte[] data, int size, String hash, ChunkCodec codec) {
+            ChunkEntity chunk = new ChunkEntity(data, size, hash, codec);
+            chunk.setId(nextId());
+            pending.add(chunk);
+            return chunk;
+         }
+
+         @Override
+         public void flush() {
+            if (pending.isEmpty()) {
+               return;
+            }
+            Connection connection = null;
+            PreparedStatement statement = null;
+            try {
+               connection = connection();
+               statement = connection.prepareStatement(INSERT_CHUNK);
+               for (ChunkEntity chunk : pending) {
+                  byte[] data = chunk.getData();
+                  statement.setLong(1, chunk.getId());
+                  statement.setBinaryStream(2, new ByteArrayInputStream(data), data.length);
+                  statement.setInt(3, chunk.getSize());
+                  if (chunk.getCodec() == null) {
+                     statement.setNull(4, Types.VARCHAR);
+                  } else {
+                     statement.setString(4, chunk.getCodec().name());
+                  }
+                  if (chunk.getHash() == null) {
+                     statement.setNull(5, Types.VARCHAR);
+                  } else {
+                     statement.setString(5, chunk.getHash());
+                  }
+                  // Read now, as deduplicated uploads count references to chunks still pending
+                  statement.setInt(6, chunk.getReferenceCount());
+                  statement.addBatch();
+               }
+               statement.executeBatch();
+            } catch (SQLException e) {
+               throw new PersistenceException("Could not write chunks", e);
+            } finally {
+               close(statement);
+               close(connection);
+            }
+            for (ChunkEntity chunk : pending) {
+               chunk.setData(null);
+            }
+            pending.clear();
+         }
+      };
+   }
+
+   @Override
+   public ChunkEntity read(Long id) {
+      Connection connection = null;
+      PreparedStatement statement = null;
+      try {
+         connection = connection();
+         statement = connection.prepareStatement(SELECT_CHUNK);
+         statement.setLong(1, id);
+         ResultSet resultSet = statement.executeQuery();
+         if (!resultSet.next()) {
+            return null;
+         }
+         String codec = resultSet.getString(2);
+         ChunkEntity chunk = new ChunkEntity(null, resultSet.getInt(1), resultSet.getString(3),
+               codec == null ? null : ChunkCodec.valueOf(codec));
+         chunk.setId(id);
+         chunk.setReferenceCount(resultSet.getInt(4));
+         InputStream data = resultSet.getBinaryStream(5);
+         chunk.setData(data == null ? new byte[0] : readData(data));
+         return chunk;
+      } catch (SQLException e) {
+         throw new PersistenceException("Could not read chunk " + id, e);
+      } catch (IOException e) {
+         throw new PersistenceException("Could not read chunk " + id, e);
+      } finally {
+         close(statement);
+         close(connection);
+      }
+   }
+
+   private synchronized long nextId() {
+      if (nextId == reservedUntil) {
+         reserveIds();
+      }
+      return nextId++;
+   }
+
+   /**
+    * Reserves the next ids by moving the generator value forward with a
+    * compare-and-set on its row, which other blobstore processes and the
+    * persistence provider see as soon as it is committed. The providers read
+    * the value differently: Hibernate as the high part of the ids, unless its
+    * new generator mappings are enabled, EclipseLink as the last id it handed
+    * out and the pooled generator of Hibernate as the last id of the next
+    * allocation. The value is moved one allocation further than the reserved
+    * ids in the last two cases.
+    */
+   private void reserveIds() {
+      boolean hiLo = usesHiLo(entityManagerFactory.get());
+      int allocationSize = ChunkEntity.ID_ALLOCATION_SIZE;
+      Connection connection = null;
+      SQLException insertFailure = null;
+      try {
+         connection = connection();
+         while (true) {
+            Long value = selectLong(connection, SELECT_ID_VALUE);
+            long current = value == null ? 0 : value;
+            long first;
+            long end;
+            long next;
+            if (hiLo) {
+               first = current * allocationSize;
+               next = current + RESERVED_ALLOCATIONS;
+               end = next * allocationSize;
+            } else {
+               first = current + 1;
+               end = first + RESERVED_ALLOCATIONS * allocationSize;
+               next = end - 1 + allocationSize;
+            }
+            try {
+               if (compareAndSet(connection, value, next)) {
+                  // Like the providers, never hand out 0
+                  nextId = Math.max(first, 1);
+                  reservedUntil = end;
+                  return;
+               }
+            } catch (SQLException e) {
+               // Another process may have created the row first, in which case it is read again
+               if (value != null || insertFailure != null) {
+                  throw e;
+               }
+               insertFailure = e;
+            }
+         }
+      } catch (SQLException e) {
+         throw new PersistenceException("Could not reserve chunk ids", e);
+      } finally {
+         close(connection);
+      }
+   }
+
+   /**
+    * Whether the persistence provider reads the generator value as the high
+    * part of the ids, as Hibernate does for table generators unless its new
+    * generator mappings are enabled.
+    */
+   private static boolean usesHiLo(EntityManagerFactory factory) {
+      return factory.getClass().getName().startsWith("org.hibernate.")
+            && !Boolean.parseBoolean(String.valueOf(factory.getProperties().get(HIBERNATE_NEW_GENERATOR_MAPPINGS)));
+   }
+
+   private static boolean compareAndSet(Connection connection, Long expected, long value) throws SQLException {
+      PreparedStatement statement = null;
+      try {
+         if (expected == null) {
+            // The row is only created by the provider when it first allocates ids
+            statement = connection.prepareStatement(INSERT_ID_VALUE);
+            statement.setString(1, ChunkEntity.ID_NAME);
+            statement.setLong(2, value);
+         } else {
+            statement = connection.prepareStatement(UPDATE_ID_VALUE);
+            statement.setLong(1, value);
+            statement.setString(2, ChunkEntity.ID_NAME);
+            statement.setLong(3, expected);
+         }
+         return statement.executeUpdate() == 1;
+      } finally {
+         close(statement);
+      }
+   }
+
+   private static Long selectLong(Connection connection, String sql) throws SQLException {
+      PreparedStatement statement = connection.prepareStatement(sql);
+      try {
+         statement.setString(1, ChunkEntity.ID_NAME);
+         ResultSet resultSet = statement.executeQuery();
+         if (!resultSet.next()) {
+            return null;
+         }
+         long value = resultSet.getLong(1);
+         return resultSet.wasNull() ? null : value;
+      } finally {
+         close(statement);
+      }
+   }
+
+   private Connection connection() throws SQLException {
+      Optional<MeteredDataSource> dataSource = dataSourceSupplier.get();
+      checkState(dataSource.isPresent(), "The jdbc chunk store needs a data source, set %s or bind one",
+            JdbcConstants.PROPERTY_DATASOURCE_URL);
+      Connection connection = dataSource.get().getConnection();
+      // Each statement stands on its own, chunks are only referenced once the upload commits
+      connection.setAutoCommit(true);
+      return connection;
+   }
+
+   private static byte[] readData(InputStream data) throws IOException {
+      try {
+         return ByteStreams.toByteArray(data);
+      } finally {
+         data.close();
+      }
+   }
+
+   private static void close(Statement statement) {
+      if (statement != null) {
+         try {
+            statement.close();
+         } catch (SQLException e) {
+            // Nothing left to do with the statement
+         }
+      }
+   }
+
+   private static void close(Connection connection) {
+      if (connection != null) {
+         try {
+            connection.close();
+         } catch (SQLException e) {
+            // Nothing left to do with the connection
+         }
+      }
+   }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.repository;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.jclouds.jdbc.entity.ChunkEntity;
+import org.jclouds.jdbc.util.ChunkCodec;
+
+import java.util.List;
+
+/**
+ * Chunk store writing and reading chunk content through the persistence
+ * provider, like any other entity.
+ */
+@Singleton
+public class JpaChunkStore implements ChunkStore {
+
+   private final ChunkRepository chunkRepository;
+
+   @Inject
+   JpaChunkStore(ChunkRepository chunkRepository) {
+      this.chunkRepository = chunkRepository;
+   }
+
+   @Override
+   public Writer newWriter() {
+      return new Writer() {
+         private final List<ChunkEntity> pending = Lists.newArrayList();
+
+         @Override
+         public ChunkEntity write(byte[] data, int size, String hash, ChunkCodec codec) {
+            ChunkEntity chunk = chunkRepository.create(new ChunkEntity(data, size, hash, codec));
+            pending.add(chunk);
+            return chunk;
+         }
+
+         @Override
+         public void flush() {
+            if (pending.isEmpty()) {
+               return;
+            }
+            chunkRepository.flush();
+            for (ChunkEntity chunk : pending) {
+               chunkRepository.detach(chunk);
+            }
+            pending.clear();
+         }
+      };
+   }
+
+   @Override
+   public ChunkEntity read(Long id) {
+      return chunkRepository.find(id);
+   }
+
+}
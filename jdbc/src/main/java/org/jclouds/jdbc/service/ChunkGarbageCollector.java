@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.service;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.persist.Transactional;
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.jclouds.jdbc.repository.ChunkRepository;
+import org.jclouds.jdbc.util.ChunkCache;
+
+import javax.inject.Named;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Incremental mark-and-sweep collector of the chunks no payload or multipart
+ * part references, as left behind by failed uploads. Chunks are scanned in id
+ * order, one bounded batch per transaction, at a limited rate. A chunk is only
+ * deleted when it was already unreferenced during the previous pass, with the
+ * same reference count. The delete checks again that nothing points to the
+ * chunk and that its count did not change, so a chunk a deduplicating upload
+ * retained in the meantime is kept.
+ */
+@Singleton
+public class ChunkGarbageCollector {
+
+   private final ChunkRepository chunkRepository;
+   private final ChunkCache chunkCache;
+   private final int batchSize;
+   private final RateLimiter rateLimiter;
+
+   // Reference counts of the unreferenced chunks found by the previous and the current pass
+   private Map<Long, Integer> marked = Maps.newHashMap();
+   private Map<Long, Integer> marking = Maps.newHashMap();
+
+   private final AtomicLong reclaimedChunks = new AtomicLong();
+   private final AtomicLong reclaimedBytes = new AtomicLong();
+
+   @Inject
+   ChunkGarbageCollector(ChunkRepository chunkRepository, ChunkCache chunkCache,
+         @Named(JdbcConstants.PROPERTY_GC_BATCH_SIZE) int batchSize,
+         @Named(JdbcConstants.PROPERTY_GC_BATCHES_PER_SECOND) double batchesPerSecond) {
+      checkArgument(batchSize > 0, "batch size must be positive");
+      checkArgument(batchesPerSecond > 0, "batches per second must be positive");
+      this.chunkRepository = chunkRepository;
+      this.chunkCache = chunkCache;
+      this.batchSize = batchSize;
+      this.rateLimiter = RateLimiter.create(batchesPerSecond);
+   }
+
+   /**
+    * Scans all the chunks once, deleting the ones found unreferenced by this
+    * pass and the previous one.
+    *
+    * @return the uncompressed size of the deleted chunks
+    */
+   public synchronized long collect() {
+      marking = Maps.newHashMap();
+      long reclaimed = 0;
+      Batch batch = new Batch(0L, ImmutableList.<Long>of(), 0);
+      do {
+         rateLimiter.acquire();
+         // Counted once the batch transaction has committed
+         batch = collectBatch(batch.last);
+         chunkCache.invalidate(batch.garbage);
+         reclaimedChunks.addAndGet(batch.garbage.size());
+         reclaimedBytes.addAndGet(batch.bytes);
+         reclaimed += batch.bytes;
+      } while (batch.last != null);
+      marked = marking;
+      return reclaimed;
+   }
+
+   /**
+    * @return the number of chunks deleted since startup
+    */
+   public long getReclaimedChunks() {
+      return reclaimedChunks.get();
+   }
+
+   /**
+    * @return the uncompressed size of the chunks deleted since startup
+    */
+   public long getReclaimedBytes() {
+      return reclaimedBytes.get();
+   }
+
+   @Transactional
+   protected Batch collectBatch(long after) {
+      Map<Long, Integer> referenceCounts = chunkRepository.findReferenceCountsAfter(after, batchSize);
+      if (referenceCounts.isEmpty()) {
+         return new Batch(null, ImmutableList.<Long>of(), 0);
+      }
+      Set<Long> referenced = chunkRepository.findReferencedIds(referenceCounts.keySet());
+      Map<Long, Integer> garbage = Maps.newHashMap();
+      for (Map.Entry<Long, Integer> entry : referenceCounts.entrySet()) {
+         Long id = entry.getKey();
+         if (referenced.contains(id)) {
+            continue;
+         }
+         if (entry.getValue().equals(marked.get(id))) {
+            garbage.put(id, entry.getValue());
+         } else {
+            marking.put(id, entry.getValue());
+         }
+      }
+      long bytes = 0;
+      List<Long> deleted = ImmutableList.of();
+      if (!garbage.isEmpty()) {
+         Map<Long, Integer> sizes = chunkRepository.deleteUnreferenced(garbage);
+         for (Integer size : sizes.values()) {
+            bytes += size;
+         }
+         deleted = ImmutableList.copyOf(sizes.keySet());
+      }
+      return new Batch(Iterables.getLast(referenceCounts.keySet()), deleted, bytes);
+   }
+
+   protected static class Batch {
+      // Id of the last chunk scanned, null when there are no chunks left
+      private final Long last;
+      private final List<Long> garbage;
+      private final long bytes;
+
+      private Batch(Long last, List<Long> garbage, long bytes) {
+         this.last = last;
+         this.garbage = garbage;
+         this.bytes = bytes;
+      }
+   }
+
+}
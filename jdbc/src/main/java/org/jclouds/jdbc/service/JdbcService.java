@@ -16,59 +16,185 @@
  */
 package org.jclouds.jdbc.service;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.hash.HashingInputStream;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.persist.Transactional;
+import org.jclouds.blobstore.ContainerNotFoundException;
 import org.jclouds.blobstore.domain.Blob;
 import org.jclouds.blobstore.domain.BlobAccess;
 import org.jclouds.blobstore.domain.ContainerAccess;
+import org.jclouds.io.Payload;
 import org.jclouds.jdbc.conversion.BlobToBlobEntity;
 import org.jclouds.jdbc.entity.BlobEntity;
 import org.jclouds.jdbc.entity.BlobEntityPK;
+import org.jclouds.jdbc.entity.BlobSummary;
 import org.jclouds.jdbc.entity.ChunkEntity;
+import org.jclouds.jdbc.entity.ChunkReference;
 import org.jclouds.jdbc.entity.ContainerEntity;
+import org.jclouds.jdbc.entity.MultipartPartEntity;
+import org.jclouds.jdbc.entity.MultipartUploadEntity;
 import org.jclouds.jdbc.entity.PayloadEntity;
+import org.jclouds.jdbc.metrics.JdbcMetrics;
+import org.jclouds.jdbc.metrics.Operation;
 import org.jclouds.jdbc.reference.JdbcConstants;
 import org.jclouds.jdbc.repository.BlobRepository;
 import org.jclouds.jdbc.repository.ChunkRepository;
+import org.jclouds.jdbc.repository.ChunkStore;
 import org.jclouds.jdbc.repository.ContainerRepository;
+import org.jclouds.jdbc.repository.MultipartPartRepository;
+import org.jclouds.jdbc.repository.MultipartUploadRepository;
+import org.jclouds.jdbc.repository.PayloadRepository;
+import org.jclouds.jdbc.util.ChunkBufferPool;
+import org.jclouds.jdbc.util.ChunkCache;
+import org.jclouds.jdbc.util.ChunkCodec;
+import org.jclouds.lifecycle.Closer;
 import org.jclouds.util.Closeables2;
 
+import javax.inject.Named;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.io.BaseEncoding.base16;
 
 @Singleton
 public class JdbcService {
 
    private static final String DIRECTORY_MD5 = Hashing.md5().hashBytes(new byte[0]).toString();
+   private static final HashFunction CHUNK_HASH = Hashing.sha256();
+   // Adaptive containers grow the chunk size of large payloads to keep them around this many chunks
+   private static final int ADAPTIVE_CHUNKS_PER_PAYLOAD = 256;
 
    private final ContainerRepository containerRepository;
    private final BlobRepository blobRepository;
    private final ChunkRepository chunkRepository;
+   private final ChunkStore chunkStore;
+   private final PayloadRepository payloadRepository;
+   private final MultipartUploadRepository multipartUploadRepository;
+   private final MultipartPartRepository multipartPartRepository;
    private final BlobToBlobEntity blobToBlobEntity;
+   private final ChunkBufferPool bufferPool;
+   private final ChunkCache chunkCache;
+   private final JdbcMetrics metrics;
+   private final int chunkFlushInterval;
+   private final boolean deduplication;
+   private final Cache<String, Long> containerIds;
+   private final ChunkCodec defaultCompression;
+   private final int defaultChunkSize;
+   private final boolean defaultAdaptiveChunkSize;
+   private final int inlineThreshold;
+   private final int uploadPipelineDepth;
+   // Not the user executor: parts of multipart uploads already run there, and would wait for their own readers
+   private final ExecutorService readerExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+         .setNameFormat("jclouds-jdbc-upload-%d").setDaemon(true).build());
 
    @Inject
    JdbcService(ContainerRepository containerRepository, BlobRepository blobRepository, ChunkRepository chunkRepository,
-         BlobToBlobEntity blobToBlobEntity) {
+         ChunkStore chunkStore, PayloadRepository payloadRepository, MultipartUploadRepository multipartUploadRepository,
+         MultipartPartRepository multipartPartRepository, BlobToBlobEntity blobToBlobEntity, ChunkBufferPool bufferPool, ChunkCache chunkCache,
+         JdbcMetrics metrics,
+         @Named(JdbcConstants.PROPERTY_CHUNK_FLUSH_INTERVAL) int chunkFlushInterval,
+         @Named(JdbcConstants.PROPERTY_DEDUPLICATION) boolean deduplication,
+         @Named(JdbcConstants.PROPERTY_CONTAINER_CACHE_SIZE) int containerCacheSize,
+         @Named(JdbcConstants.PROPERTY_COMPRESSION) String defaultCompression,
+         @Named(JdbcConstants.PROPERTY_CHUNK_SIZE) int defaultChunkSize,
+         @Named(JdbcConstants.PROPERTY_ADAPTIVE_CHUNK_SIZE) boolean defaultAdaptiveChunkSize,
+         @Named(JdbcConstants.PROPERTY_INLINE_THRESHOLD) int inlineThreshold,
+         @Named(JdbcConstants.PROPERTY_UPLOAD_PIPELINE_DEPTH) int uploadPipelineDepth, Closer closer) {
       this.containerRepository = containerRepository;
       this.blobRepository = blobRepository;
       this.chunkRepository = chunkRepository;
+      this.chunkStore = chunkStore;
+      this.payloadRepository = payloadRepository;
+      this.multipartUploadRepository = multipartUploadRepository;
+      this.multipartPartRepository = multipartPartRepository;
       this.blobToBlobEntity = blobToBlobEntity;
+      this.bufferPool = bufferPool;
+      this.chunkCache = chunkCache;
+      this.metrics = metrics;
+      this.chunkFlushInterval = Math.max(1, chunkFlushInterval);
+      this.deduplication = deduplication;
+      this.containerIds = CacheBuilder.newBuilder().maximumSize(containerCacheSize).build();
+      this.defaultCompression = ChunkCodec.valueOf(defaultCompression.toUpperCase(Locale.ENGLISH));
+      checkArgument(defaultChunkSize > 0 && defaultChunkSize <= JdbcConstants.MAX_CHUNK_SIZE,
+            "%s must be between 1 and %s", JdbcConstants.PROPERTY_CHUNK_SIZE, JdbcConstants.MAX_CHUNK_SIZE);
+      checkArgument(inlineThreshold >= 0 && inlineThreshold <= JdbcConstants.MAX_INLINE_SIZE,
+            "%s must be between 0 and %s", JdbcConstants.PROPERTY_INLINE_THRESHOLD, JdbcConstants.MAX_INLINE_SIZE);
+      this.defaultChunkSize = defaultChunkSize;
+      this.defaultAdaptiveChunkSize = defaultAdaptiveChunkSize;
+      this.inlineThreshold = inlineThreshold;
+      this.uploadPipelineDepth = uploadPipelineDepth;
+      closer.addToClose(new Closeable() {
+         @Override
+         public void close() {
+            readerExecutor.shutdownNow();
+         }
+      });
+   }
+
+   /**
+    * Creates a container.
+    *
+    * @param compression the codec chunks of the container are compressed with, or null to use the
+    *                    configured default
+    * @param chunkSize the size payloads of the container are split into, or null to use the
+    *                  configured default
+    * @param adaptiveChunkSize whether the chunk size adapts to the content length of each payload,
+    *                          or null to use the configured default
+    */
+   @Transactional
+   public void createContainer(String containerName, ContainerAccess access, ChunkCodec compression,
+         Integer chunkSize, Boolean adaptiveChunkSize) {
+      checkArgument(chunkSize == null || (chunkSize > 0 && chunkSize <= JdbcConstants.MAX_CHUNK_SIZE),
+            "chunk size must be between 1 and %s", JdbcConstants.MAX_CHUNK_SIZE);
+      containerIds.invalidate(containerName);
+      containerRepository.create(ContainerEntity.builder()
+            .name(containerName)
+            .containerAccess(access)
+            .compression(compression != null ? compression : defaultCompression)
+            .chunkSize(chunkSize != null ? chunkSize : defaultChunkSize)
+            .adaptiveChunkSize(adaptiveChunkSize != null ? adaptiveChunkSize : defaultAdaptiveChunkSize)
+            .build());
+   }
+
+   @Transactional
+   public void createContainer(String containerName, ContainerAccess access, ChunkCodec compression) {
+      createContainer(containerName, access, compression, null, null);
    }
 
    @Transactional
    public void createContainer(String containerName, ContainerAccess access) {
-      containerRepository.create(ContainerEntity.builder().name(containerName).containerAccess(access).build());
+      createContainer(containerName, access, null);
    }
 
    @Transactional
@@ -81,13 +207,35 @@ public class JdbcService {
       return containerRepository.findAllContainers();
    }
 
+   @Transactional
+   public boolean containerExists(String containerName) {
+      return findContainerId(containerName) != null;
+   }
+
    @Transactional
    public ContainerEntity findContainerByName(String containerName) {
       return containerRepository.findContainerByName(containerName);
    }
 
+   /**
+    * @return the size payloads of the container are split into, or the configured default if the
+    *         container does not exist
+    */
+   @Transactional
+   public int getChunkSize(String containerName) {
+      ContainerEntity container = containerRepository.findContainerByName(containerName);
+      return container == null || container.getChunkSize() == null ? defaultChunkSize : container.getChunkSize();
+   }
+
    @Transactional
    public void deleteContainerByName(String containerName) {
+      Long containerId = findContainerId(containerName);
+      if (containerId != null) {
+         for (MultipartUploadEntity upload : multipartUploadRepository.findUploadsByContainer(containerId)) {
+            deleteMultipartUpload(upload);
+         }
+      }
+      containerIds.invalidate(containerName);
       containerRepository.deleteContainerByName(containerName);
    }
 
@@ -100,59 +248,166 @@ public class JdbcService {
 
    @Transactional
    public boolean blobExists(String containerName, String key) {
-      return findBlobById(containerName, key) != null;
+      Long containerId = findContainerId(containerName);
+      return containerId != null && blobRepository.blobExists(containerId, key);
    }
 
+   @Transactional
+   public long countBlobs(String containerName, String directoryName, boolean recursive) {
+      Long containerId = findContainerId(containerName);
+      return containerId == null ? 0 : blobRepository.countBlobs(containerId, directoryName, recursive);
+   }
+
+   /**
+    * @throws ContainerNotFoundException if the container does not exist
+    */
    @Transactional(rollbackOn = IOException.class)
    public BlobEntity createOrModifyBlob(String containerName, Blob blob, BlobAccess blobAccess) throws IOException {
-      List<Long> chunks;
-      HashingInputStream his = new HashingInputStream(Hashing.md5(), blob.getPayload().openStream());
-      try {
-         chunks = storeData(his);
-      } finally {
-         Closeables2.closeQuietly(his);
-      }
-      HashCode actualHashCode = his.hash();
-      HashCode expectedHashCode = blob.getPayload().getContentMetadata().getContentMD5AsHashCode();
-      if (expectedHashCode != null && !actualHashCode.equals(expectedHashCode)) {
-         throw new IOException("MD5 hash code mismatch, actual: " + actualHashCode +
-               " expected: " + expectedHashCode);
+      Long containerId = findContainerId(containerName);
+      if (containerId == null) {
+         throw new ContainerNotFoundException(containerName, null);
       }
-
-      String key = blob.getMetadata().getName();
-      Date creationDate = null;
-      BlobEntity oldBlobEntity = findBlobById(containerName, key);
-      if (oldBlobEntity != null) {
-         creationDate = oldBlobEntity.getCreationDate();
-      }
-      BlobEntity blobEntity = blobToBlobEntity.apply(blob);
-      blobEntity.getPayload().setChunks(chunks);
-      blobEntity.setContainerEntity(containerRepository.findContainerByName(containerName));
-      blobEntity.setKey(key);
-      blobEntity.setBlobAccess(blobAccess);
-      blobEntity.setCreationDate(creationDate);
-      blobEntity.setLastModified(new Date());
-      blobEntity.setEtag(base16().lowerCase().encode(actualHashCode.asBytes()));
-      blobEntity.getPayload().setContentMD5(actualHashCode.asBytes());
-
-      BlobEntity result = blobRepository.save(blobEntity);
-      return result;
+      StoredPayload stored = storePayload(blob.getPayload(), containerRepository.find(containerId), true);
+      byte[] md5 = stored.md5.asBytes();
+      return saveBlob(containerId, blob, blobAccess, stored.chunks, stored.inlineData, stored.chunkSize,
+            base16().lowerCase().encode(md5), md5);
    }
 
    @Transactional
    public BlobEntity createDirectoryBlob(String containerName, Blob blob, BlobAccess blobAccess) {
+      BlobEntity oldBlobEntity = findBlobById(containerName, blob.getMetadata().getName());
+      if (oldBlobEntity != null) {
+         deleteChunks(oldBlobEntity.getPayload().getChunks());
+      }
       BlobEntity blobEntity = BlobEntity.builder(null, null)
             .userMetadata(blob.getMetadata().getUserMetadata())
             .directory(true)
             .payload(PayloadEntity.builder().contentType("application/directory").build())
             .build();
-      blobEntity.setContainerEntity(containerRepository.findContainerByName(containerName));
+      blobEntity.setContainerEntity(containerRepository.getReference(findContainerId(containerName)));
       blobEntity.setKey(blob.getMetadata().getName());
       blobEntity.setBlobAccess(blobAccess);
       blobEntity.setEtag(DIRECTORY_MD5);
       return blobRepository.save(blobEntity);
    }
 
+   @Transactional
+   public MultipartUploadEntity createMultipartUpload(String containerName, String key) {
+      Long containerId = findContainerId(containerName);
+      checkArgument(containerId != null, "Container %s does not exist", containerName);
+      return multipartUploadRepository.create(new MultipartUploadEntity(UUID.randomUUID().toString(), containerId,
+            key));
+   }
+
+   /**
+    * Stores a part of a multipart upload in its own transaction, so parts can be
+    * written concurrently and retried independently. A part uploaded again
+    * replaces the previous one.
+    */
+   @Transactional(rollbackOn = IOException.class)
+   public MultipartPartEntity createOrReplaceMultipartPart(String uploadId, int partNumber, Payload payload)
+         throws IOException {
+      MultipartUploadEntity upload = multipartUploadRepository.find(uploadId);
+      checkArgument(upload != null, "Multipart upload %s does not exist", uploadId);
+      // Parts are never inlined, their chunks are linked to the blob when the upload completes
+      StoredPayload stored = storePayload(payload, containerRepository.find(upload.getContainerId()), false);
+      MultipartPartEntity oldPart = multipartPartRepository.findPart(uploadId, partNumber);
+      if (oldPart != null) {
+         deleteChunks(oldPart.getChunks());
+         multipartPartRepository.delete(oldPart);
+         // The old row has to be gone before the new one is inserted
+         multipartPartRepository.flush();
+      }
+      return multipartPartRepository.create(new MultipartPartEntity(uploadId, partNumber, stored.chunks,
+            totalSize(stored.chunks), base16().lowerCase().encode(stored.md5.asBytes())));
+   }
+
+   @Transactional
+   public List<MultipartPartEntity> findMultipartParts(String uploadId) {
+      return multipartPartRepository.findPartsByUpload(uploadId);
+   }
+
+   @Transactional
+   public List<MultipartUploadEntity> findMultipartUploads(String containerName) {
+      Long containerId = findContainerId(containerName);
+      return containerId == null ? ImmutableList.<MultipartUploadEntity>of()
+            : multipartUploadRepository.findUploadsByContainer(containerId);
+   }
+
+   @Transactional
+   public void deleteMultipartUpload(String uploadId) {
+      MultipartUploadEntity upload = multipartUploadRepository.find(uploadId);
+      if (upload != null) {
+         deleteMultipartUpload(upload);
+      }
+   }
+
+   /**
+    * Turns the given parts, in order, into a blob. The chunk lists of the parts
+    * are concatenated with shifted offsets and no data is copied. Parts left
+    * out are deleted with their chunks.
+    *
+    * @param blob the name and metadata of the blob to create; its payload is ignored
+    */
+   @Transactional
+   public BlobEntity completeMultipartUpload(String uploadId, List<Integer> partNumbers, Blob blob,
+         BlobAccess blobAccess) {
+      MultipartUploadEntity upload = multipartUploadRepository.find(uploadId);
+      checkArgument(upload != null, "Multipart upload %s does not exist", uploadId);
+      Map<Integer, MultipartPartEntity> parts = Maps.newHashMap();
+      for (MultipartPartEntity part : multipartPartRepository.findPartsByUpload(uploadId)) {
+         parts.put(part.getPartNumber(), part);
+      }
+
+      ImmutableList.Builder<ChunkReference> chunks = ImmutableList.builder();
+      Hasher etag = Hashing.md5().newHasher();
+      long offset = 0;
+      int chunkSize = 0;
+      for (Integer partNumber : partNumbers) {
+         MultipartPartEntity part = parts.remove(partNumber);
+         checkArgument(part != null, "Part %s was not uploaded or is listed twice", partNumber);
+         for (ChunkReference chunk : part.getChunks()) {
+            chunks.add(new ChunkReference(chunk.getChunkId(), offset + chunk.getChunkOffset(), chunk.getChunkSize()));
+            chunkSize = Math.max(chunkSize, chunk.getChunkSize());
+         }
+         offset += part.getPartSize();
+         etag.putBytes(base16().lowerCase().decode(part.getEtag()));
+         multipartPartRepository.delete(part);
+      }
+      for (MultipartPartEntity part : parts.values()) {
+         deleteChunks(part.getChunks());
+         multipartPartRepository.delete(part);
+      }
+      multipartUploadRepository.delete(upload);
+
+      // Parts may have been split with different chunk sizes, the largest one is recorded
+      return saveBlob(upload.getContainerId(), blob, blobAccess, chunks.build(), null,
+            chunkSize == 0 ? null : chunkSize, etag.hash() + "-" + partNumbers.size(), null);
+   }
+
+   /**
+    * Copies a blob by pointing a new payload at the chunks of the source blob.
+    * No data is copied; each chunk gains one reference per use in the copy.
+    *
+    * @param blob the name and metadata of the copy; its payload is ignored
+    * @return the copy, or null if the source blob does not exist
+    */
+   @Transactional
+   public BlobEntity copyBlob(String fromContainer, String fromName, String toContainer, Blob blob,
+         BlobAccess blobAccess) {
+      BlobEntity source = findBlobById(fromContainer, fromName);
+      if (source == null) {
+         return null;
+      }
+      PayloadEntity payload = source.getPayload();
+      List<ChunkReference> chunks = ImmutableList.copyOf(payload.getChunks());
+      // Retained before the target is replaced, which may release the same chunks
+      retainChunks(chunks);
+      byte[] inlineData = payload.getInlineData() == null ? null : payload.getInlineData().clone();
+      return saveBlob(findContainerId(toContainer), blob, blobAccess, chunks, inlineData, payload.getChunkSize(),
+            source.getEtag(), payload.getContentMD5());
+   }
+
    @Transactional
    public BlobEntity createDirectoryBlob(String containerName, Blob blob) {
       return createDirectoryBlob(containerName, blob, null);
@@ -165,25 +420,65 @@ public class JdbcService {
 
    @Transactional
    public BlobEntity findBlobById(String containerName, String key) {
-      ContainerEntity containerEntity = containerRepository.findContainerByName(containerName);
-      return containerEntity == null ? null : blobRepository.find(new BlobEntityPK(containerEntity.getId(), key));
+      Long containerId = findContainerId(containerName);
+      return containerId == null ? null : blobRepository.find(new BlobEntityPK(containerId, key));
    }
 
-   @Transactional
+   /**
+    * Reads a chunk, from the local chunk cache if it is enabled and holds it.
+    */
    public ChunkEntity findChunkById(Long id) {
-      return chunkRepository.find(id);
+      ChunkEntity chunk = chunkCache.get(id);
+      if (chunk == null) {
+         chunk = readChunk(id);
+         if (chunk != null) {
+            chunkCache.put(id, chunk);
+         }
+      }
+      return chunk;
+   }
+
+   @Transactional
+   protected ChunkEntity readChunk(Long id) {
+      long start = metrics.start();
+      ChunkEntity chunk = chunkStore.read(id);
+      metrics.stop(Operation.CHUNK_READ, start, chunk == null ? 0 : chunk.getData().length, 1);
+      return chunk;
+   }
+
+   /**
+    * Reads the chunk list of a payload.
+    *
+    * @return the chunk references in payload order, or null if the payload does not exist
+    */
+   @Transactional
+   public List<ChunkReference> findChunkReferences(Long payloadId) {
+      PayloadEntity payload = payloadRepository.find(payloadId);
+      return payload == null ? null : ImmutableList.copyOf(payload.getChunks());
    }
 
    @Transactional
    public List<BlobEntity> findBlobsByContainer(String containerName) {
-      return blobRepository.findBlobsByContainer(containerRepository.findContainerByName(containerName));
+      return blobRepository.findBlobsByContainer(findContainerId(containerName));
+   }
+
+   @Transactional
+   public List<String> findBlobKeysByContainer(String containerName) {
+      return blobRepository.findBlobKeysByContainer(findContainerId(containerName));
+   }
+
+   @Transactional
+   public List<BlobSummary> findBlobSummaries(String containerName, String prefix, String afterKey,
+         String skipPrefix, int maxResults) {
+      return blobRepository.findBlobSummaries(findContainerId(containerName), prefix, afterKey, skipPrefix,
+            maxResults);
    }
 
    @Transactional
    public List<BlobEntity> findBlobsByDirectory(String containerName, String directoryName, boolean recursive) {
       ImmutableList.Builder<BlobEntity> result = ImmutableList.builder();
       List<BlobEntity> blobEntities = blobRepository
-            .findBlobsByDirectory(containerRepository.findContainerByName(containerName), directoryName);
+            .findBlobsByDirectory(findContainerId(containerName), directoryName);
       result.addAll(blobEntities);
       if (recursive) {
          for (BlobEntity blobEntity : blobEntities) {
@@ -197,25 +492,31 @@ public class JdbcService {
 
    @Transactional
    public void deleteBlobsByContainer(String containerName) {
-      List<BlobEntity> blobs = findBlobsByContainer(containerName);
-      for (BlobEntity blob : blobs) {
-         deleteBlob(containerName, blob.getKey());
+      Long containerId = findContainerId(containerName);
+      if (containerId != null) {
+         releaseChunks(blobRepository.deleteBlobs(containerId, null));
       }
    }
 
    @Transactional
    public void deleteBlobsByDirectory(String containerName, String directoryName, boolean recursive) {
-      List<BlobEntity> blobs = findBlobsByDirectory(containerName, directoryName, false);
-      for (BlobEntity blob : blobs) {
-         if (!blob.isDirectory()) {
-            deleteBlob(containerName, blob.getKey());
-         }
-         else {
-            if (recursive) {
-               deleteBlobsByDirectory(containerName, blob.getKey(), true);
-               deleteBlob(containerName, blob.getKey());
-            }
-         }
+      Long containerId = findContainerId(containerName);
+      if (containerId == null) {
+         return;
+      }
+      if (recursive) {
+         releaseChunks(blobRepository.deleteBlobs(containerId, directoryName));
+      } else {
+         releaseChunks(blobRepository.deleteBlobsByKeys(containerId,
+               blobRepository.findFileKeysInDirectory(containerId, directoryName)));
+      }
+   }
+
+   @Transactional
+   public void deleteBlobs(String containerName, Iterable<String> keys) {
+      Long containerId = findContainerId(containerName);
+      if (containerId != null) {
+         releaseChunks(blobRepository.deleteBlobsByKeys(containerId, ImmutableList.copyOf(keys)));
       }
    }
 
@@ -235,26 +536,435 @@ public class JdbcService {
       blobRepository.save(blobEntity);
    }
 
-   @Transactional
-   private void deleteChunks(List<Long> chunkIds) {
-      for (Long chunkId : chunkIds) {
-         chunkRepository.delete(chunkRepository.find(chunkId));
+   /**
+    * Stores a blob pointing at the given chunks, or holding the given inline
+    * data, replacing the blob with the same key if there is one. The chunks of
+    * the replaced blob are released.
+    */
+   private BlobEntity saveBlob(Long containerId, Blob blob, BlobAccess blobAccess, List<ChunkReference> chunks,
+         byte[] inlineData, Integer chunkSize, String etag, byte[] contentMD5) {
+      String key = blob.getMetadata().getName();
+      Date creationDate = null;
+      BlobEntity oldBlobEntity = blobRepository.find(new BlobEntityPK(containerId, key));
+      if (oldBlobEntity != null) {
+         creationDate = oldBlobEntity.getCreationDate();
+         deleteChunks(oldBlobEntity.getPayload().getChunks());
       }
+      BlobEntity blobEntity = blobToBlobEntity.apply(blob);
+      blobEntity.getPayload().setChunks(chunks);
+      blobEntity.getPayload().setInlineData(inlineData);
+      blobEntity.getPayload().setChunkSize(chunkSize);
+      long size = inlineData != null ? inlineData.length : totalSize(chunks);
+      blobEntity.getPayload().setContentLength(size);
+      blobEntity.setSize(size);
+      blobEntity.setContainerEntity(containerRepository.getReference(containerId));
+      blobEntity.setKey(key);
+      blobEntity.setBlobAccess(blobAccess);
+      blobEntity.setCreationDate(creationDate);
+      blobEntity.setLastModified(new Date());
+      blobEntity.setEtag(etag);
+      blobEntity.getPayload().setContentMD5(contentMD5);
+      return blobRepository.save(blobEntity);
    }
 
-   @Transactional(rollbackOn = IOException.class)
-   private List<Long> storeData(InputStream data) throws IOException {
-      ImmutableList.Builder<Long> chunks = ImmutableList.builder();
-      while (true) {
-         byte[] buffer = new byte[JdbcConstants.DEFAULT_CHUNK_SIZE];
-         int bytes = ByteStreams.read(data, buffer, 0, JdbcConstants.DEFAULT_CHUNK_SIZE);
-         if (bytes == 0) {
-            break;
-         } else if (bytes != buffer.length) {
-            buffer = Arrays.copyOf(buffer, bytes);
+   /**
+    * Stores the content of a payload with the chunk settings of the given
+    * container. When the container has an adaptive chunk size, payloads of at
+    * most {@link #inlineThreshold} bytes are kept inline, if allowed, and
+    * large payloads get larger chunks.
+    */
+   private StoredPayload storePayload(Payload payload, ContainerEntity container, boolean allowInline)
+         throws IOException {
+      ChunkCodec compression = container == null || container.getCompression() == null ? ChunkCodec.NONE
+            : container.getCompression();
+      int chunkSize = container == null || container.getChunkSize() == null ? defaultChunkSize
+            : container.getChunkSize();
+      boolean adaptive = container == null || container.getAdaptiveChunkSize() == null ? defaultAdaptiveChunkSize
+            : container.getAdaptiveChunkSize();
+      Long contentLength = payload.getContentMetadata().getContentLength();
+      if (adaptive) {
+         chunkSize = adaptChunkSize(chunkSize, contentLength);
+      }
+
+      List<ChunkReference> chunks = ImmutableList.of();
+      byte[] inlineData = null;
+      HashingInputStream his = new HashingInputStream(Hashing.md5(), payload.openStream());
+      try {
+         InputStream data = his;
+         if (adaptive && allowInline && inlineThreshold > 0
+               && (contentLength == null || contentLength <= inlineThreshold)) {
+            // The declared length may be missing or wrong, so one byte more than the threshold is read
+            byte[] head = new byte[inlineThreshold + 1];
+            int read = ByteStreams.read(his, head, 0, head.length);
+            if (read <= inlineThreshold) {
+               inlineData = read == 0 ? null : Arrays.copyOf(head, read);
+               data = null;
+            } else {
+               data = new SequenceInputStream(new ByteArrayInputStream(head, 0, read), his);
+            }
+         }
+         if (data != null) {
+            chunks = storeData(data, compression, chunkSize);
+         }
+      } finally {
+         Closeables2.closeQuietly(his);
+      }
+      HashCode actualHashCode = his.hash();
+      HashCode expectedHashCode = payload.getContentMetadata().getContentMD5AsHashCode();
+      if (expectedHashCode != null && !actualHashCode.equals(expectedHashCode)) {
+         throw new IOException("MD5 hash code mismatch, actual: " + actualHashCode +
+               " expected: " + expectedHashCode);
+      }
+      return new StoredPayload(chunks, inlineData, inlineData == null ? chunkSize : null, actualHashCode);
+   }
+
+   private void deleteMultipartUpload(MultipartUploadEntity upload) {
+      for (MultipartPartEntity part : multipartPartRepository.findPartsByUpload(upload.getId())) {
+         deleteChunks(part.getChunks());
+         multipartPartRepository.delete(part);
+      }
+      multipartUploadRepository.delete(upload);
+   }
+
+   /**
+    * Doubles the chunk size until a payload of the given length fits in about
+    * {@link #ADAPTIVE_CHUNKS_PER_PAYLOAD} chunks, up to the largest chunk size.
+    */
+   private static int adaptChunkSize(int chunkSize, Long contentLength) {
+      int size = chunkSize;
+      if (contentLength != null) {
+         while (size < JdbcConstants.MAX_CHUNK_SIZE && contentLength > (long) size * ADAPTIVE_CHUNKS_PER_PAYLOAD) {
+            size = (int) Math.min(2L * size, JdbcConstants.MAX_CHUNK_SIZE);
          }
-         chunks.add(chunkRepository.create(new ChunkEntity(buffer, bytes)).getId());
       }
+      return size;
+   }
+
+   private static long totalSize(List<ChunkReference> chunks) {
+      if (chunks.isEmpty()) {
+         return 0;
+      }
+      ChunkReference last = chunks.get(chunks.size() - 1);
+      return last.getChunkOffset() + last.getChunkSize();
+   }
+
+   /**
+    * Looks up the id of a container, caching it so blob operations can address
+    * blobs by primary key without querying the container first. Missing
+    * containers are not cached.
+    *
+    * @return the container id, or null if the container does not exist
+    */
+   private Long findContainerId(String containerName) {
+      Long containerId = containerIds.getIfPresent(containerName);
+      if (containerId == null) {
+         containerId = containerRepository.findContainerIdByName(containerName);
+         if (containerId != null) {
+            containerIds.put(containerName, containerId);
+         }
+      }
+      return containerId;
+   }
+
+   private void retainChunks(List<ChunkReference> chunks) {
+      chunkRepository.retain(chunkIds(chunks));
+   }
+
+   private void deleteChunks(List<ChunkReference> chunks) {
+      releaseChunks(chunkIds(chunks));
+   }
+
+   private void releaseChunks(List<Long> chunkIds) {
+      // Dropped before the transaction commits, a rollback only costs cache misses
+      chunkCache.invalidate(chunkRepository.release(chunkIds));
+   }
+
+   private static List<Long> chunkIds(List<ChunkReference> chunks) {
+      List<Long> chunkIds = Lists.newArrayListWithCapacity(chunks.size());
+      for (ChunkReference chunk : chunks) {
+         chunkIds.add(chunk.getChunkId());
+      }
+      return chunkIds;
+   }
+
+   /**
+    * Splits the data in chunks and stores them through the {@link ChunkStore}.
+    * When the upload pipeline is enabled, the data is read, hashed and
+    * compressed on a background thread while the chunks read so far are
+    * written, with at most {@link #uploadPipelineDepth} chunks read ahead.
+    * The chunks are written in the transaction of the calling public method,
+    * which rolls back on an {@link IOException}.
+    */
+   private List<ChunkReference> storeData(final InputStream data, final ChunkCodec compression,
+         final int chunkSize) throws IOException {
+      if (uploadPipelineDepth <= 0) {
+         return writeChunks(new ChunkSource() {
+            @Override
+            public ReadChunk next() throws IOException {
+               return readChunk(data, compression, chunkSize);
+            }
+         });
+      }
+      PipelinedChunkSource source = new PipelinedChunkSource(data, compression, chunkSize);
+      try {
+         return writeChunks(source);
+      } finally {
+         source.close();
+      }
+   }
+
+   /**
+    * Reads the next chunk of data into a pooled buffer, hashing it if
+    * deduplication is enabled and compressing it with the given codec.
+    * A full uncompressed chunk keeps the buffer as its data, and the buffer
+    * goes back to the pool once the chunk has been flushed or reused.
+    *
+    * @return the chunk, or null at the end of the data
+    */
+   private ReadChunk readChunk(InputStream data, ChunkCodec compression, int chunkSize) throws IOException {
+      byte[] buffer = bufferPool.acquire(chunkSize);
+      int bytes = ByteStreams.read(data, buffer, 0, buffer.length);
+      if (bytes == 0) {
+         bufferPool.release(buffer);
+         return null;
+      }
+      String hash = deduplication ? CHUNK_HASH.hashBytes(buffer, 0, bytes).toString() : null;
+      byte[] compressed = compression.compress(buffer, bytes);
+      if (compressed != null) {
+         bufferPool.release(buffer);
+         return new ReadChunk(compressed, bytes, hash, compression, null);
+      } else if (bytes != buffer.length) {
+         byte[] tail = Arrays.copyOf(buffer, bytes);
+         bufferPool.release(buffer);
+         return new ReadChunk(tail, bytes, hash, null, null);
+      }
+      return new ReadChunk(buffer, bytes, hash, null, buffer);
+   }
+
+   /**
+    * Writes chunks until the source is exhausted. Chunks are flushed and
+    * detached every {@link #chunkFlushInterval} chunks, so the persistence
+    * context never holds more than a few of them, and their pooled buffers are
+    * released. When deduplication is enabled, chunks whose content is already
+    * stored are referenced instead of written again.
+    */
+   private List<ChunkReference> writeChunks(ChunkSource source) throws IOException {
+      ImmutableList.Builder<ChunkReference> chunks = ImmutableList.builder();
+      long offset = 0;
+      ChunkStore.Writer writer = chunkStore.newWriter();
+      int pendingChunks = 0;
+      long pendingBytes = 0;
+      Map<String, ChunkEntity> pendingByHash = Maps.newHashMap();
+      List<byte[]> pendingBuffers = Lists.newArrayList();
+      ReadChunk read;
+      while ((read = source.next()) != null) {
+         if (read.hash != null) {
+            Long duplicate = reuseChunk(read.hash, read.size, pendingByHash);
+            if (duplicate != null) {
+               bufferPool.release(read.buffer);
+               chunks.add(new ChunkReference(duplicate, offset, read.size));
+               offset += read.size;
+               continue;
+            }
+         }
+         ChunkEntity chunk = writer.write(read.data, read.size, read.hash, read.codec);
+         pendingBytes += read.data.length;
+         if (read.buffer != null) {
+            pendingBuffers.add(read.buffer);
+         }
+         chunks.add(new ChunkReference(chunk.getId(), offset, read.size));
+         offset += read.size;
+         if (read.hash != null) {
+            pendingByHash.put(read.hash, chunk);
+         }
+         if (++pendingChunks >= chunkFlushInterval) {
+            flushChunks(writer, pendingByHash, pendingBuffers, pendingChunks, pendingBytes);
+            pendingChunks = 0;
+            pendingBytes = 0;
+         }
+      }
+      flushChunks(writer, pendingByHash, pendingBuffers, pendingChunks, pendingBytes);
       return chunks.build();
    }
+
+   /**
+    * Looks for a stored chunk with the given content and adds a reference to it.
+    *
+    * @return the id of the referenced chunk, or null if the content has to be stored
+    */
+   private Long reuseChunk(String hash, int size, Map<String, ChunkEntity> pendingByHash) {
+      ChunkEntity pendingChunk = pendingByHash.get(hash);
+      if (pendingChunk != null) {
+         pendingChunk.setReferenceCount(pendingChunk.getReferenceCount() + 1);
+         return pendingChunk.getId();
+      }
+      Long id = chunkRepository.findChunkIdByHash(hash, size);
+      return id != null && chunkRepository.retain(id) ? id : null;
+   }
+
+   private void flushChunks(ChunkStore.Writer writer, Map<String, ChunkEntity> pendingByHash,
+         List<byte[]> pendingBuffers, int pendingChunks, long pendingBytes) {
+      // Chunk writes are measured per flush, which is when batched inserts reach the database
+      long start = metrics.start();
+      writer.flush();
+      metrics.stop(Operation.CHUNK_WRITE, start, pendingBytes, pendingChunks);
+      pendingByHash.clear();
+      // The flushed chunks are detached, nothing refers to their data any more
+      for (byte[] buffer : pendingBuffers) {
+         bufferPool.release(buffer);
+      }
+      pendingBuffers.clear();
+   }
+
+   private interface ChunkSource {
+      ReadChunk next() throws IOException;
+   }
+
+   /**
+    * Chunk read from a payload, with its data compressed if codec is set. The
+    * buffer, if set, is the pooled buffer holding the data.
+    */
+   private static final class ReadChunk {
+      private static final ReadChunk END = new ReadChunk(null, 0, null, null, null);
+
+      private final byte[] data;
+      private final int size;
+      private final String hash;
+      private final ChunkCodec codec;
+      private final byte[] buffer;
+
+      private ReadChunk(byte[] data, int size, String hash, ChunkCodec codec, byte[] buffer) {
+         this.data = data;
+         this.size = size;
+         this.hash = hash;
+         this.codec = codec;
+         this.buffer = buffer;
+      }
+   }
+
+   /**
+    * Reader stage of the upload pipeline. The transaction is bound to the
+    * calling thread, so the chunks are written there while the payload is read
+    * on a background thread, through a queue bounding the chunks read ahead.
+    */
+   private final class PipelinedChunkSource implements ChunkSource {
+
+      // How often close() drains the queue while the reader finishes
+      private static final long CLOSE_DRAIN_MILLIS = 10;
+
+      private final BlockingQueue<ReadChunk> queue = new ArrayBlockingQueue<ReadChunk>(uploadPipelineDepth);
+      private final Future<Void> reader;
+      private boolean done;
+
+      // Guards closed and reading, so a reader never starts once the source is closed
+      private final Object lock = new Object();
+      private boolean closed;
+      private boolean reading;
+
+      PipelinedChunkSource(final InputStream data, final ChunkCodec compression, final int chunkSize) {
+         this.reader = readerExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException, InterruptedException {
+               synchronized (lock) {
+                  if (closed) {
+                     return null;
+                  }
+                  reading = true;
+               }
+               try {
+                  ReadChunk chunk;
+                  while (!isClosed() && (chunk = readChunk(data, compression, chunkSize)) != null) {
+                     queue.put(chunk);
+                  }
+               } finally {
+                  try {
+                     // The outcome of the read is taken from the future once the writer sees the end.
+                     // Once closed, the queue is drained until the reader is done, so this cannot block for good
+                     queue.put(ReadChunk.END);
+                  } finally {
+                     synchronized (lock) {
+                        reading = false;
+                        lock.notifyAll();
+                     }
+                  }
+               }
+               return null;
+            }
+         });
+      }
+
+      private boolean isClosed() {
+         synchronized (lock) {
+            return closed;
+         }
+      }
+
+      @Override
+      public ReadChunk next() throws IOException {
+         if (done) {
+            return null;
+         }
+         try {
+            ReadChunk chunk = queue.take();
+            if (chunk != ReadChunk.END) {
+               return chunk;
+            }
+            done = true;
+            reader.get();
+            return null;
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading payload");
+         } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IOException("Could not read payload", e.getCause());
+         }
+      }
+
+      /**
+       * Stops the reader if the writer gave up before the end of the data, and
+       * waits until it no longer uses the payload stream, which is closed next.
+       * The reader is interrupted while it waits for the queue, but a read
+       * already blocked on the stream is let finish. The queue is drained
+       * meanwhile, so the reader can always hand over the end of the data.
+       */
+      void close() {
+         if (done) {
+            return;
+         }
+         synchronized (lock) {
+            closed = true;
+         }
+         reader.cancel(true);
+         boolean interrupted = false;
+         synchronized (lock) {
+            queue.clear();
+            while (reading) {
+               try {
+                  lock.wait(CLOSE_DRAIN_MILLIS);
+               } catch (InterruptedException e) {
+                  interrupted = true;
+               }
+               queue.clear();
+            }
+         }
+         if (interrupted) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   private static final class StoredPayload {
+      private final List<ChunkReference> chunks;
+      private final byte[] inlineData;
+      private final Integer chunkSize;
+      private final HashCode md5;
+
+      private StoredPayload(List<ChunkReference> chunks, byte[] inlineData, Integer chunkSize, HashCode md5) {
+         this.chunks = chunks;
+         this.inlineData = inlineData;
+         this.chunkSize = chunkSize;
+         this.md5 = md5;
+      }
+   }
 }
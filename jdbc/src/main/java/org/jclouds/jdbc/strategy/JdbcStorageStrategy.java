@@ -25,29 +25,51 @@ import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.persistence.PersistenceException;
 
+import org.jclouds.blobstore.KeyNotFoundException;
 import org.jclouds.blobstore.LocalStorageStrategy;
 import org.jclouds.blobstore.domain.Blob;
 import org.jclouds.blobstore.domain.BlobAccess;
 import org.jclouds.blobstore.domain.BlobBuilder;
+import org.jclouds.blobstore.domain.BlobMetadata;
 import org.jclouds.blobstore.domain.ContainerAccess;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.blobstore.domain.MutableBlobMetadata;
 import org.jclouds.blobstore.domain.MutableStorageMetadata;
+import org.jclouds.blobstore.domain.PageSet;
 import org.jclouds.blobstore.domain.StorageMetadata;
 import org.jclouds.blobstore.domain.StorageType;
+import org.jclouds.blobstore.domain.internal.MutableBlobMetadataImpl;
 import org.jclouds.blobstore.domain.internal.MutableStorageMetadataImpl;
+import org.jclouds.blobstore.domain.internal.PageSetImpl;
+import org.jclouds.blobstore.options.CopyOptions;
 import org.jclouds.blobstore.options.CreateContainerOptions;
 import org.jclouds.blobstore.options.ListContainerOptions;
+import org.jclouds.blobstore.options.PutOptions;
 import org.jclouds.domain.Location;
 import org.jclouds.domain.LocationBuilder;
 import org.jclouds.domain.LocationScope;
 import org.jclouds.io.ContentMetadata;
+import org.jclouds.io.MutableContentMetadata;
+import org.jclouds.io.Payload;
+import org.jclouds.io.payloads.BaseMutableContentMetadata;
 import org.jclouds.jdbc.conversion.BlobEntityToBlob;
 import org.jclouds.jdbc.entity.BlobEntity;
+import org.jclouds.jdbc.entity.BlobSummary;
 import org.jclouds.jdbc.entity.ContainerEntity;
+import org.jclouds.jdbc.entity.MultipartPartEntity;
+import org.jclouds.jdbc.entity.MultipartUploadEntity;
+import org.jclouds.jdbc.entity.PayloadEntity;
+import org.jclouds.jdbc.metrics.JdbcMetrics;
+import org.jclouds.jdbc.metrics.Operation;
+import org.jclouds.jdbc.options.JdbcCreateContainerOptions;
 import org.jclouds.jdbc.predicates.validators.JdbcBlobKeyValidator;
 import org.jclouds.jdbc.predicates.validators.JdbcContainerNameValidator;
 import org.jclouds.jdbc.service.JdbcService;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
 
 /**
  * JdbcStorageStrategy implements a blob store that stores objects
@@ -56,23 +78,27 @@ import com.google.common.collect.ImmutableList;
  */
 public class JdbcStorageStrategy implements LocalStorageStrategy {
 
+   private static final int DEFAULT_MAX_RESULTS = 1000;
+
    private final Provider<BlobBuilder> blobBuilders;
    private final JdbcService jdbcService;
    private final JdbcContainerNameValidator jdbcContainerNameValidator;
    private final JdbcBlobKeyValidator jdbcBlobKeyValidator;
    private final BlobEntityToBlob blobEntityToBlob;
+   private final JdbcMetrics metrics;
    private final Location mockLocation;
 
    @Inject
    JdbcStorageStrategy(Provider<BlobBuilder> blobBuilders,
          JdbcContainerNameValidator jdbcContainerNameValidator, JdbcBlobKeyValidator jdbcBlobKeyValidator,
-         JdbcService jdbcService, BlobEntityToBlob blobEntityToBlob)
+         JdbcService jdbcService, BlobEntityToBlob blobEntityToBlob, JdbcMetrics metrics)
          throws ClassNotFoundException, IllegalAccessException, InstantiationException, SQLException {
       this.jdbcService = jdbcService;
       this.blobBuilders = blobBuilders;
       this.jdbcContainerNameValidator = jdbcContainerNameValidator;
       this.jdbcBlobKeyValidator = jdbcBlobKeyValidator;
       this.blobEntityToBlob = blobEntityToBlob;
+      this.metrics = metrics;
       this.mockLocation = new LocationBuilder()
             .id("jdbc")
             .scope(LocationScope.PROVIDER)
@@ -89,7 +115,7 @@ public class JdbcStorageStrategy implements LocalStorageStrategy {
    @Override
    public boolean containerExists(String container) {
       jdbcContainerNameValidator.validate(container);
-      return jdbcService.findContainerByName(container) != null;
+      return jdbcService.containerExists(container);
    }
 
    /**
@@ -112,7 +138,8 @@ public class JdbcStorageStrategy implements LocalStorageStrategy {
     *
     * @param container the name of the container to create
     * @param createContainerOptions creation options to the container. defaults the ContainerAccess
-    *                               to ContainerAccess.PRIVATE
+    *                               to ContainerAccess.PRIVATE. {@link JdbcCreateContainerOptions}
+    *                               can also choose the chunk compression and chunk size
     * @return true if the container was created, false otherwise
     */
    @Override
@@ -123,8 +150,11 @@ public class JdbcStorageStrategy implements LocalStorageStrategy {
       ContainerAccess containerAccess = createContainerOptions == null ? ContainerAccess.PRIVATE
             : (createContainerOptions.isPublicRead() ? ContainerAccess.PUBLIC_READ
             : ContainerAccess.PRIVATE);
+      JdbcCreateContainerOptions jdbcOptions = createContainerOptions instanceof JdbcCreateContainerOptions
+            ? (JdbcCreateContainerOptions) createContainerOptions : new JdbcCreateContainerOptions();
       try {
-         jdbcService.createContainer(container, containerAccess);
+         jdbcService.createContainer(container, containerAccess, jdbcOptions.getCompression(),
+               jdbcOptions.getChunkSize(), jdbcOptions.getAdaptiveChunkSize());
       } catch (PersistenceException e) {
          return false;
       } catch (IllegalArgumentException e) {
@@ -235,12 +265,81 @@ public class JdbcStorageStrategy implements LocalStorageStrategy {
     */
    @Override
    public Iterable<String> getBlobKeysInsideContainer(String container) throws IOException {
-      List<BlobEntity> blobEntities = jdbcService.findBlobsByContainer(container);
-      ImmutableList.Builder<String> result = ImmutableList.builder();
-      for (BlobEntity blobEntity : blobEntities) {
-         result.add(blobEntity.getKey());
+      return jdbcService.findBlobKeysByContainer(container);
+   }
+
+   /**
+    * Lists a page of the blobs in a container. Filtering, grouping by delimiter and
+    * pagination are done by the database, reading at most a page of rows per
+    * query and seeking past the content of each common prefix.
+    *
+    * @param container the name of the container
+    * @param options options to filter and page the listing
+    * @return the page of blobs, directories and common prefixes, sorted by name
+    */
+   public PageSet<? extends StorageMetadata> list(String container, ListContainerOptions options) {
+      long start = metrics.start();
+      List<StorageMetadata> contents = Lists.newArrayList();
+      try {
+         return list(container, options, contents);
+      } finally {
+         metrics.stop(Operation.LIST, start, 0, contents.size());
       }
-      return result.build();
+   }
+
+   private PageSet<? extends StorageMetadata> list(String container, ListContainerOptions options,
+         List<StorageMetadata> contents) {
+      String prefix = options.getPrefix() == null ? "" : options.getPrefix();
+      if (options.getDir() != null && !options.getDir().isEmpty()) {
+         prefix = options.getDir().endsWith(getSeparator()) ? options.getDir() : options.getDir() + getSeparator();
+      }
+      String delimiter = null;
+      if (!options.isRecursive()) {
+         delimiter = options.getDelimiter() == null ? getSeparator() : options.getDelimiter();
+      }
+      int maxResults = options.getMaxResults() == null ? DEFAULT_MAX_RESULTS : options.getMaxResults();
+
+      String afterKey = options.getMarker();
+      String skipPrefix = null;
+      if (afterKey != null && delimiter != null && afterKey.equals(commonPrefix(afterKey, prefix, delimiter))) {
+         // The previous page ended with a common prefix, skip everything under it
+         skipPrefix = afterKey;
+      }
+
+      String nextMarker = null;
+      boolean exhausted = false;
+      while (!exhausted && nextMarker == null) {
+         int remaining = maxResults - contents.size();
+         List<BlobSummary> summaries = jdbcService.findBlobSummaries(container, prefix, afterKey, skipPrefix,
+               remaining + 1);
+         exhausted = summaries.size() <= remaining;
+         for (BlobSummary summary : summaries) {
+            if (contents.size() == maxResults) {
+               nextMarker = contents.get(contents.size() - 1).getName();
+               break;
+            }
+            String commonPrefix = delimiter == null ? null : commonPrefix(summary.getKey(), prefix, delimiter);
+            if (commonPrefix != null) {
+               MutableStorageMetadata metadata = new MutableStorageMetadataImpl();
+               metadata.setName(commonPrefix);
+               metadata.setType(StorageType.RELATIVE_PATH);
+               metadata.setLocation(mockLocation);
+               contents.add(metadata);
+               afterKey = commonPrefix;
+               skipPrefix = commonPrefix;
+               exhausted = false;
+               break;
+            }
+            StorageMetadata metadata = toBlobMetadata(container, summary);
+            if (options.isDetailed()) {
+               metadata.getUserMetadata().putAll(summary.getUserMetadata());
+            }
+            contents.add(metadata);
+            afterKey = summary.getKey();
+         }
+      }
+
+      return new PageSetImpl<StorageMetadata>(contents, nextMarker);
    }
 
    /**
@@ -252,7 +351,15 @@ public class JdbcStorageStrategy implements LocalStorageStrategy {
     */
    @Override
    public Blob getBlob(String container, String key) {
-      return blobEntityToBlob.apply(jdbcService.findBlobById(container, key));
+      long start = metrics.start();
+      BlobEntity blobEntity = null;
+      try {
+         blobEntity = jdbcService.findBlobById(container, key);
+         return blobEntityToBlob.apply(blobEntity);
+      } finally {
+         // The content is only read later from the returned payload, and counted by the chunk reads
+         metrics.stop(Operation.GET, start, 0, blobEntity == null ? 0 : 1);
+      }
    }
 
    /**
@@ -267,7 +374,86 @@ public class JdbcStorageStrategy implements LocalStorageStrategy {
       String key = blob.getMetadata().getName();
       jdbcContainerNameValidator.validate(container);
       jdbcBlobKeyValidator.validate(key);
-      return jdbcService.createOrModifyBlob(container, blob).getEtag();
+      long start = metrics.start();
+      BlobEntity blobEntity = null;
+      try {
+         blobEntity = jdbcService.createOrModifyBlob(container, blob);
+         return blobEntity.getEtag();
+      } finally {
+         metrics.stop(Operation.PUT, start, sizeOf(blobEntity), blobEntity == null ? 0 : 1);
+      }
+   }
+
+   /**
+    * Copies a blob without copying its content. The copy shares the chunks of
+    * the source blob and keeps its content metadata and user metadata unless
+    * the options replace them.
+    *
+    * @param fromContainer the name of the container containing the source blob
+    * @param fromName the key of the source blob
+    * @param toContainer the name of the container to copy the blob to
+    * @param toName the key of the copy
+    * @param options the metadata overrides of the copy
+    * @return the copy's etag
+    */
+   public String copyBlob(String fromContainer, String fromName, String toContainer, String toName,
+         CopyOptions options) {
+      jdbcContainerNameValidator.validate(toContainer);
+      jdbcBlobKeyValidator.validate(toName);
+      long start = metrics.start();
+      BlobEntity copy = null;
+      try {
+         copy = copyBlobEntity(fromContainer, fromName, toContainer, toName, options);
+         return copy.getEtag();
+      } finally {
+         metrics.stop(Operation.COPY, start, 0, copy == null ? 0 : 1);
+      }
+   }
+
+   private BlobEntity copyBlobEntity(String fromContainer, String fromName, String toContainer, String toName,
+         CopyOptions options) {
+      BlobEntity source = jdbcService.findBlobById(fromContainer, fromName);
+      if (source == null) {
+         throw new KeyNotFoundException(fromContainer, fromName, "while copying");
+      }
+      Blob blob = blobBuilders.get().name(toName).payload(new byte[0]).build();
+      MutableContentMetadata contentMetadata = blob.getPayload().getContentMetadata();
+      PayloadEntity payload = source.getPayload();
+      contentMetadata.setCacheControl(payload.getCacheControl());
+      contentMetadata.setContentDisposition(payload.getContentDisposition());
+      contentMetadata.setContentEncoding(payload.getContentEncoding());
+      contentMetadata.setContentLanguage(payload.getContentLanguage());
+      contentMetadata.setContentType(payload.getContentType());
+      contentMetadata.setExpires(payload.getExpires());
+      ContentMetadata overrides = options.contentMetadata();
+      if (overrides != null) {
+         if (overrides.getCacheControl() != null) {
+            contentMetadata.setCacheControl(overrides.getCacheControl());
+         }
+         if (overrides.getContentDisposition() != null) {
+            contentMetadata.setContentDisposition(overrides.getContentDisposition());
+         }
+         if (overrides.getContentEncoding() != null) {
+            contentMetadata.setContentEncoding(overrides.getContentEncoding());
+         }
+         if (overrides.getContentLanguage() != null) {
+            contentMetadata.setContentLanguage(overrides.getContentLanguage());
+         }
+         if (overrides.getContentType() != null) {
+            contentMetadata.setContentType(overrides.getContentType());
+         }
+         if (overrides.getExpires() != null) {
+            contentMetadata.setExpires(overrides.getExpires());
+         }
+      }
+      blob.getMetadata().getUserMetadata().putAll(options.userMetadata() != null ? options.userMetadata()
+            : source.getUserMetadata());
+
+      BlobEntity copy = jdbcService.copyBlob(fromContainer, fromName, toContainer, blob, source.getBlobAccess());
+      if (copy == null) {
+         throw new KeyNotFoundException(fromContainer, fromName, "while copying");
+      }
+      return copy;
    }
 
    /**
@@ -278,7 +464,128 @@ public class JdbcStorageStrategy implements LocalStorageStrategy {
     */
    @Override
    public void removeBlob(String container, String key) {
-      jdbcService.deleteBlob(container, key);
+      long start = metrics.start();
+      try {
+         jdbcService.deleteBlob(container, key);
+      } finally {
+         metrics.stop(Operation.DELETE, start, 0, 1);
+      }
+   }
+
+   /**
+    * Removes several blobs from a container in a few statements
+    *
+    * @param container the name of the container containing the blobs
+    * @param keys the keys of the blobs to remove
+    */
+   public void removeBlobs(String container, Iterable<String> keys) {
+      long start = metrics.start();
+      // Iterated once, the keys may come from a one-shot iterable
+      List<String> keyList = ImmutableList.copyOf(keys);
+      try {
+         jdbcService.deleteBlobs(container, keyList);
+      } finally {
+         metrics.stop(Operation.DELETE, start, 0, keyList.size());
+      }
+   }
+
+   /**
+    * Starts a multipart upload. The blob metadata travels with the returned
+    * upload and is only stored when the upload is completed.
+    *
+    * @param container the name of the container
+    * @param blobMetadata the name and metadata of the blob to create
+    * @param options the options of the upload
+    * @return the new multipart upload
+    */
+   public MultipartUpload initiateMultipartUpload(String container, BlobMetadata blobMetadata, PutOptions options) {
+      jdbcContainerNameValidator.validate(container);
+      jdbcBlobKeyValidator.validate(blobMetadata.getName());
+      MultipartUploadEntity upload = jdbcService.createMultipartUpload(container, blobMetadata.getName());
+      return MultipartUpload.create(container, blobMetadata.getName(), upload.getId(), blobMetadata, options);
+   }
+
+   /**
+    * Gets the size payloads of a container are split into
+    *
+    * @param container the name of the container
+    * @return the chunk size of the container, or the configured default if it does not exist
+    */
+   public int getChunkSize(String container) {
+      jdbcContainerNameValidator.validate(container);
+      return jdbcService.getChunkSize(container);
+   }
+
+   /**
+    * Stores a part of a multipart upload, replacing the part with the same number
+    *
+    * @param mpu the multipart upload
+    * @param partNumber the number of the part
+    * @param payload the content of the part
+    * @return the stored part
+    */
+   public MultipartPart uploadMultipartPart(MultipartUpload mpu, int partNumber, Payload payload) throws IOException {
+      return toMultipartPart(jdbcService.createOrReplaceMultipartPart(mpu.id(), partNumber, payload));
+   }
+
+   /**
+    * Creates the blob of a multipart upload from the given parts
+    *
+    * @param mpu the multipart upload
+    * @param parts the parts making up the blob, in order
+    * @return the blob's etag
+    */
+   public String completeMultipartUpload(MultipartUpload mpu, List<MultipartPart> parts) {
+      List<Integer> partNumbers = Lists.newArrayList();
+      for (MultipartPart part : parts) {
+         partNumbers.add(part.partNumber());
+      }
+      BlobMetadata metadata = mpu.blobMetadata();
+      Blob blob = blobBuilders.get().name(mpu.blobName()).payload(new byte[0]).build();
+      if (metadata != null) {
+         blob.getMetadata().getUserMetadata().putAll(metadata.getUserMetadata());
+         blob.getPayload().setContentMetadata(
+               BaseMutableContentMetadata.fromContentMetadata(metadata.getContentMetadata()));
+      }
+      BlobAccess blobAccess = mpu.putOptions() == null ? BlobAccess.PRIVATE : mpu.putOptions().getBlobAccess();
+      return jdbcService.completeMultipartUpload(mpu.id(), partNumbers, blob, blobAccess).getEtag();
+   }
+
+   /**
+    * Aborts a multipart upload, removing the parts stored so far
+    *
+    * @param mpu the multipart upload
+    */
+   public void abortMultipartUpload(MultipartUpload mpu) {
+      jdbcService.deleteMultipartUpload(mpu.id());
+   }
+
+   /**
+    * Lists the parts stored for a multipart upload
+    *
+    * @param mpu the multipart upload
+    * @return the parts, sorted by part number
+    */
+   public List<MultipartPart> listMultipartUpload(MultipartUpload mpu) {
+      ImmutableList.Builder<MultipartPart> result = ImmutableList.builder();
+      for (MultipartPartEntity part : jdbcService.findMultipartParts(mpu.id())) {
+         result.add(toMultipartPart(part));
+      }
+      return result.build();
+   }
+
+   /**
+    * Lists the multipart uploads in progress in a container
+    *
+    * @param container the name of the container
+    * @return the multipart uploads, without their blob metadata
+    */
+   public List<MultipartUpload> listMultipartUploads(String container) {
+      ImmutableList.Builder<MultipartUpload> result = ImmutableList.builder();
+      for (MultipartUploadEntity upload : jdbcService.findMultipartUploads(container)) {
+         result.add(MultipartUpload.create(container, upload.getKey(), upload.getId(), null, null));
+      }
+      return result.build();
    }
 
    /**
@@ -333,8 +640,7 @@ public class JdbcStorageStrategy implements LocalStorageStrategy {
     * @return the number of blobs in the container
     */
    public long countBlobs(String container, ListContainerOptions options) {
-      return options.getDir() == null ? jdbcService.findBlobsByContainer(container).size()
-             : jdbcService.findBlobsByDirectory(container, options.getDir(), options.isRecursive()).size();
+      return jdbcService.countBlobs(container, options.getDir(), options.isRecursive());
    }
 
    /**
@@ -350,6 +656,42 @@ public class JdbcStorageStrategy implements LocalStorageStrategy {
             blob.getMetadata().getContentMetadata().getContentType());
    }
 
+   private static long sizeOf(BlobEntity blobEntity) {
+      return blobEntity == null || blobEntity.getSize() == null ? 0 : blobEntity.getSize();
+   }
+
+   /**
+    * Gets the part of a key up to and including the first delimiter after the prefix
+    *
+    * @return the common prefix, or null if the key has no delimiter after the prefix
+    */
+   private static String commonPrefix(String key, String prefix, String delimiter) {
+      int index = key.indexOf(delimiter, prefix.length());
+      return index < 0 ? null : key.substring(0, index + delimiter.length());
+   }
+
+   private static MultipartPart toMultipartPart(MultipartPartEntity part) {
+      return MultipartPart.create(part.getPartNumber(), part.getPartSize(), part.getEtag(), part.getLastModified());
+   }
+
+   private StorageMetadata toBlobMetadata(String container, BlobSummary summary) {
+      MutableBlobMetadata metadata = new MutableBlobMetadataImpl();
+      metadata.setName(summary.getKey());
+      metadata.setType(summary.isDirectory() ? StorageType.FOLDER : StorageType.BLOB);
+      metadata.setContainer(container);
+      metadata.setLocation(mockLocation);
+      metadata.setCreationDate(summary.getCreationDate());
+      metadata.setLastModified(summary.getLastModified());
+      metadata.setETag(summary.getEtag());
+      metadata.setSize(summary.getContentLength());
+      metadata.getContentMetadata().setContentType(summary.getContentType());
+      metadata.getContentMetadata().setContentLength(summary.getContentLength());
+      metadata.getContentMetadata().setContentMD5(summary.getContentMD5() == null ?
+            null :
+            HashCode.fromBytes(summary.getContentMD5()));
+      return metadata;
+   }
+
    /**
     * Store a blob in a directory
     *
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.jdbc.reference.JdbcConstants;
+
+/**
+ * Keeps idle chunk sized buffers around so uploads do not allocate a new one
+ * for every chunk they read. Containers may use different chunk sizes, so
+ * buffers are pooled per size, but all the idle buffers together never take
+ * more than the configured number of bytes.
+ */
+@Singleton
+public class ChunkBufferPool {
+
+   private final long maxBytes;
+   private final AtomicLong pooledBytes = new AtomicLong();
+   private final AtomicLong reusedBuffers = new AtomicLong();
+   private final ConcurrentMap<Integer, Queue<byte[]>> buffers = new ConcurrentHashMap<Integer, Queue<byte[]>>();
+
+   @Inject
+   public ChunkBufferPool(@Named(JdbcConstants.PROPERTY_BUFFER_POOL_SIZE) long maxBytes) {
+      this.maxBytes = Math.max(0, maxBytes);
+   }
+
+   /**
+    * @return a pooled buffer of the given size, or a new one if there is none
+    */
+   public byte[] acquire(int size) {
+      Queue<byte[]> pool = buffers.get(size);
+      if (pool == null) {
+         buffers.putIfAbsent(size, new ConcurrentLinkedQueue<byte[]>());
+         return new byte[size];
+      }
+      byte[] buffer = pool.poll();
+      if (buffer == null) {
+         return new byte[size];
+      }
+      pooledBytes.addAndGet(-size);
+      reusedBuffers.incrementAndGet();
+      return buffer;
+   }
+
+   /**
+    * Returns a buffer to the pool. Buffers of a size never acquired, like the
+    * trimmed last chunk of a payload, or buffers that would take the pool
+    * over its size, are left to the garbage collector.
+    */
+   public void release(byte[] buffer) {
+      if (buffer == null) {
+         return;
+      }
+      Queue<byte[]> pool = buffers.get(buffer.length);
+      if (pool == null) {
+         return;
+      }
+      // Reserved before the buffer is queued, so concurrent releases cannot exceed the limit together
+      if (pooledBytes.addAndGet(buffer.length) > maxBytes) {
+         pooledBytes.addAndGet(-buffer.length);
+         return;
+      }
+      pool.offer(buffer);
+   }
+
+   /**
+    * @return the number of bytes the idle buffers take
+    */
+   public long getPooledBytes() {
+      return pooledBytes.get();
+   }
+
+   /**
+    * @return the number of acquired buffers that came from the pool
+    */
+   public long getReusedBuffers() {
+      return reusedBuffers.get();
+   }
+
+}
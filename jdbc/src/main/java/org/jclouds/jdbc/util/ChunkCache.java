@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.util;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.io.Closeables;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.jclouds.jdbc.entity.ChunkEntity;
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.jclouds.lifecycle.Closer;
+
+import javax.inject.Named;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Least recently used chunks kept in files on local disk, so repeated reads
+ * are served from the page cache instead of the database. Files are read with
+ * plain reads rather than memory mappings, which would stay open until garbage
+ * collected and keep evicted files from being deleted on Windows. Chunks never
+ * change once written, so entries only have to be dropped when their chunk is
+ * deleted.
+ */
+@Singleton
+public class ChunkCache {
+
+   private static final String SUFFIX = ".chunk";
+   // Uncompressed size and codec
+   private static final int HEADER_SIZE = 5;
+
+   private final File directory;
+   // Chunk id to file size, null when the cache is disabled
+   private final Cache<Long, Integer> entries;
+
+   @Inject
+   ChunkCache(@Named(JdbcConstants.PROPERTY_CACHE_DIRECTORY) String directory,
+         @Named(JdbcConstants.PROPERTY_CACHE_SIZE) long maxSize, Closer closer) {
+      this(Strings.isNullOrEmpty(directory) ? null : new File(directory), maxSize);
+      closer.addToClose(new Closeable() {
+         @Override
+         public void close() {
+            invalidateAll();
+         }
+      });
+   }
+
+   /**
+    * @param directory where chunk files are written, or null to disable the cache
+    * @param maxSize   maximum number of bytes the chunk files may take
+    */
+   public ChunkCache(File directory, long maxSize) {
+      this.directory = directory;
+      if (directory == null) {
+         this.entries = null;
+         return;
+      }
+      checkArgument(maxSize > 0, "cache size must be positive");
+      checkState(directory.isDirectory() || directory.mkdirs(), "Could not create %s", directory);
+      // Files left over by a previous run are not indexed, so they would never be evicted
+      File[] stale = directory.listFiles();
+      if (stale != null) {
+         for (File file : stale) {
+            if (file.getName().endsWith(SUFFIX)) {
+               file.delete();
+            }
+         }
+      }
+      // A single segment, so the whole size is available to any chunk and eviction is global LRU
+      this.entries = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(maxSize)
+            .weigher(new Weigher<Long, Integer>() {
+               @Override
+               public int weigh(Long id, Integer size) {
+                  return size;
+               }
+            })
+            .removalListener(new RemovalListener<Long, Integer>() {
+               @Override
+               public void onRemoval(RemovalNotification<Long, Integer> notification) {
+                  // A replaced entry shares its file with the new one
+                  if (notification.getCause() != RemovalCause.REPLACED) {
+                     file(notification.getKey()).delete();
+                  }
+               }
+            })
+            .build();
+   }
+
+   public boolean isEnabled() {
+      return entries != null;
+   }
+
+   /**
+    * @return the cached chunk, as stored in the database, or null if it is not cached
+    */
+   public ChunkEntity get(Long id) {
+      if (entries == null || entries.getIfPresent(id) == null) {
+         return null;
+      }
+      try {
+         return read(file(id));
+      } catch (IOException e) {
+         // Evicted in the meantime
+         entries.invalidate(id);
+         return null;
+      }
+   }
+
+   /**
+    * Caches a chunk read from the database. Failures to write it are ignored,
+    * the chunk is just not cached.
+    */
+   public void put(Long id, ChunkEntity chunk) {
+      if (entries == null) {
+         return;
+      }
+      File file = file(id);
+      File temporary = null;
+      try {
+         temporary = File.createTempFile(id.toString(), ".tmp", directory);
+         write(temporary, chunk);
+         if (temporary.renameTo(file)) {
+            entries.put(id, (int) file.length());
+            temporary = null;
+         }
+      } catch (IOException e) {
+         // Not cached
+      } finally {
+         if (temporary != null) {
+            temporary.delete();
+         }
+      }
+   }
+
+   public void invalidate(Iterable<Long> ids) {
+      if (entries != null) {
+         entries.invalidateAll(ids);
+      }
+   }
+
+   public void invalidateAll() {
+      if (entries != null) {
+         entries.invalidateAll();
+      }
+   }
+
+   private File file(Long id) {
+      return new File(directory, id + SUFFIX);
+   }
+
+   private static void write(File file, ChunkEntity chunk) throws IOException {
+      DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+      boolean threw = true;
+      try {
+         out.writeInt(chunk.getSize());
+         out.writeByte(chunk.getCodec() == null ? 0 : chunk.getCodec().ordinal() + 1);
+         out.write(chunk.getData());
+         threw = false;
+      } finally {
+         Closeables.close(out, threw);
+      }
+   }
+
+   private static ChunkEntity read(File file) throws IOException {
+      FileInputStream in = new FileInputStream(file);
+      try {
+         long length = in.getChannel().size();
+         if (length < HEADER_SIZE) {
+            throw new IOException("Truncated chunk file " + file);
+         }
+         // Buffered for the header only, the data is read straight into its array
+         DataInputStream data = new DataInputStream(new BufferedInputStream(in, HEADER_SIZE));
+         int size = data.readInt();
+         int codec = data.readByte();
+         byte[] content = new byte[(int) (length - HEADER_SIZE)];
+         data.readFully(content);
+         return new ChunkEntity(content, size, null, codec == 0 ? null : ChunkCodec.values()[codec - 1]);
+      } finally {
+         in.close();
+      }
+   }
+
+}
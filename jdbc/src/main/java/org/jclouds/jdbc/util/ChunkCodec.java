@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.util;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression applied to the content of chunks. The codec a chunk was written
+ * with is stored with it, so containers can change codec without rewriting
+ * their chunks.
+ */
+public enum ChunkCodec {
+
+   NONE {
+      @Override
+      public byte[] compress(byte[] data, int length) {
+         return null;
+      }
+
+      @Override
+      public byte[] decompress(byte[] data, int length) {
+         return data;
+      }
+   },
+
+   /**
+    * Fast compression with a moderate ratio, suited to most workloads.
+    */
+   LZ4 {
+      @Override
+      public byte[] compress(byte[] data, int length) {
+         LZ4Compressor compressor = Lz4.FACTORY.fastCompressor();
+         byte[] compressed = new byte[compressor.maxCompressedLength(length)];
+         int compressedLength = compressor.compress(data, 0, length, compressed, 0, compressed.length);
+         return compressedLength < length ? Arrays.copyOf(compressed, compressedLength) : null;
+      }
+
+      @Override
+      public byte[] decompress(byte[] data, int length) throws IOException {
+         byte[] decompressed = new byte[length];
+         int decompressedLength;
+         try {
+            // The safe decompressor never reads past the stored data, even if it is corrupted
+            decompressedLength = Lz4.FACTORY.safeDecompressor().decompress(data, 0, data.length, decompressed, 0);
+         } catch (LZ4Exception e) {
+            throw new IOException("Corrupted LZ4 chunk", e);
+         }
+         if (decompressedLength != length) {
+            throw new IOException("Corrupted LZ4 chunk");
+         }
+         return decompressed;
+      }
+   },
+
+   /**
+    * Slower compression with a better ratio.
+    */
+   DEFLATE {
+      @Override
+      public byte[] compress(byte[] data, int length) {
+         Deflater deflater = new Deflater();
+         try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            byte[] compressed = new byte[length];
+            int compressedLength = 0;
+            while (!deflater.finished() && compressedLength < compressed.length) {
+               compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+            return deflater.finished() && compressedLength < length ? Arrays.copyOf(compressed, compressedLength)
+                  : null;
+         } finally {
+            deflater.end();
+         }
+      }
+
+      @Override
+      public byte[] decompress(byte[] data, int length) throws IOException {
+         Inflater inflater = new Inflater();
+         try {
+            inflater.setInput(data);
+            byte[] decompressed = new byte[length];
+            int decompressedLength = 0;
+            while (!inflater.finished() && decompressedLength < length) {
+               int n = inflater.inflate(decompressed, decompressedLength, length - decompressedLength);
+               if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                  break;
+               }
+               decompressedLength += n;
+            }
+            if (decompressedLength != length) {
+               throw new IOException("Corrupted deflate chunk");
+            }
+            return decompressed;
+         } catch (DataFormatException e) {
+            throw new IOException("Corrupted deflate chunk", e);
+         } finally {
+            inflater.end();
+         }
+      }
+   };
+
+   /**
+    * Compresses the first bytes of a buffer.
+    *
+    * @return the compressed data, or null if compressing does not make it smaller
+    */
+   public abstract byte[] compress(byte[] data, int length);
+
+   /**
+    * Restores data written by {@link #compress}.
+    *
+    * @param length the size of the uncompressed data
+    */
+   public abstract byte[] decompress(byte[] data, int length) throws IOException;
+
+   // Only loaded when the LZ4 codec is used
+   private static final class Lz4 {
+      private static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
+   }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.util;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import org.jclouds.jdbc.entity.ChunkReference;
+import org.jclouds.jdbc.service.JdbcService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Content of a stored payload. The chunk list is only read when a stream is
+ * first opened, and slices only read the chunks that overlap the requested
+ * range, so neither reading blob metadata nor ranged reads load the whole
+ * payload.
+ */
+public class JdbcByteSource extends ByteSource {
+
+   private final JdbcService jdbcService;
+   private final ChunkList chunks;
+   private final ExecutorService executor;
+   private final int readAhead;
+   private final long offset;
+   private final long length;
+
+   public JdbcByteSource(JdbcService jdbcService, List<ChunkReference> chunks, ExecutorService executor,
+         int readAhead) {
+      this(jdbcService, new ChunkList(ImmutableList.copyOf(checkNotNull(chunks, "chunks"))), executor, readAhead, 0,
+            totalSize(chunks));
+   }
+
+   /**
+    * Creates a source for a payload whose chunk list is looked up when the
+    * first stream is opened.
+    */
+   public JdbcByteSource(JdbcService jdbcService, Long payloadId, long size, ExecutorService executor,
+         int readAhead) {
+      this(jdbcService, new ChunkList(jdbcService, checkNotNull(payloadId, "payloadId")), executor, readAhead, 0,
+            size);
+   }
+
+   private JdbcByteSource(JdbcService jdbcService, ChunkList chunks, ExecutorService executor, int readAhead,
+         long offset, long length) {
+      this.jdbcService = checkNotNull(jdbcService, "jdbcService");
+      this.chunks = chunks;
+      this.executor = executor;
+      this.readAhead = readAhead;
+      this.offset = offset;
+      this.length = length;
+   }
+
+   @Override
+   public InputStream openStream() throws IOException {
+      if (length == 0) {
+         return new JdbcInputStream(jdbcService, ImmutableList.<Long>of());
+      }
+      List<ChunkReference> references = chunks.get();
+      if (references.isEmpty()) {
+         return new JdbcInputStream(jdbcService, ImmutableList.<Long>of());
+      }
+      int first = indexOf(references, offset);
+      int last = indexOf(references, offset + length - 1);
+      List<Long> chunkIds = Lists.newArrayListWithCapacity(last - first + 1);
+      for (int i = first; i <= last; i++) {
+         chunkIds.add(references.get(i).getChunkId());
+      }
+      JdbcInputStream in = new JdbcInputStream(jdbcService, chunkIds, executor, readAhead);
+      if (offset == 0 && length == totalSize(references)) {
+         return in;
+      }
+      ByteStreams.skipFully(in, offset - references.get(first).getChunkOffset());
+      return ByteStreams.limit(in, length);
+   }
+
+   @Override
+   public long size() {
+      return length;
+   }
+
+   @Override
+   public ByteSource slice(long offset, long length) {
+      checkArgument(offset >= 0, "offset (%s) may not be negative", offset);
+      checkArgument(length >= 0, "length (%s) may not be negative", length);
+      long start = this.offset + Math.min(offset, this.length);
+      long end = start + Math.min(length, this.offset + this.length - start);
+      return new JdbcByteSource(jdbcService, chunks, executor, readAhead, start, end - start);
+   }
+
+   /**
+    * Finds the chunk holding the byte at the given position of the payload.
+    */
+   private static int indexOf(List<ChunkReference> chunks, long position) {
+      int low = 0;
+      int high = chunks.size() - 1;
+      while (low < high) {
+         int mid = (low + high + 1) >>> 1;
+         if (chunks.get(mid).getChunkOffset() <= position) {
+            low = mid;
+         } else {
+            high = mid - 1;
+         }
+      }
+      return low;
+   }
+
+   private static long totalSize(List<ChunkReference> chunks) {
+      if (chunks.isEmpty()) {
+         return 0;
+      }
+      ChunkReference last = chunks.get(chunks.size() - 1);
+      return last.getChunkOffset() + last.getChunkSize();
+   }
+
+   /**
+    * Chunk list shared by a source and its slices, read at most once.
+    */
+   private static final class ChunkList {
+
+      private final JdbcService jdbcService;
+      private final Long payloadId;
+      private List<ChunkReference> chunks;
+
+      ChunkList(List<ChunkReference> chunks) {
+         this.jdbcService = null;
+         this.payloadId = null;
+         this.chunks = chunks;
+      }
+
+      ChunkList(JdbcService jdbcService, Long payloadId) {
+         this.jdbcService = jdbcService;
+         this.payloadId = payloadId;
+      }
+
+      synchronized List<ChunkReference> get() throws IOException {
+         if (chunks == null) {
+            List<ChunkReference> found = jdbcService.findChunkReferences(payloadId);
+            if (found == null) {
+               throw new IOException("Could not find payload " + payloadId);
+            }
+            chunks = found;
+         }
+         return chunks;
+      }
+   }
+
+}
@@ -21,57 +21,180 @@ import org.jclouds.jdbc.service.JdbcService;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.LinkedHashSet;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
 
+/**
+ * Streams the content of a payload chunk by chunk, decompressing compressed
+ * chunks. When an executor and a read-ahead window are given, the next chunks
+ * are fetched in the background while the current one is being consumed.
+ */
 public class JdbcInputStream extends InputStream {
 
-   private JdbcService jdbcService;
+   private final JdbcService jdbcService;
+   private final ExecutorService executor;
+   private final int readAhead;
 
    private final List<Long> chunks;
+   private final Deque<Future<ChunkEntity>> prefetched = new ArrayDeque<Future<ChunkEntity>>();
+   private int nextChunk;
+   private int nextPrefetch;
+
    private ChunkEntity currentChunk;
    private int bytesRead;
 
    public JdbcInputStream(JdbcService jdbcService, List<Long> chunks) {
+      this(jdbcService, chunks, null, 0);
+   }
+
+   public JdbcInputStream(JdbcService jdbcService, List<Long> chunks, ExecutorService executor, int readAhead) {
+      checkArgument(readAhead >= 0, "readAhead must be non-negative");
       this.jdbcService = checkNotNull(jdbcService, "jdbcService");
-      // Need to remove duplicates due to https://hibernate.atlassian.net/browse/HHH-6783
-      this.chunks = new ArrayList<Long>(new LinkedHashSet<Long>(checkNotNull(chunks, "chunks")));
-      try {
-         readNextChunk();
-      } catch (IOException e) {
-         throw new IllegalArgumentException(e);
-      }
+      // The chunk list is ordered and may legitimately contain the same chunk more than once
+      this.chunks = new ArrayList<Long>(checkNotNull(chunks, "chunks"));
+      this.executor = executor;
+      this.readAhead = executor == null ? 0 : readAhead;
    }
 
    @Override
-   public synchronized int read() throws IOException {
-      if (hasFinished()) {
+   public int read() throws IOException {
+      if (!ensureData()) {
          return -1;
       }
-      int b = currentChunk.getData()[bytesRead] & 0xff;
-      bytesRead = bytesRead + 1;
-      if (bytesRead >= currentChunk.getSize()) {
-         readNextChunk();
+      return currentChunk.getData()[bytesRead++] & 0xff;
+   }
+
+   @Override
+   public int read(byte[] b, int off, int len) throws IOException {
+      checkPositionIndexes(off, off + len, b.length);
+      if (len == 0) {
+         return 0;
+      }
+      int total = 0;
+      while (total < len && ensureData()) {
+         int n = Math.min(len - total, currentChunk.getSize() - bytesRead);
+         System.arraycopy(currentChunk.getData(), bytesRead, b, off + total, n);
+         bytesRead += n;
+         total += n;
       }
-      return b;
+      return total == 0 ? -1 : total;
    }
 
-   private boolean hasFinished() {
-      return currentChunk == null || (chunks.size() == 0 && bytesRead >= currentChunk.getSize());
+   @Override
+   public long skip(long n) throws IOException {
+      long skipped = 0;
+      while (skipped < n && ensureData()) {
+         int step = (int) Math.min(n - skipped, currentChunk.getSize() - bytesRead);
+         bytesRead += step;
+         skipped += step;
+      }
+      return skipped;
    }
 
-   private void readNextChunk() throws IOException {
-      if (chunks.size() > 0) {
-         this.currentChunk = jdbcService.findChunkById(chunks.get(0));
-         if (currentChunk == null) {
-            throw new IOException("Could not find chunk.");
+   @Override
+   public int available() {
+      return currentChunk == null ? 0 : currentChunk.getSize() - bytesRead;
+   }
+
+   /**
+    * Writes the remaining content to the given stream a whole chunk at a time,
+    * without copying it through an intermediate buffer.
+    *
+    * @return the number of bytes written
+    */
+   public long transferTo(OutputStream out) throws IOException {
+      checkNotNull(out, "out");
+      long total = 0;
+      while (ensureData()) {
+         int n = currentChunk.getSize() - bytesRead;
+         out.write(currentChunk.getData(), bytesRead, n);
+         bytesRead += n;
+         total += n;
+      }
+      return total;
+   }
+
+   @Override
+   public void close() throws IOException {
+      for (Future<ChunkEntity> future : prefetched) {
+         future.cancel(true);
+      }
+      prefetched.clear();
+      nextChunk = chunks.size();
+      currentChunk = null;
+   }
+
+   /**
+    * Makes sure there are bytes left in the current chunk, moving to the next
+    * one if needed. Nothing is loaded before the first read or skip, so
+    * streams opened and closed unread cost no query.
+    *
+    * @return false if the end of the stream has been reached
+    */
+   private boolean ensureData() throws IOException {
+      while (currentChunk == null || bytesRead >= currentChunk.getSize()) {
+         if (nextChunk >= chunks.size()) {
+            return false;
          }
-         chunks.remove(0);
+         readNextChunk();
+      }
+      return true;
+   }
+
+   private void readNextChunk() throws IOException {
+      if (nextChunk < chunks.size()) {
+         this.currentChunk = readAhead > 0 ? takePrefetchedChunk() : loadChunk(chunks.get(nextChunk));
+         nextChunk++;
          this.bytesRead = 0;
       }
    }
 
+   private ChunkEntity takePrefetchedChunk() throws IOException {
+      while (nextPrefetch < chunks.size() && prefetched.size() <= readAhead) {
+         final Long id = chunks.get(nextPrefetch++);
+         prefetched.add(executor.submit(new Callable<ChunkEntity>() {
+            @Override
+            public ChunkEntity call() throws IOException {
+               return loadChunk(id);
+            }
+         }));
+      }
+      Future<ChunkEntity> future = prefetched.poll();
+      try {
+         return future.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while reading chunk");
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+         }
+         throw new IOException("Could not read chunk", e.getCause());
+      }
+   }
+
+   private ChunkEntity loadChunk(Long id) throws IOException {
+      ChunkEntity chunk = jdbcService.findChunkById(id);
+      if (chunk == null) {
+         throw new IOException("Could not find chunk.");
+      }
+      if (chunk.getCodec() == null) {
+         return chunk;
+      }
+      // Decompressed here so prefetched chunks are decompressed in the background too
+      return new ChunkEntity(chunk.getCodec().decompress(chunk.getData(), chunk.getSize()), chunk.getSize());
+   }
+
 }
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.util;
+
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.jclouds.jdbc.reference.JdbcConstants;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Serializes blob user metadata into the single column it is stored in, as a
+ * JSON object.
+ */
+public final class UserMetadataCodec {
+
+   private static final Gson GSON = new Gson();
+   private static final Type MAP_TYPE = new TypeToken<Map<String, String>>() { }.getType();
+
+   private UserMetadataCodec() {
+      throw new AssertionError("intentionally unimplemented");
+   }
+
+   /**
+    * @return the serialized metadata, or null if there is none
+    */
+   public static String encode(Map<String, String> userMetadata) {
+      if (userMetadata == null || userMetadata.isEmpty()) {
+         return null;
+      }
+      String encoded = GSON.toJson(userMetadata, MAP_TYPE);
+      checkArgument(encoded.length() <= JdbcConstants.MAX_USER_METADATA_LENGTH,
+            "user metadata may not exceed %s characters once serialized", JdbcConstants.MAX_USER_METADATA_LENGTH);
+      return encoded;
+   }
+
+   /**
+    * @return a mutable copy of the serialized metadata, empty if there is none
+    */
+   public static Map<String, String> decode(String userMetadata) {
+      Map<String, String> result = Maps.newLinkedHashMap();
+      if (userMetadata != null && !userMetadata.isEmpty()) {
+         Map<String, String> decoded = GSON.fromJson(userMetadata, MAP_TYPE);
+         if (decoded != null) {
+            result.putAll(decoded);
+         }
+      }
+      return result;
+   }
+
+}
@@ -17,10 +17,12 @@
 package org.jclouds.jdbc;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import com.google.inject.Module;
 import com.google.inject.persist.jpa.JpaPersistModule;
 import org.jclouds.ContextBuilder;
@@ -30,15 +32,22 @@ import org.jclouds.blobstore.BlobStoreContext;
 import org.jclouds.blobstore.ContainerNotFoundException;
 import org.jclouds.blobstore.domain.Blob;
 import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
 import org.jclouds.blobstore.domain.PageSet;
 import org.jclouds.blobstore.domain.StorageMetadata;
 import org.jclouds.blobstore.domain.StorageType;
+import org.jclouds.blobstore.options.CopyOptions;
 import org.jclouds.blobstore.options.GetOptions;
 import org.jclouds.blobstore.options.ListContainerOptions;
+import org.jclouds.blobstore.options.PutOptions;
 import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpResponseException;
 import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
 import org.jclouds.io.payloads.PhantomPayload;
 import org.jclouds.io.payloads.StringPayload;
+import org.jclouds.jdbc.reference.JdbcConstants;
 import org.jclouds.util.Closeables2;
 import org.jclouds.util.Strings2;
 import org.testng.annotations.AfterMethod;
@@ -47,6 +56,7 @@ import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -168,6 +178,64 @@ public abstract class BaseJdbcBlobStoreTest {
       checkForContainerContent(CONTAINER_NAME, "", result);
    }
 
+   @Test
+   public void testListPagesWithDelimiter() {
+      blobStore.createContainerInLocation(null, CONTAINER_NAME);
+      for (String key : ImmutableList.of("a/1", "a/2", "b", "c/1", "c/d/2", "d")) {
+         createBlobInContainer(CONTAINER_NAME, key);
+      }
+
+      PageSet<? extends StorageMetadata> page = blobStore.list(CONTAINER_NAME,
+            ListContainerOptions.Builder.maxResults(2));
+      assertThat(names(page)).containsExactly("a/", "b");
+      assertThat(page.iterator().next().getType()).isEqualTo(StorageType.RELATIVE_PATH);
+      assertThat(page.getNextMarker()).isEqualTo("b");
+
+      page = blobStore.list(CONTAINER_NAME, ListContainerOptions.Builder.maxResults(2).afterMarker("b"));
+      assertThat(names(page)).containsExactly("c/", "d");
+      assertThat(page.getNextMarker()).isNull();
+
+      page = blobStore.list(CONTAINER_NAME, ListContainerOptions.Builder.afterMarker("a/"));
+      assertThat(names(page)).containsExactly("b", "c/", "d");
+
+      page = blobStore.list(CONTAINER_NAME, ListContainerOptions.Builder.inDirectory("c"));
+      assertThat(names(page)).containsExactly("c/1", "c/d/");
+
+      page = blobStore.list(CONTAINER_NAME, ListContainerOptions.Builder.inDirectory("c").recursive());
+      assertThat(names(page)).containsExactly("c/1", "c/d/2");
+   }
+
+   @Test
+   public void testListPagesRecursive() {
+      blobStore.createContainerInLocation(null, CONTAINER_NAME);
+      List<String> keys = Lists.newArrayList();
+      for (int i = 0; i < 25; i++) {
+         keys.add(createBlobInContainer(CONTAINER_NAME, String.format("dir/blob-%02d", i)));
+      }
+
+      List<String> listed = Lists.newArrayList();
+      String marker = null;
+      do {
+         ListContainerOptions options = ListContainerOptions.Builder.recursive().maxResults(10);
+         if (marker != null) {
+            options.afterMarker(marker);
+         }
+         PageSet<? extends StorageMetadata> page = blobStore.list(CONTAINER_NAME, options);
+         assertThat(page.size()).isLessThanOrEqualTo(10);
+         listed.addAll(names(page));
+         marker = page.getNextMarker();
+      } while (marker != null);
+      assertThat(listed).isEqualTo(keys);
+   }
+
+   private static List<String> names(PageSet<? extends StorageMetadata> page) {
+      List<String> names = Lists.newArrayList();
+      for (StorageMetadata metadata : page) {
+         names.add(metadata.getName());
+      }
+      return names;
+   }
+
    @Test(expectedExceptions = ContainerNotFoundException.class)
    public void testListNotExistingContainer() {
       blobStore.list(CONTAINER_NAME);
@@ -620,6 +688,148 @@ public abstract class BaseJdbcBlobStoreTest {
       }
    }
 
+   @Test
+   public void testRangesAcrossChunks() throws IOException {
+      blobStore.createContainerInLocation(null, CONTAINER_NAME);
+      int chunkSize = JdbcConstants.DEFAULT_CHUNK_SIZE;
+      ByteSource content = randomByteSource().slice(0, 3 * chunkSize + 100);
+      blobStore.putBlob(CONTAINER_NAME, blobStore.blobBuilder("test").payload(content).build());
+
+      assertRange(content, new GetOptions().range(chunkSize - 10, chunkSize + 9), chunkSize - 10, 20);
+      assertRange(content, new GetOptions().range(chunkSize, 2 * chunkSize - 1), chunkSize, chunkSize);
+      assertRange(content, new GetOptions().startAt(2 * chunkSize + 5), 2 * chunkSize + 5, chunkSize + 95);
+      assertRange(content, new GetOptions().tail(150), 3 * chunkSize - 50, 150);
+   }
+
+   private void assertRange(ByteSource content, GetOptions options, long offset, long length) throws IOException {
+      Payload payload = blobStore.getBlob(CONTAINER_NAME, "test", options).getPayload();
+      try {
+         assertTrue(Arrays.equals(content.slice(offset, length).read(), ByteStreams.toByteArray(payload.openStream())));
+      } finally {
+         Closeables2.closeQuietly(payload);
+      }
+   }
+
+   @Test
+   public void testConditionalGet() throws IOException {
+      blobStore.createContainerInLocation(null, CONTAINER_NAME);
+      String key = createBlobInContainer(CONTAINER_NAME);
+      String etag = blobStore.blobMetadata(CONTAINER_NAME, key).getETag();
+
+      try {
+         blobStore.getBlob(CONTAINER_NAME, key, GetOptions.Builder.ifETagDoesntMatch(etag));
+         fail("Expected a not modified response");
+      } catch (HttpResponseException e) {
+         assertEquals(e.getResponse().getStatusCode(), 304);
+      }
+
+      Payload payload = blobStore.getBlob(CONTAINER_NAME, key, GetOptions.Builder.ifETagMatches(etag)).getPayload();
+      try {
+         assertEquals(ByteStreams.toByteArray(payload.openStream()).length, 1024);
+      } finally {
+         Closeables2.closeQuietly(payload);
+      }
+   }
+
+   @Test
+   public void testMultipartUpload() throws IOException {
+      blobStore.createContainerInLocation(null, CONTAINER_NAME);
+      String blobKey = createRandomBlobKey();
+      ByteSource first = randomByteSource().slice(0, JdbcConstants.DEFAULT_CHUNK_SIZE + 1000);
+      ByteSource second = randomByteSource().slice(0, 1000);
+      BlobMetadata metadata = blobStore.blobBuilder(blobKey)
+            .payload(new byte[0])
+            .contentType("text/plain")
+            .userMetadata(ImmutableMap.of("key", "value"))
+            .build().getMetadata();
+      MultipartUpload mpu = blobStore.initiateMultipartUpload(CONTAINER_NAME, metadata, PutOptions.NONE);
+      assertEquals(blobStore.listMultipartUploads(CONTAINER_NAME).size(), 1);
+
+      // Parts may arrive out of order and be retried
+      MultipartPart part2 = blobStore.uploadMultipartPart(mpu, 2, Payloads.newByteSourcePayload(second));
+      blobStore.uploadMultipartPart(mpu, 1, Payloads.newByteSourcePayload(second));
+      MultipartPart part1 = blobStore.uploadMultipartPart(mpu, 1, Payloads.newByteSourcePayload(first));
+      List<MultipartPart> parts = blobStore.listMultipartUpload(mpu);
+      assertEquals(parts.size(), 2);
+      assertEquals(parts.get(0).partNumber(), 1);
+      assertEquals(parts.get(0).partSize(), first.size());
+      assertEquals(parts.get(1).partNumber(), 2);
+
+      String etag = blobStore.completeMultipartUpload(mpu, ImmutableList.of(part1, part2));
+      assertTrue(etag.endsWith("-2"), etag);
+      assertTrue(blobStore.listMultipartUploads(CONTAINER_NAME).isEmpty());
+
+      Blob blob = blobStore.getBlob(CONTAINER_NAME, blobKey);
+      assertEquals(ByteStreams.toByteArray(blob.getPayload().openStream()), ByteSource.concat(first, second).read());
+      assertEquals(blob.getMetadata().getETag(), etag);
+      assertEquals(blob.getMetadata().getContentMetadata().getContentType(), "text/plain");
+      assertEquals(blob.getMetadata().getContentMetadata().getContentLength(),
+            Long.valueOf(first.size() + second.size()));
+      assertEquals(blob.getMetadata().getUserMetadata().get("key"), "value");
+   }
+
+   @Test
+   public void testAbortMultipartUpload() throws IOException {
+      blobStore.createContainerInLocation(null, CONTAINER_NAME);
+      String blobKey = createRandomBlobKey();
+      BlobMetadata metadata = blobStore.blobBuilder(blobKey).payload(new byte[0]).build().getMetadata();
+      MultipartUpload mpu = blobStore.initiateMultipartUpload(CONTAINER_NAME, metadata, PutOptions.NONE);
+      blobStore.uploadMultipartPart(mpu, 1, Payloads.newByteSourcePayload(randomByteSource().slice(0, 1000)));
+
+      blobStore.abortMultipartUpload(mpu);
+      assertTrue(blobStore.listMultipartUploads(CONTAINER_NAME).isEmpty());
+      assertTrue(blobStore.listMultipartUpload(mpu).isEmpty());
+      assertFalse(blobStore.blobExists(CONTAINER_NAME, blobKey));
+   }
+
+   @Test
+   public void testPutBlobMultipart() throws IOException {
+      blobStore.createContainerInLocation(null, CONTAINER_NAME);
+      String blobKey = createRandomBlobKey();
+      ByteSource content = randomByteSource().slice(0, 5L * JdbcConstants.DEFAULT_CHUNK_SIZE / 2);
+      Blob blob = blobStore.blobBuilder(blobKey)
+            .payload(content)
+            .contentLength(content.size())
+            .build();
+      String etag = blobStore.putBlob(CONTAINER_NAME, blob, PutOptions.Builder.multipart());
+      assertNotNull(etag);
+      assertTrue(blobStore.listMultipartUploads(CONTAINER_NAME).isEmpty());
+
+      Blob result = blobStore.getBlob(CONTAINER_NAME, blobKey);
+      assertEquals(ByteStreams.toByteArray(result.getPayload().openStream()), content.read());
+      assertEquals(result.getMetadata().getSize(), Long.valueOf(content.size()));
+   }
+
+   @Test
+   public void testCopyBlob() throws IOException {
+      blobStore.createContainerInLocation(null, CONTAINER_NAME);
+      String blobKey = createRandomBlobKey();
+      String copyKey = createRandomBlobKey();
+      ByteSource content = randomByteSource().slice(0, 2 * JdbcConstants.DEFAULT_CHUNK_SIZE + 1000);
+      Blob blob = blobStore.blobBuilder(blobKey)
+            .payload(content)
+            .contentType("text/plain")
+            .userMetadata(ImmutableMap.of("key", "value"))
+            .build();
+      String etag = blobStore.putBlob(CONTAINER_NAME, blob);
+
+      assertEquals(blobStore.copyBlob(CONTAINER_NAME, blobKey, CONTAINER_NAME, copyKey, CopyOptions.NONE), etag);
+      // The copy shares the chunks and must outlive the source
+      blobStore.removeBlob(CONTAINER_NAME, blobKey);
+      Blob copy = blobStore.getBlob(CONTAINER_NAME, copyKey);
+      assertEquals(ByteStreams.toByteArray(copy.getPayload().openStream()), content.read());
+      assertEquals(copy.getMetadata().getETag(), etag);
+      assertEquals(copy.getMetadata().getContentMetadata().getContentType(), "text/plain");
+      assertEquals(copy.getMetadata().getUserMetadata().get("key"), "value");
+
+      // Copying onto itself must not drop the chunks
+      blobStore.copyBlob(CONTAINER_NAME, copyKey, CONTAINER_NAME, copyKey,
+            CopyOptions.builder().userMetadata(ImmutableMap.of("other", "value")).build());
+      copy = blobStore.getBlob(CONTAINER_NAME, copyKey);
+      assertEquals(ByteStreams.toByteArray(copy.getPayload().openStream()), content.read());
+      assertEquals(copy.getMetadata().getUserMetadata(), ImmutableMap.of("other", "value"));
+   }
+
    @Test
    public void testBlobRequestSigner() throws Exception {
       String containerName = "container";
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import org.jclouds.blobstore.domain.internal.BlobBuilderImpl;
+import org.jclouds.jdbc.config.JdbcPersistModule;
+import org.jclouds.jdbc.module.TestContextModule;
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.jclouds.jdbc.strategy.JdbcStorageStrategy;
+import org.jclouds.jdbc.util.ChunkBufferPool;
+import org.jclouds.lifecycle.Closer;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jclouds.utils.TestUtils.randomByteSource;
+
+@Test(groups = "unit", testName = "ChunkBufferPoolTest")
+public class ChunkBufferPoolTest {
+
+   public void testReusesReleasedBuffers() {
+      ChunkBufferPool pool = new ChunkBufferPool(1024);
+      byte[] buffer = pool.acquire(512);
+      pool.release(buffer);
+      assertThat(pool.getPooledBytes()).isEqualTo(512);
+      assertThat(pool.acquire(512)).isSameAs(buffer);
+      assertThat(pool.getPooledBytes()).isEqualTo(0);
+   }
+
+   public void testBoundsPooledBytesAcrossSizes() {
+      ChunkBufferPool pool = new ChunkBufferPool(1024);
+      byte[] small1 = pool.acquire(256);
+      byte[] small2 = pool.acquire(256);
+      byte[] large = pool.acquire(768);
+      pool.release(small1);
+      pool.release(small2);
+      // Would take the pool over its size
+      pool.release(large);
+      assertThat(pool.getPooledBytes()).isEqualTo(512);
+      assertThat(pool.acquire(768)).isNotSameAs(large);
+   }
+
+   public void testDropsBuffersOfSizesNeverAcquired() {
+      ChunkBufferPool pool = new ChunkBufferPool(1024);
+      pool.acquire(512);
+      pool.release(new byte[100]);
+      assertThat(pool.getPooledBytes()).isEqualTo(0);
+   }
+
+   public void testUploadReusesFlushedBuffers() throws IOException {
+      Properties properties = new Properties();
+      properties.setProperty(JdbcConstants.PROPERTY_CHUNK_FLUSH_INTERVAL, "2");
+      Injector injector = Guice.createInjector(ImmutableSet.<Module> of(new TestContextModule(properties),
+            new JdbcPersistModule("jclouds-test-hsqldb")));
+      try {
+         JdbcStorageStrategy storageStrategy = injector.getInstance(JdbcStorageStrategy.class);
+         ChunkBufferPool pool = injector.getInstance(ChunkBufferPool.class);
+         assertThat(storageStrategy.createContainerInLocation("container", null, null)).isTrue();
+         ByteSource content = randomByteSource().slice(0, 8 * JdbcConstants.DEFAULT_CHUNK_SIZE + 1);
+         storageStrategy.putBlob("container", new BlobBuilderImpl().name("blob").payload(content).build());
+
+         // The buffers of the chunks flushed first were read into again
+         assertThat(pool.getReusedBuffers()).isGreaterThan(0);
+         assertThat(pool.getPooledBytes()).isGreaterThan(0);
+         InputStream data = storageStrategy.getBlob("container", "blob").getPayload().openStream();
+         try {
+            assertThat(ByteStreams.toByteArray(data)).isEqualTo(content.read());
+         } finally {
+            data.close();
+         }
+      } finally {
+         injector.getInstance(Closer.class).close();
+      }
+   }
+
+}
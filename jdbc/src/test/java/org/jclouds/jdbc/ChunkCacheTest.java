@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.jclouds.jdbc.entity.ChunkEntity;
+import org.jclouds.jdbc.util.ChunkCache;
+import org.jclouds.jdbc.util.ChunkCodec;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jclouds.utils.TestUtils.randomByteSource;
+
+@Test(groups = "unit", testName = "ChunkCacheTest", singleThreaded = true)
+public class ChunkCacheTest {
+
+   private File directory;
+
+   @BeforeMethod
+   public void setUp() {
+      directory = Files.createTempDir();
+   }
+
+   @AfterMethod
+   public void tearDown() {
+      File[] files = directory.listFiles();
+      if (files != null) {
+         for (File file : files) {
+            file.delete();
+         }
+      }
+      directory.delete();
+   }
+
+   public void testRoundTrip() throws IOException {
+      ChunkCache cache = new ChunkCache(directory, 1024 * 1024);
+      byte[] data = randomByteSource().slice(0, 1000).read();
+      cache.put(1L, new ChunkEntity(data, 4000, null, ChunkCodec.DEFLATE));
+
+      ChunkEntity cached = cache.get(1L);
+      assertThat(cached.getData()).isEqualTo(data);
+      assertThat(cached.getSize()).isEqualTo(4000);
+      assertThat(cached.getCodec()).isEqualTo(ChunkCodec.DEFLATE);
+      assertThat(cache.get(2L)).isNull();
+   }
+
+   public void testInvalidateDeletesFile() throws IOException {
+      ChunkCache cache = new ChunkCache(directory, 1024 * 1024);
+      cache.put(1L, new ChunkEntity(randomByteSource().slice(0, 100).read(), 100));
+      assertThat(directory.listFiles()).hasSize(1);
+
+      cache.invalidate(ImmutableList.of(1L));
+      assertThat(cache.get(1L)).isNull();
+      assertThat(directory.listFiles()).isEmpty();
+   }
+
+   public void testEvictsBeyondMaximumSize() throws IOException {
+      ChunkCache cache = new ChunkCache(directory, 2500);
+      for (long id = 1; id <= 5; id++) {
+         cache.put(id, new ChunkEntity(randomByteSource().slice(0, 1000).read(), 1000));
+      }
+      assertThat(directory.listFiles().length).isLessThanOrEqualTo(2);
+      assertThat(cache.get(5L)).isNotNull();
+      assertThat(cache.get(1L)).isNull();
+   }
+
+   public void testStaleFilesAreDeleted() throws IOException {
+      new ChunkCache(directory, 1024 * 1024).put(1L, new ChunkEntity(new byte[10], 10));
+      ChunkCache cache = new ChunkCache(directory, 1024 * 1024);
+      assertThat(directory.listFiles()).isEmpty();
+      assertThat(cache.get(1L)).isNull();
+   }
+
+   public void testDisabled() {
+      ChunkCache cache = new ChunkCache(null, 0);
+      cache.put(1L, new ChunkEntity(new byte[10], 10));
+      assertThat(cache.isEnabled()).isFalse();
+      assertThat(cache.get(1L)).isNull();
+   }
+
+}
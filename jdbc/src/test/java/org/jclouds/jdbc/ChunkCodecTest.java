@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc;
+
+import com.google.common.base.Strings;
+import org.jclouds.jdbc.util.ChunkCodec;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jclouds.utils.TestUtils.randomByteSource;
+
+@Test(groups = "unit", testName = "ChunkCodecTest")
+public class ChunkCodecTest {
+
+   @DataProvider
+   public Object[][] codecs() {
+      return new Object[][] { { ChunkCodec.LZ4 }, { ChunkCodec.DEFLATE } };
+   }
+
+   @Test(dataProvider = "codecs")
+   public void testRoundTrip(ChunkCodec codec) throws IOException {
+      byte[] data = Strings.repeat("{\"level\":\"INFO\",\"message\":\"request served\"}\n", 1000).getBytes(UTF_8);
+      // Only the first bytes of the buffer are compressed
+      byte[] buffer = Arrays.copyOf(data, data.length + 100);
+      byte[] compressed = codec.compress(buffer, data.length);
+      assertThat(compressed).isNotNull();
+      assertThat(compressed.length).isLessThan(data.length / 5);
+      assertThat(codec.decompress(compressed, data.length)).isEqualTo(data);
+   }
+
+   @Test(dataProvider = "codecs")
+   public void testIncompressibleData(ChunkCodec codec) throws IOException {
+      byte[] data = randomByteSource().slice(0, 64 * 1024).read();
+      assertThat(codec.compress(data, data.length)).isNull();
+   }
+
+   @Test(dataProvider = "codecs", expectedExceptions = IOException.class)
+   public void testCorruptedData(ChunkCodec codec) throws IOException {
+      byte[] data = Strings.repeat("abc", 1000).getBytes(UTF_8);
+      byte[] compressed = codec.compress(data, data.length);
+      codec.decompress(Arrays.copyOf(compressed, compressed.length / 2), data.length);
+   }
+
+   @Test
+   public void testNoneStoresAsIs() throws IOException {
+      byte[] data = "abc".getBytes(UTF_8);
+      assertThat(ChunkCodec.NONE.compress(data, data.length)).isNull();
+      assertThat(ChunkCodec.NONE.decompress(data, data.length)).isSameAs(data);
+   }
+}
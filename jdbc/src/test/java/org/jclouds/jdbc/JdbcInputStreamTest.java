@@ -17,16 +17,27 @@
 package org.jclouds.jdbc;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import org.jclouds.jdbc.entity.ChunkEntity;
+import org.jclouds.jdbc.entity.ChunkReference;
 import org.jclouds.jdbc.service.JdbcService;
+import org.jclouds.jdbc.util.JdbcByteSource;
 import org.jclouds.jdbc.util.JdbcInputStream;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.createNiceMock;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 
 @Test(groups = "unit", testName = "JdbcInputStreamTest")
 public class JdbcInputStreamTest {
@@ -38,10 +49,23 @@ public class JdbcInputStreamTest {
       mockJdbcService = createNiceMock(JdbcService.class);
    }
 
-   @Test(expectedExceptions = IllegalArgumentException.class)
+   @Test(expectedExceptions = IOException.class)
    public void testInvalidIdList() throws IOException {
       expect(mockJdbcService.findChunkById(0L)).andReturn(null);
-      new JdbcInputStream(mockJdbcService, ImmutableList.<Long>builder().add(0L).build());
+      replay(mockJdbcService);
+      new JdbcInputStream(mockJdbcService, ImmutableList.<Long>builder().add(0L).build()).read();
+   }
+
+   @Test
+   public void testNothingLoadedBeforeFirstRead() throws IOException {
+      JdbcService jdbcService = createMock(JdbcService.class);
+      expect(jdbcService.findChunkById(1L)).andReturn(new ChunkEntity("abc".getBytes(), 3));
+      replay(jdbcService);
+      JdbcInputStream jdbcInputStream = new JdbcInputStream(jdbcService, ImmutableList.of(1L, 2L));
+      assertThat(jdbcInputStream.available()).isEqualTo(0);
+      assertThat(jdbcInputStream.read()).isEqualTo('a');
+      jdbcInputStream.close();
+      verify(jdbcService);
    }
 
    @Test(expectedExceptions = NullPointerException.class)
@@ -56,4 +80,75 @@ public class JdbcInputStreamTest {
       assertThat(jdbcInputStream.read()).isEqualTo(-1);
    }
 
+   @Test
+   public void testBulkReadAcrossChunks() throws IOException {
+      expectChunks();
+      JdbcInputStream jdbcInputStream = new JdbcInputStream(mockJdbcService, ImmutableList.of(1L, 2L, 3L));
+      assertThat(ByteStreams.toByteArray(jdbcInputStream)).isEqualTo("abcdefgh".getBytes());
+      assertThat(jdbcInputStream.read()).isEqualTo(-1);
+   }
+
+   @Test
+   public void testReadAhead() throws IOException {
+      expectChunks();
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try {
+         JdbcInputStream jdbcInputStream = new JdbcInputStream(mockJdbcService, ImmutableList.of(1L, 2L, 3L),
+               executor, 2);
+         assertThat(jdbcInputStream.skip(2)).isEqualTo(2);
+         assertThat(jdbcInputStream.read()).isEqualTo('c');
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         assertThat(jdbcInputStream.transferTo(out)).isEqualTo(5);
+         assertThat(out.toByteArray()).isEqualTo("defgh".getBytes());
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testSliceReadsOnlyNeededChunks() throws IOException {
+      JdbcService jdbcService = createMock(JdbcService.class);
+      expect(jdbcService.findChunkById(2L)).andReturn(new ChunkEntity("def".getBytes(), 3));
+      replay(jdbcService);
+      ByteSource source = new JdbcByteSource(jdbcService, ImmutableList.of(new ChunkReference(1L, 0, 3),
+            new ChunkReference(2L, 3, 3), new ChunkReference(3L, 6, 2)), null, 0);
+      assertThat(source.size()).isEqualTo(8);
+      assertThat(source.slice(4, 2).read()).isEqualTo("ef".getBytes());
+      verify(jdbcService);
+   }
+
+   @Test
+   public void testSliceAcrossChunks() throws IOException {
+      expectChunks();
+      ByteSource source = new JdbcByteSource(mockJdbcService, ImmutableList.of(new ChunkReference(1L, 0, 3),
+            new ChunkReference(2L, 3, 3), new ChunkReference(3L, 6, 2)), null, 0);
+      assertThat(source.read()).isEqualTo("abcdefgh".getBytes());
+      assertThat(source.slice(2, 5).read()).isEqualTo("cdefg".getBytes());
+      assertThat(source.slice(1, 6).slice(1, 100).read()).isEqualTo("cdefg".getBytes());
+      assertThat(source.slice(10, 5).read()).isEmpty();
+   }
+
+   @Test
+   public void testChunkListReadOnFirstOpen() throws IOException {
+      JdbcService jdbcService = createMock(JdbcService.class);
+      expect(jdbcService.findChunkReferences(7L)).andReturn(ImmutableList.of(new ChunkReference(1L, 0, 3),
+            new ChunkReference(2L, 3, 3)));
+      expect(jdbcService.findChunkById(1L)).andReturn(new ChunkEntity("abc".getBytes(), 3));
+      expect(jdbcService.findChunkById(2L)).andReturn(new ChunkEntity("def".getBytes(), 3)).times(2);
+      replay(jdbcService);
+      ByteSource source = new JdbcByteSource(jdbcService, 7L, 6, null, 0);
+      assertThat(source.size()).isEqualTo(6);
+      assertThat(source.slice(1, 4).size()).isEqualTo(4);
+      assertThat(source.read()).isEqualTo("abcdef".getBytes());
+      assertThat(source.slice(4, 2).read()).isEqualTo("ef".getBytes());
+      verify(jdbcService);
+   }
+
+   private void expectChunks() {
+      expect(mockJdbcService.findChunkById(1L)).andReturn(new ChunkEntity("abc".getBytes(), 3)).anyTimes();
+      expect(mockJdbcService.findChunkById(2L)).andReturn(new ChunkEntity("def".getBytes(), 3)).anyTimes();
+      expect(mockJdbcService.findChunkById(3L)).andReturn(new ChunkEntity("gh".getBytes(), 2)).anyTimes();
+      replay(mockJdbcService);
+   }
+
 }
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.datasource;
+
+import org.testng.annotations.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.testng.Assert.fail;
+
+@Test(groups = "unit", testName = "MeteredDataSourceTest")
+public class MeteredDataSourceTest {
+
+   public void testTracksActiveConnections() throws SQLException {
+      Connection first = createMock(Connection.class);
+      Connection second = createMock(Connection.class);
+      DataSource delegate = createMock(DataSource.class);
+      expect(delegate.getConnection()).andReturn(first);
+      expect(delegate.getConnection()).andReturn(second);
+      first.close();
+      second.close();
+      replay(first, second, delegate);
+
+      MeteredDataSource dataSource = new MeteredDataSource(delegate);
+      Connection connection = dataSource.getConnection();
+      dataSource.getConnection().close();
+      assertThat(dataSource.getActiveConnections()).isEqualTo(1);
+      assertThat(dataSource.getConnectionRequests()).isEqualTo(2);
+
+      connection.close();
+      assertThat(dataSource.getActiveConnections()).isEqualTo(0);
+      verify(first, second, delegate);
+   }
+
+   public void testClosingTwiceIsCountedOnce() throws SQLException {
+      Connection connection = createMock(Connection.class);
+      DataSource delegate = createMock(DataSource.class);
+      expect(delegate.getConnection()).andReturn(connection);
+      connection.close();
+      connection.close();
+      replay(connection, delegate);
+
+      MeteredDataSource dataSource = new MeteredDataSource(delegate);
+      Connection metered = dataSource.getConnection();
+      metered.close();
+      metered.close();
+      assertThat(dataSource.getActiveConnections()).isEqualTo(0);
+      verify(connection, delegate);
+   }
+
+   public void testFailedRequestIsNotCounted() throws SQLException {
+      DataSource delegate = createMock(DataSource.class);
+      expect(delegate.getConnection()).andThrow(new SQLException("pool exhausted"));
+      replay(delegate);
+
+      MeteredDataSource dataSource = new MeteredDataSource(delegate);
+      try {
+         dataSource.getConnection();
+         fail("Expected SQLException");
+      } catch (SQLException expected) {
+         assertThat(expected).hasMessage("pool exhausted");
+      }
+      assertThat(dataSource.getActiveConnections()).isEqualTo(0);
+      assertThat(dataSource.getConnectionRequests()).isEqualTo(0);
+      verify(delegate);
+   }
+
+   public void testUnwrapsToItself() throws SQLException {
+      DataSource delegate = createMock(DataSource.class);
+      replay(delegate);
+      MeteredDataSource dataSource = new MeteredDataSource(delegate);
+      assertThat(dataSource.unwrap(MeteredDataSource.class)).isSameAs(dataSource);
+      assertThat(dataSource.isWrapperFor(MeteredDataSource.class)).isTrue();
+   }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.integration;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.internal.BlobBuilderImpl;
+import org.jclouds.jdbc.config.JdbcPersistModule;
+import org.jclouds.jdbc.module.TestContextModule;
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.jclouds.jdbc.strategy.JdbcStorageStrategy;
+import org.jclouds.lifecycle.Closer;
+import org.testng.Reporter;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jclouds.utils.TestUtils.randomByteSource;
+
+/**
+ * Compares the chunk throughput of the JPA and JDBC chunk stores on H2, both
+ * running on the built-in connection pool.
+ */
+@Test(groups = { "integration" }, singleThreaded = true, testName = "ChunkStoreThroughputIntegrationTest")
+public class ChunkStoreThroughputIntegrationTest {
+
+   private static final int BLOB_SIZE = 64 * JdbcConstants.DEFAULT_CHUNK_SIZE;
+   private static final int ROUNDS = 3;
+
+   @DataProvider
+   public Object[][] chunkStores() {
+      return new Object[][] { { "jpa" }, { "jdbc" } };
+   }
+
+   @Test(dataProvider = "chunkStores")
+   public void testThroughput(String chunkStore) throws IOException {
+      Properties properties = new Properties();
+      properties.setProperty(JdbcConstants.PROPERTY_CHUNK_STORE, chunkStore);
+      properties.setProperty(JdbcConstants.PROPERTY_DATASOURCE_URL, "jdbc:h2:./target/h2-2");
+      properties.setProperty(JdbcConstants.PROPERTY_DATASOURCE_DRIVER, "org.h2.Driver");
+      properties.setProperty(JdbcConstants.PROPERTY_DATASOURCE_USER, "sa");
+      Injector injector = Guice.createInjector(ImmutableSet.<Module>of(new TestContextModule(properties),
+            new JdbcPersistModule("jclouds-test-h2")));
+      try {
+         JdbcStorageStrategy storageStrategy = injector.getInstance(JdbcStorageStrategy.class);
+         String container = "throughput-" + chunkStore;
+         storageStrategy.createContainerInLocation(container, null, null);
+         ByteSource content = randomByteSource().slice(0, BLOB_SIZE);
+
+         Stopwatch writes = Stopwatch.createUnstarted();
+         Stopwatch reads = Stopwatch.createUnstarted();
+         for (int i = 0; i < ROUNDS; i++) {
+            writes.start();
+            storageStrategy.putBlob(container, new BlobBuilderImpl().name("blob").payload(content).build());
+            writes.stop();
+
+            reads.start();
+            Blob blob = storageStrategy.getBlob(container, "blob");
+            InputStream is = blob.getPayload().openStream();
+            try {
+               assertThat(ByteStreams.copy(is, ByteStreams.nullOutputStream())).isEqualTo(BLOB_SIZE);
+            } finally {
+               is.close();
+            }
+            reads.stop();
+         }
+         storageStrategy.deleteContainer(container);
+
+         Reporter.log(String.format("%s chunk store: write %.1f MB/s, read %.1f MB/s", chunkStore,
+               throughput(writes), throughput(reads)), true);
+      } finally {
+         // Stops the persistence service and closes the connection pool
+         injector.getInstance(Closer.class).close();
+      }
+   }
+
+   private static double throughput(Stopwatch stopwatch) {
+      double megabytes = (double) ROUNDS * BLOB_SIZE / (1024 * 1024);
+      return megabytes * 1000 / Math.max(1, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+   }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.metrics;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+@Test(groups = "unit", testName = "JdbcMetricsTest")
+public class JdbcMetricsTest {
+
+   public void testPercentilesAreBucketUpperBounds() {
+      OperationStats stats = new OperationStats();
+      for (int i = 0; i < 90; i++) {
+         stats.record(TimeUnit.MICROSECONDS.toNanos(100), 10, 1);
+      }
+      for (int i = 0; i < 10; i++) {
+         stats.record(TimeUnit.MILLISECONDS.toNanos(10), 10, 1);
+      }
+      assertThat(stats.getCount()).isEqualTo(100);
+      assertThat(stats.getBytes()).isEqualTo(1000);
+      assertThat(stats.getRows()).isEqualTo(100);
+      assertThat(stats.getMaxMillis()).isEqualTo(10.0);
+      assertThat(stats.getMeanMillis()).isEqualTo(1.09);
+      assertThat(stats.get50thPercentileMillis()).isEqualTo(0.128);
+      // Capped by the maximum rather than the 16.384ms bound of its bucket
+      assertThat(stats.get95thPercentileMillis()).isEqualTo(10.0);
+      assertThat(stats.get99thPercentileMillis()).isEqualTo(10.0);
+   }
+
+   public void testEmptyStats() {
+      OperationStats stats = new OperationStats();
+      assertThat(stats.getCount()).isEqualTo(0);
+      assertThat(stats.getMeanMillis()).isEqualTo(0.0);
+      assertThat(stats.get99thPercentileMillis()).isEqualTo(0.0);
+   }
+
+   public void testDefaultRegistryKeepsOperationsApart() {
+      DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+      JdbcMetrics metrics = new JdbcMetrics(registry);
+      metrics.stop(Operation.PUT, metrics.start(), 42, 1);
+      metrics.stop(Operation.LIST, metrics.start(), 0, 7);
+      metrics.stop(Operation.LIST, metrics.start());
+
+      assertThat(registry.getStats(Operation.PUT).getCount()).isEqualTo(1);
+      assertThat(registry.getStats(Operation.PUT).getBytes()).isEqualTo(42);
+      assertThat(registry.getStats(Operation.LIST).getCount()).isEqualTo(2);
+      assertThat(registry.getStats(Operation.LIST).getRows()).isEqualTo(7);
+      assertThat(registry.getStats(Operation.GET).getCount()).isEqualTo(0);
+   }
+
+   public void testCustomRegistry() {
+      MetricsRegistry registry = createMock(MetricsRegistry.class);
+      registry.record(eq(Operation.CHUNK_READ), anyLong(), eq(1024L), eq(1L));
+      replay(registry);
+
+      JdbcMetrics metrics = new JdbcMetrics(registry);
+      assertThat(metrics.isEnabled()).isTrue();
+      metrics.stop(Operation.CHUNK_READ, metrics.start(), 1024, 1);
+      verify(registry);
+   }
+
+   public void testDisabledMetricsDoNotReadTheClock() {
+      JdbcMetrics metrics = new JdbcMetrics(null);
+      assertThat(metrics.isEnabled()).isFalse();
+      assertThat(metrics.getRegistry()).isNull();
+      assertThat(metrics.start()).isEqualTo(0);
+      metrics.stop(Operation.GET, 0, 1, 1);
+   }
+
+}
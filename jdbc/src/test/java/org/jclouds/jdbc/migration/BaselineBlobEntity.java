@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.migration;
+
+import javax.persistence.Column;
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Blob entity mapped like the one of earlier versions, with the user metadata
+ * in an element collection, so tests can create the schema the migration
+ * starts from.
+ */
+@Entity(name = "BlobEntity")
+@IdClass(BaselineBlobEntity.PK.class)
+public class BaselineBlobEntity {
+
+   // Column of the container join column of earlier versions
+   @Id
+   @Column(name = "id")
+   private Long containerId;
+
+   @Id
+   private String key;
+
+   @ElementCollection(fetch = FetchType.EAGER)
+   private Map<String, String> userMetadata;
+
+   public BaselineBlobEntity() {
+   }
+
+   public BaselineBlobEntity(Long containerId, String key, Map<String, String> userMetadata) {
+      this.containerId = containerId;
+      this.key = key;
+      this.userMetadata = userMetadata;
+   }
+
+   public static class PK implements Serializable {
+
+      private Long containerId;
+      private String key;
+
+      public PK() {
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (this == o)
+            return true;
+         if (o == null || getClass() != o.getClass())
+            return false;
+
+         PK pk = (PK) o;
+
+         return containerId.equals(pk.containerId) && key.equals(pk.key);
+      }
+
+      @Override
+      public int hashCode() {
+         return 31 * containerId.hashCode() + key.hashCode();
+      }
+   }
+
+}
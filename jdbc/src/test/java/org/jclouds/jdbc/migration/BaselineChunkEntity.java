@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.migration;
+
+import org.jclouds.jdbc.reference.JdbcConstants;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+
+/**
+ * Chunk entity mapped like the one of earlier versions, without codec, hash or
+ * reference count.
+ */
+@Entity(name = "ChunkEntity")
+public class BaselineChunkEntity {
+
+   @Id
+   @GeneratedValue
+   private Long id;
+
+   @Lob
+   @Column(length = JdbcConstants.DEFAULT_CHUNK_SIZE)
+   private byte[] data;
+
+   private int size;
+
+   public BaselineChunkEntity() {
+   }
+
+   public BaselineChunkEntity(int size) {
+      this.data = new byte[size];
+      this.size = size;
+   }
+
+   public Long getId() {
+      return id;
+   }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.migration;
+
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import java.util.List;
+
+/**
+ * Payload entity mapped like the one of earlier versions, with the ids of its
+ * chunks in an unordered element collection.
+ */
+@Entity(name = "PayloadEntity")
+public class BaselinePayloadEntity {
+
+   @Id
+   @GeneratedValue
+   private Long id;
+
+   @ElementCollection(fetch = FetchType.EAGER)
+   private List<Long> chunks;
+
+   public BaselinePayloadEntity() {
+   }
+
+   public BaselinePayloadEntity(List<Long> chunks) {
+      this.chunks = chunks;
+   }
+
+   public Long getId() {
+      return id;
+   }
+
+}
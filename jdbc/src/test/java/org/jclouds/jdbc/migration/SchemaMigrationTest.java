@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.migration;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.jclouds.jdbc.entity.ChunkEntity;
+import org.jclouds.jdbc.util.UserMetadataCodec;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Migrates databases whose schema was created from the mapping of earlier
+ * versions by each persistence provider.
+ */
+@Test(groups = "unit", testName = "SchemaMigrationTest", singleThreaded = true)
+public class SchemaMigrationTest {
+
+   private int databases;
+   private List<Long> payloadIds;
+   private List<Long> chunkIds;
+
+   @DataProvider
+   public Object[][] baselineSchemas() {
+      // The connection of each test keeps its in-memory database open
+      return new Object[][] {
+            { "jclouds-test-baseline-hsqldb", "jdbc:hsqldb:mem:baseline" },
+            { "jclouds-test-baseline-h2", "jdbc:h2:mem:baseline" }
+      };
+   }
+
+   @DataProvider
+   public Object[][] migratedSchemas() {
+      return new Object[][] {
+            { "jclouds-test-baseline-hsqldb", "jclouds-test-migrated-hsqldb", "jdbc:hsqldb:mem:baseline" },
+            { "jclouds-test-baseline-h2", "jclouds-test-migrated-h2", "jdbc:h2:mem:baseline" }
+      };
+   }
+
+   @Test(dataProvider = "baselineSchemas")
+   public void testMovesUserMetadataIntoColumn(String persistenceUnit, String url) throws SQLException {
+      url = newDatabase(url);
+      Connection connection = DriverManager.getConnection(url, "sa", "");
+      try {
+         createBaseline(persistenceUnit, url);
+         assertThat(SchemaMigration.migrate(connection)).isTrue();
+
+         assertThat(userMetadata(connection, 1, "a")).isEqualTo(ImmutableMap.of("k1", "v1", "k2", "v2"));
+         assertThat(userMetadata(connection, 1, "b")).isEmpty();
+         assertThat(userMetadata(connection, 2, "a")).isEqualTo(ImmutableMap.of("k", "v"));
+         assertThat(tableExists(connection, "BlobEntity_userMetadata")).isFalse();
+      } finally {
+         connection.close();
+      }
+   }
+
+   @Test(dataProvider = "baselineSchemas")
+   public void testMovesChunkListsIntoPositions(String persistenceUnit, String url) throws SQLException {
+      url = newDatabase(url);
+      Connection connection = DriverManager.getConnection(url, "sa", "");
+      try {
+         createBaseline(persistenceUnit, url);
+         SchemaMigration.migrate(connection);
+
+         assertThat(chunkPositions(connection, payloadIds.get(0))).containsExactly(
+               position(0, chunkIds.get(0), 0, 3), position(1, chunkIds.get(1), 3, 5),
+               position(2, chunkIds.get(2), 8, 2));
+         assertThat(chunkPositions(connection, payloadIds.get(1))).containsExactly(position(0, chunkIds.get(3), 0, 4));
+         assertThat(tableExists(connection, "PayloadEntity_chunks")).isFalse();
+      } finally {
+         connection.close();
+      }
+   }
+
+   @Test(dataProvider = "baselineSchemas")
+   public void testBackfillsReferenceCountsAndCodecs(String persistenceUnit, String url) throws SQLException {
+      url = newDatabase(url);
+      Connection connection = DriverManager.getConnection(url, "sa", "");
+      try {
+         createBaseline(persistenceUnit, url);
+         SchemaMigration.migrate(connection);
+
+         // The last chunk belongs to no payload and is left to the garbage collector
+         assertThat(chunkColumns(connection)).containsExactly("1 NONE", "1 NONE", "1 NONE", "1 NONE", "0 NONE");
+      } finally {
+         connection.close();
+      }
+   }
+
+   @Test(dataProvider = "migratedSchemas")
+   public void testNewChunkIdsFollowMigratedOnes(String baselineUnit, String migratedUnit, String url)
+         throws SQLException {
+      url = newDatabase(url);
+      Connection connection = DriverManager.getConnection(url, "sa", "");
+      try {
+         createBaseline(baselineUnit, url);
+         SchemaMigration.migrate(connection);
+
+         EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(migratedUnit,
+               connectionProperties(url));
+         try {
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            entityManager.getTransaction().begin();
+            ChunkEntity chunk = new ChunkEntity(new byte[1], 1);
+            entityManager.persist(chunk);
+            entityManager.getTransaction().commit();
+            entityManager.close();
+            assertThat(chunk.getId()).isGreaterThan(Collections.max(chunkIds));
+         } finally {
+            entityManagerFactory.close();
+         }
+      } finally {
+         connection.close();
+      }
+   }
+
+   @Test(dataProvider = "baselineSchemas")
+   public void testMigratedDatabaseIsLeftAlone(String persistenceUnit, String url) throws SQLException {
+      url = newDatabase(url);
+      Connection connection = DriverManager.getConnection(url, "sa", "");
+      try {
+         createBaseline(persistenceUnit, url);
+         SchemaMigration.migrate(connection);
+         List<String> positions = chunkPositions(connection, payloadIds.get(0));
+         List<String> chunks = chunkColumns(connection);
+
+         assertThat(SchemaMigration.migrate(connection)).isFalse();
+         assertThat(userMetadata(connection, 1, "a")).hasSize(2);
+         assertThat(chunkPositions(connection, payloadIds.get(0))).isEqualTo(positions);
+         assertThat(chunkColumns(connection)).isEqualTo(chunks);
+      } finally {
+         connection.close();
+      }
+   }
+
+   private String newDatabase(String url) {
+      return url + databases++;
+   }
+
+   private static Map<String, String> connectionProperties(String url) {
+      return ImmutableMap.of("hibernate.connection.url", url, "javax.persistence.jdbc.url", url);
+   }
+
+   /**
+    * Lets the persistence provider create the baseline schema and store three
+    * blobs, two of them with user metadata, two payloads with three and one
+    * chunks, and a chunk no payload refers to.
+    */
+   private void createBaseline(String persistenceUnit, String url) {
+      EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(persistenceUnit,
+            connectionProperties(url));
+      try {
+         EntityManager entityManager = entityManagerFactory.createEntityManager();
+         entityManager.getTransaction().begin();
+         entityManager.persist(new BaselineBlobEntity(1L, "a", ImmutableMap.of("k1", "v1", "k2", "v2")));
+         entityManager.persist(new BaselineBlobEntity(1L, "b", ImmutableMap.<String, String>of()));
+         entityManager.persist(new BaselineBlobEntity(2L, "a", ImmutableMap.of("k", "v")));
+         chunkIds = Lists.newArrayList();
+         for (int size : new int[] { 3, 5, 2, 4, 1 }) {
+            BaselineChunkEntity chunk = new BaselineChunkEntity(size);
+            entityManager.persist(chunk);
+            entityManager.flush();
+            chunkIds.add(chunk.getId());
+         }
+         payloadIds = Lists.newArrayList();
+         for (List<Long> chunks : ImmutableList.of(chunkIds.subList(0, 3), chunkIds.subList(3, 4))) {
+            BaselinePayloadEntity payload = new BaselinePayloadEntity(Lists.newArrayList(chunks));
+            entityManager.persist(payload);
+            entityManager.flush();
+            payloadIds.add(payload.getId());
+         }
+         entityManager.getTransaction().commit();
+         entityManager.close();
+      } finally {
+         entityManagerFactory.close();
+      }
+   }
+
+   private static Map<String, String> userMetadata(Connection connection, long containerId, String key)
+         throws SQLException {
+      Statement statement = connection.createStatement();
+      try {
+         ResultSet rows = statement.executeQuery("SELECT userMetadata FROM BlobEntity WHERE id = " + containerId
+               + " AND key = '" + key + "'");
+         assertThat(rows.next()).isTrue();
+         return UserMetadataCodec.decode(rows.getString(1));
+      } finally {
+         statement.close();
+      }
+   }
+
+   private static List<String> chunkPositions(Connection connection, long payloadId) throws SQLException {
+      Statement statement = connection.createStatement();
+      try {
+         ResultSet rows = statement.executeQuery("SELECT seq, chunk_id, chunk_offset, chunk_size FROM PayloadChunk "
+               + "WHERE payload_id = " + payloadId + " ORDER BY seq");
+         List<String> positions = Lists.newArrayList();
+         while (rows.next()) {
+            positions.add(position(rows.getInt(1), rows.getLong(2), rows.getLong(3), rows.getInt(4)));
+         }
+         return positions;
+      } finally {
+         statement.close();
+      }
+   }
+
+   private static String position(int seq, long chunkId, long offset, int size) {
+      return seq + ": chunk " + chunkId + " at " + offset + " of " + size;
+   }
+
+   /**
+    * The reference count and codec of each chunk, by id.
+    */
+   private static List<String> chunkColumns(Connection connection) throws SQLException {
+      Statement statement = connection.createStatement();
+      try {
+         ResultSet rows = statement.executeQuery("SELECT referenceCount, codec FROM ChunkEntity ORDER BY id");
+         List<String> chunks = Lists.newArrayList();
+         while (rows.next()) {
+            chunks.add(rows.getInt(1) + " " + rows.getString(2));
+         }
+         return chunks;
+      } finally {
+         statement.close();
+      }
+   }
+
+   private static boolean tableExists(Connection connection, String table) throws SQLException {
+      ResultSet tables = connection.getMetaData().getTables(null, null, table.toUpperCase(Locale.ENGLISH), null);
+      try {
+         return tables.next();
+      } finally {
+         tables.close();
+      }
+   }
+
+}
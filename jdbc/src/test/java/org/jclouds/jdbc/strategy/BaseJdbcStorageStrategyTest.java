@@ -16,31 +16,60 @@
  */
 package org.jclouds.jdbc.strategy;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Module;
-import com.google.inject.persist.PersistService;
-import com.google.inject.persist.jpa.JpaPersistModule;
+import com.google.inject.persist.UnitOfWork;
+import org.jclouds.blobstore.ContainerNotFoundException;
 import org.jclouds.blobstore.domain.Blob;
 import org.jclouds.blobstore.domain.BlobAccess;
 import org.jclouds.blobstore.domain.ContainerAccess;
+import org.jclouds.blobstore.domain.PageSet;
 import org.jclouds.blobstore.domain.StorageMetadata;
 import org.jclouds.blobstore.domain.StorageType;
 import org.jclouds.blobstore.domain.internal.BlobBuilderImpl;
+import org.jclouds.blobstore.options.CopyOptions;
 import org.jclouds.blobstore.options.CreateContainerOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.jclouds.jdbc.config.JdbcPersistModule;
+import org.jclouds.jdbc.entity.BlobEntity;
+import org.jclouds.jdbc.entity.ChunkEntity;
+import org.jclouds.jdbc.entity.ChunkReference;
 import org.jclouds.jdbc.module.TestContextModule;
+import org.jclouds.jdbc.options.JdbcCreateContainerOptions;
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.jclouds.jdbc.repository.ChunkRepository;
+import org.jclouds.jdbc.repository.ChunkStore;
+import org.jclouds.jdbc.service.ChunkGarbageCollector;
+import org.jclouds.jdbc.service.JdbcService;
+import org.jclouds.jdbc.util.ChunkCodec;
+import org.jclouds.lifecycle.Closer;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Properties;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.jclouds.utils.TestUtils.randomByteSource;
+import static org.testng.Assert.fail;
 
 public abstract class BaseJdbcStorageStrategyTest {
 
@@ -58,13 +87,19 @@ public abstract class BaseJdbcStorageStrategyTest {
 
    @BeforeMethod
    protected void setUp() throws Exception {
-      injector = Guice.createInjector(ImmutableSet.<Module> of(new TestContextModule(), new JpaPersistModule(jpaModuleName)));
+      injector = Guice.createInjector(ImmutableSet.<Module> of(new TestContextModule(setupProperties()),
+            new JdbcPersistModule(jpaModuleName)));
       storageStrategy = injector.getInstance(JdbcStorageStrategy.class);
    }
 
+   protected Properties setupProperties() {
+      return new Properties();
+   }
+
    @AfterMethod
-   protected void tearDown() {
-      injector.getInstance(PersistService.class).stop();
+   protected void tearDown() throws IOException {
+      // Stops the persistence service and closes the connection pool, if any
+      injector.getInstance(Closer.class).close();
    }
 
    @Test
@@ -105,6 +140,113 @@ public abstract class BaseJdbcStorageStrategyTest {
       assertThat(storageStrategy.containerExists(CONTAINER_NAME)).isFalse();
    }
 
+   @Test
+   public void testRecreateContainer() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
+      storageStrategy.putBlob(CONTAINER_NAME,
+            new BlobBuilderImpl().name(BLOB_NAME).payload(randomByteSource().slice(0, 1024)).build());
+      storageStrategy.deleteContainer(CONTAINER_NAME);
+      assertThat(storageStrategy.containerExists(CONTAINER_NAME)).isFalse();
+      assertThat(storageStrategy.blobExists(CONTAINER_NAME, BLOB_NAME)).isFalse();
+
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
+      assertThat(storageStrategy.blobExists(CONTAINER_NAME, BLOB_NAME)).isFalse();
+      storageStrategy.putBlob(CONTAINER_NAME,
+            new BlobBuilderImpl().name(BLOB_NAME).payload(randomByteSource().slice(0, 2048)).build());
+      assertThat(storageStrategy.getBlob(CONTAINER_NAME, BLOB_NAME).getMetadata().getSize()).isEqualTo(2048);
+   }
+
+   @Test
+   public void testCompressedContainer() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null,
+            JdbcCreateContainerOptions.Builder.compression(ChunkCodec.LZ4))).isTrue();
+      byte[] content = Strings.repeat("{\"level\":\"INFO\",\"message\":\"request served\"}\n",
+            2 * JdbcConstants.DEFAULT_CHUNK_SIZE / 40).getBytes(Charsets.UTF_8);
+      storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME).payload(content).build());
+
+      JdbcService jdbcService = injector.getInstance(JdbcService.class);
+      BlobEntity blobEntity = jdbcService.findBlobById(CONTAINER_NAME, BLOB_NAME);
+      List<ChunkReference> chunks = jdbcService.findChunkReferences(blobEntity.getPayload().getId());
+      assertThat(chunks).hasSize(3);
+      for (ChunkReference chunk : chunks) {
+         ChunkEntity chunkEntity = jdbcService.findChunkById(chunk.getChunkId());
+         assertThat(chunkEntity.getCodec()).isEqualTo(ChunkCodec.LZ4);
+         assertThat(chunkEntity.getData().length).isLessThan(chunkEntity.getSize());
+      }
+
+      Blob blob = storageStrategy.getBlob(CONTAINER_NAME, BLOB_NAME);
+      assertThat(blob.getMetadata().getSize()).isEqualTo(content.length);
+      InputStream is = blob.getPayload().openStream();
+      try {
+         assertThat(ByteStreams.toByteArray(is)).isEqualTo(content);
+      } finally {
+         is.close();
+      }
+   }
+
+   @Test
+   public void testContainerChunkSize() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null,
+            JdbcCreateContainerOptions.Builder.chunkSize(256 * 1024))).isTrue();
+      ByteSource content = randomByteSource().slice(0, JdbcConstants.DEFAULT_CHUNK_SIZE + 1);
+      storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME).payload(content).build());
+
+      JdbcService jdbcService = injector.getInstance(JdbcService.class);
+      BlobEntity blobEntity = jdbcService.findBlobById(CONTAINER_NAME, BLOB_NAME);
+      assertThat(blobEntity.getPayload().getChunkSize()).isEqualTo(256 * 1024);
+      assertThat(jdbcService.findChunkReferences(blobEntity.getPayload().getId())).hasSize(5);
+      assertContent(CONTAINER_NAME, BLOB_NAME, content.read());
+   }
+
+   @Test
+   public void testAdaptiveContainerInlinesSmallBlobs() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null,
+            JdbcCreateContainerOptions.Builder.adaptiveChunkSize(true))).isTrue();
+      byte[] content = getByteArray('i', 100);
+      storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME).payload(content).build());
+      storageStrategy.copyBlob(CONTAINER_NAME, BLOB_NAME, CONTAINER_NAME, BLOB_NAME + "-copy", CopyOptions.NONE);
+      storageStrategy.removeBlob(CONTAINER_NAME, BLOB_NAME);
+
+      JdbcService jdbcService = injector.getInstance(JdbcService.class);
+      BlobEntity blobEntity = jdbcService.findBlobById(CONTAINER_NAME, BLOB_NAME + "-copy");
+      assertThat(blobEntity.getPayload().getInlineData()).isEqualTo(content);
+      assertThat(jdbcService.findChunkReferences(blobEntity.getPayload().getId())).isEmpty();
+      assertThat(blobEntity.getSize()).isEqualTo(100);
+      assertContent(CONTAINER_NAME, BLOB_NAME + "-copy", content);
+   }
+
+   @Test
+   public void testAdaptiveContainerChunksBlobsOfUnknownLength() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null,
+            JdbcCreateContainerOptions.Builder.adaptiveChunkSize(true))).isTrue();
+      byte[] content = randomByteSource().slice(0, 10000).read();
+      // No content length is declared, so the blob is only found to be too large for inlining while reading it
+      storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME)
+            .payload(new ByteArrayInputStream(content)).build());
+
+      JdbcService jdbcService = injector.getInstance(JdbcService.class);
+      BlobEntity blobEntity = jdbcService.findBlobById(CONTAINER_NAME, BLOB_NAME);
+      assertThat(blobEntity.getPayload().getInlineData()).isNull();
+      assertThat(jdbcService.findChunkReferences(blobEntity.getPayload().getId())).hasSize(1);
+      assertContent(CONTAINER_NAME, BLOB_NAME, content);
+   }
+
+   @Test
+   public void testAdaptiveContainerGrowsChunkSize() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null,
+            JdbcCreateContainerOptions.Builder.chunkSize(1024).adaptiveChunkSize(true))).isTrue();
+      // Too large for 256 chunks of 1 KB or 2 KB
+      ByteSource content = randomByteSource().slice(0, 2 * 256 * 1024 + 1);
+      storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME).payload(content)
+            .contentLength(content.size()).build());
+
+      JdbcService jdbcService = injector.getInstance(JdbcService.class);
+      BlobEntity blobEntity = jdbcService.findBlobById(CONTAINER_NAME, BLOB_NAME);
+      assertThat(blobEntity.getPayload().getChunkSize()).isEqualTo(4096);
+      assertThat(jdbcService.findChunkReferences(blobEntity.getPayload().getId())).hasSize(129);
+      assertContent(CONTAINER_NAME, BLOB_NAME, content.read());
+   }
+
    @Test
    public void testGetAllContainerNames() {
       assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME + "1", null, null)).isTrue();
@@ -137,6 +279,33 @@ public abstract class BaseJdbcStorageStrategyTest {
       assertThat(storageStrategy.blobExists(CONTAINER_NAME, BLOB_NAME)).isTrue();
    }
 
+   @Test(expectedExceptions = ContainerNotFoundException.class)
+   public void testPutBlobInMissingContainer() throws IOException {
+      storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME)
+            .payload(getByteArray('m', 100)).build());
+   }
+
+   @Test
+   public void testListPagesPastCommonPrefix() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
+      // The last key under dir/ sorts after dir/ followed by the highest character
+      for (String key : ImmutableList.of("a", "dir/1", "dir/2", "dir/3", "dir/" + Character.MAX_VALUE + "x", "e",
+            "f")) {
+         storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(key).payload(getByteArray('l', 10))
+               .build());
+      }
+
+      PageSet<? extends StorageMetadata> first = storageStrategy.list(CONTAINER_NAME,
+            ListContainerOptions.Builder.maxResults(2));
+      assertThat(names(first)).containsExactly("a", "dir/");
+      assertThat(first.getNextMarker()).isEqualTo("dir/");
+
+      PageSet<? extends StorageMetadata> second = storageStrategy.list(CONTAINER_NAME,
+            ListContainerOptions.Builder.maxResults(2).afterMarker(first.getNextMarker()));
+      assertThat(names(second)).containsExactly("e", "f");
+      assertThat(second.getNextMarker()).isNull();
+   }
+
    @Test
    public void testGetBlobKeysInContainer() throws IOException {
       assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
@@ -177,6 +346,42 @@ public abstract class BaseJdbcStorageStrategyTest {
       assertThat(storageStrategy.blobExists(CONTAINER_NAME, BLOB_NAME)).isFalse();
    }
 
+   @Test
+   public void testRemoveBlobs() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
+      for (int i = 1; i <= 3; i++) {
+         storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME + i)
+               .userMetadata(ImmutableMap.of("key", "value" + i))
+               .payload(randomByteSource().slice(0, 1024 * 1024 + i)).build());
+      }
+      storageStrategy.removeBlobs(CONTAINER_NAME, ImmutableList.of(BLOB_NAME + "1", BLOB_NAME + "3", "missing"));
+      assertThat(storageStrategy.getBlobKeysInsideContainer(CONTAINER_NAME)).containsExactly(BLOB_NAME + "2");
+      assertThat(storageStrategy.getBlob(CONTAINER_NAME, BLOB_NAME + "2").getMetadata().getUserMetadata())
+            .isEqualTo(ImmutableMap.of("key", "value2"));
+   }
+
+   @Test
+   public void testCountAndClearDirectory() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
+      storageStrategy.createDirectory(CONTAINER_NAME, "dir");
+      for (String key : ImmutableList.of("dir/a", "dir/b", "dir/sub/c", "dir_d", "e")) {
+         storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(key)
+               .userMetadata(ImmutableMap.of("key", key))
+               .payload(randomByteSource().slice(0, 1024)).build());
+      }
+      assertThat(storageStrategy.countBlobs(CONTAINER_NAME, ListContainerOptions.NONE)).isEqualTo(6);
+      assertThat(storageStrategy.countBlobs(CONTAINER_NAME, ListContainerOptions.Builder.inDirectory("dir")))
+            .isEqualTo(2);
+      assertThat(storageStrategy.countBlobs(CONTAINER_NAME,
+            ListContainerOptions.Builder.inDirectory("dir").recursive())).isEqualTo(3);
+
+      storageStrategy.clearContainer(CONTAINER_NAME, ListContainerOptions.Builder.inDirectory("dir").recursive());
+      assertThat(storageStrategy.getBlobKeysInsideContainer(CONTAINER_NAME)).containsExactly("dir", "dir_d", "e");
+
+      storageStrategy.clearContainer(CONTAINER_NAME);
+      assertThat(storageStrategy.countBlobs(CONTAINER_NAME, ListContainerOptions.NONE)).isEqualTo(0);
+   }
+
    @Test
    public void testGetBlobAccess() throws IOException {
       assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
@@ -203,6 +408,238 @@ public abstract class BaseJdbcStorageStrategyTest {
       assertThat(storageStrategy.containerExists(CONTAINER_NAME)).isFalse();
    }
 
+   @Test
+   public void testGetBlobSpanningSeveralChunkFlushes() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
+      ByteSource content = randomByteSource().slice(0, 17 * JdbcConstants.DEFAULT_CHUNK_SIZE + 123);
+      storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME).payload(content).build());
+      InputStream data = storageStrategy.getBlob(CONTAINER_NAME, BLOB_NAME).getPayload().openStream();
+      try {
+         assertThat(ByteStreams.toByteArray(data)).isEqualTo(content.read());
+      } finally {
+         data.close();
+      }
+   }
+
+   @Test
+   public void testBlobsWithSameContent() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
+      ByteSource content = randomByteSource().slice(0, 2 * JdbcConstants.DEFAULT_CHUNK_SIZE + 1);
+      storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME + "1").payload(content).build());
+      storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME + "2").payload(content).build());
+      // Overwriting a blob with its own content must not lose the shared chunks
+      storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME + "2").payload(content).build());
+      storageStrategy.removeBlob(CONTAINER_NAME, BLOB_NAME + "1");
+      InputStream data = storageStrategy.getBlob(CONTAINER_NAME, BLOB_NAME + "2").getPayload().openStream();
+      try {
+         assertThat(ByteStreams.toByteArray(data)).isEqualTo(content.read());
+      } finally {
+         data.close();
+      }
+   }
+
+   @Test
+   public void testBlobWithRepeatedChunks() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
+      byte[] content = getByteArray('z', 3 * JdbcConstants.DEFAULT_CHUNK_SIZE + 10);
+      storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME).payload(content).build());
+      InputStream data = storageStrategy.getBlob(CONTAINER_NAME, BLOB_NAME).getPayload().openStream();
+      try {
+         assertThat(ByteStreams.toByteArray(data)).isEqualTo(content);
+      } finally {
+         data.close();
+      }
+   }
+
+   @Test
+   public void testPutBlobWithWrongMd5IsRolledBack() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
+      Blob blob = new BlobBuilderImpl().name(BLOB_NAME)
+            .payload(randomByteSource().slice(0, 3 * JdbcConstants.DEFAULT_CHUNK_SIZE + 1))
+            .contentMD5(Hashing.md5().hashBytes(new byte[] { 1 }))
+            .build();
+      try {
+         storageStrategy.putBlob(CONTAINER_NAME, blob);
+         fail("Expected IOException");
+      } catch (IOException expected) {
+         assertThat(expected.getMessage()).contains("MD5 hash code mismatch");
+      }
+      assertThat(storageStrategy.blobExists(CONTAINER_NAME, BLOB_NAME)).isFalse();
+      // The chunks written before the mismatch was detected are rolled back too
+      assertThat(injector.getInstance(ChunkGarbageCollector.class).collect()).isEqualTo(0);
+      assertThat(injector.getInstance(ChunkGarbageCollector.class).collect()).isEqualTo(0);
+   }
+
+   @Test
+   public void testPutBlobWithFailingPayloadIsRolledBack() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
+      final ByteSource content = randomByteSource().slice(0, 3 * JdbcConstants.DEFAULT_CHUNK_SIZE);
+      ByteSource failing = new ByteSource() {
+         @Override
+         public InputStream openStream() throws IOException {
+            return new SequenceInputStream(content.openStream(), new InputStream() {
+               @Override
+               public int read() throws IOException {
+                  throw new IOException("connection reset");
+               }
+            });
+         }
+      };
+      try {
+         storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME).payload(failing).build());
+         fail("Expected IOException");
+      } catch (IOException expected) {
+         assertThat(expected.getMessage()).contains("connection reset");
+      }
+      assertThat(storageStrategy.blobExists(CONTAINER_NAME, BLOB_NAME)).isFalse();
+   }
+
+   @Test(timeOut = 60000)
+   public void testPutBlobWithFailingChunkStoreStopsReader() throws IOException {
+      // Starts over with a chunk store that fails once the reader had time to fill the pipeline
+      injector.getInstance(Closer.class).close();
+      injector = Guice.createInjector(ImmutableSet.<Module> of(new TestContextModule(setupProperties()),
+            new JdbcPersistModule(jpaModuleName), new AbstractModule() {
+               @Override
+               protected void configure() {
+                  bind(ChunkStore.class).toInstance(new FailingChunkStore());
+               }
+            }));
+      storageStrategy = injector.getInstance(JdbcStorageStrategy.class);
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
+      Blob blob = new BlobBuilderImpl().name(BLOB_NAME)
+            .payload(randomByteSource().slice(0, 8 * JdbcConstants.DEFAULT_CHUNK_SIZE)).build();
+      try {
+         storageStrategy.putBlob(CONTAINER_NAME, blob);
+         fail("Expected the chunk store to fail");
+      } catch (IllegalStateException expected) {
+         assertThat(expected.getMessage()).isEqualTo("disk full");
+      }
+      assertThat(storageStrategy.blobExists(CONTAINER_NAME, BLOB_NAME)).isFalse();
+   }
+
+   @Test
+   public void testGarbageCollectorReclaimsOrphanedChunks() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
+      byte[] content = getByteArray('g', JdbcConstants.DEFAULT_CHUNK_SIZE + 10);
+      storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME).payload(content).build());
+
+      // A chunk nothing points to, as left behind by a failed upload
+      EntityManager entityManager = injector.getInstance(EntityManager.class);
+      entityManager.getTransaction().begin();
+      ChunkEntity orphan = new ChunkEntity(getByteArray('o', 100), 100);
+      entityManager.persist(orphan);
+      entityManager.getTransaction().commit();
+      injector.getInstance(UnitOfWork.class).end();
+
+      ChunkGarbageCollector collector = injector.getInstance(ChunkGarbageCollector.class);
+      // The first pass only marks the orphan
+      assertThat(collector.collect()).isEqualTo(0);
+      assertThat(collector.collect()).isEqualTo(100);
+      assertThat(collector.getReclaimedChunks()).isEqualTo(1);
+      assertThat(injector.getInstance(JdbcService.class).findChunkById(orphan.getId())).isNull();
+
+      InputStream data = storageStrategy.getBlob(CONTAINER_NAME, BLOB_NAME).getPayload().openStream();
+      try {
+         assertThat(ByteStreams.toByteArray(data)).isEqualTo(content);
+      } finally {
+         data.close();
+      }
+   }
+
+   @Test
+   public void testGarbageCollectorKeepsChunksRetainedBetweenPasses() throws IOException {
+      EntityManager entityManager = injector.getInstance(EntityManager.class);
+      entityManager.getTransaction().begin();
+      ChunkEntity orphan = new ChunkEntity(getByteArray('o', 100), 100);
+      entityManager.persist(orphan);
+      entityManager.getTransaction().commit();
+      injector.getInstance(UnitOfWork.class).end();
+
+      ChunkGarbageCollector collector = injector.getInstance(ChunkGarbageCollector.class);
+      assertThat(collector.collect()).isEqualTo(0);
+
+      // A deduplicating upload finds the marked orphan by its hash and retains it
+      entityManager = injector.getInstance(EntityManager.class);
+      entityManager.getTransaction().begin();
+      assertThat(injector.getInstance(ChunkRepository.class).retain(orphan.getId())).isTrue();
+      entityManager.getTransaction().commit();
+      injector.getInstance(UnitOfWork.class).end();
+
+      // Its reference count changed since it was marked, so it is only marked again
+      assertThat(collector.collect()).isEqualTo(0);
+      assertThat(injector.getInstance(JdbcService.class).findChunkById(orphan.getId())).isNotNull();
+      assertThat(collector.collect()).isEqualTo(100);
+      assertThat(injector.getInstance(JdbcService.class).findChunkById(orphan.getId())).isNull();
+   }
+
+   @Test
+   public void testDeleteUnreferencedKeepsReferencedChunks() throws IOException {
+      assertThat(storageStrategy.createContainerInLocation(CONTAINER_NAME, null, null)).isTrue();
+      storageStrategy.putBlob(CONTAINER_NAME, new BlobBuilderImpl().name(BLOB_NAME)
+            .payload(getByteArray('r', 100)).build());
+      JdbcService jdbcService = injector.getInstance(JdbcService.class);
+      BlobEntity blobEntity = jdbcService.findBlobById(CONTAINER_NAME, BLOB_NAME);
+      Long chunkId = jdbcService.findChunkReferences(blobEntity.getPayload().getId()).get(0).getChunkId();
+
+      // The chunk was referenced after the collector found it unreferenced
+      EntityManager entityManager = injector.getInstance(EntityManager.class);
+      entityManager.getTransaction().begin();
+      assertThat(injector.getInstance(ChunkRepository.class).deleteUnreferenced(ImmutableMap.of(chunkId, 1)))
+            .isEmpty();
+      entityManager.getTransaction().commit();
+      injector.getInstance(UnitOfWork.class).end();
+
+      assertContent(CONTAINER_NAME, BLOB_NAME, getByteArray('r', 100));
+   }
+
+   private static List<String> names(PageSet<? extends StorageMetadata> page) {
+      ImmutableList.Builder<String> names = ImmutableList.builder();
+      for (StorageMetadata metadata : page) {
+         names.add(metadata.getName());
+      }
+      return names.build();
+   }
+
+   private void assertContent(String container, String key, byte[] expected) throws IOException {
+      InputStream data = storageStrategy.getBlob(container, key).getPayload().openStream();
+      try {
+         assertThat(ByteStreams.toByteArray(data)).isEqualTo(expected);
+      } finally {
+         data.close();
+      }
+   }
+
+   /**
+    * Chunk store whose writes fail, after leaving the upload pipeline time to fill up.
+    */
+   private static final class FailingChunkStore implements ChunkStore {
+
+      @Override
+      public Writer newWriter() {
+         return new Writer() {
+            @Override
+            public ChunkEntity write(byte[] data, int size, String hash, ChunkCodec codec) {
+               try {
+                  Thread.sleep(500);
+               } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+               }
+               throw new IllegalStateException("disk full");
+            }
+
+            @Override
+            public void flush() {
+            }
+         };
+      }
+
+      @Override
+      public ChunkEntity read(Long id) {
+         return null;
+      }
+   }
+
     private byte[] getByteArray(char c, int len) {
         byte[] array = new byte[len];
         Arrays.fill(array, (byte) c);
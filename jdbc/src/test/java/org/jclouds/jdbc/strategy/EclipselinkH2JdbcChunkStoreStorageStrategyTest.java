@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.strategy;
+
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.testng.annotations.Test;
+
+import java.util.Properties;
+
+@Test(groups = "unit", testName = "EclipselinkH2JdbcChunkStoreStorageStrategyTest", singleThreaded = true)
+public class EclipselinkH2JdbcChunkStoreStorageStrategyTest extends BaseJdbcStorageStrategyTest {
+
+   public EclipselinkH2JdbcChunkStoreStorageStrategyTest() {
+      super("jclouds-test-h2");
+   }
+
+   // The jdbc chunk store writes on connections of the data source
+   @Override
+   protected Properties setupProperties() {
+      Properties properties = super.setupProperties();
+      properties.setProperty(JdbcConstants.PROPERTY_CHUNK_STORE, "jdbc");
+      properties.setProperty(JdbcConstants.PROPERTY_DATASOURCE_URL,
+            "jdbc:h2:./target/h2-2");
+      properties.setProperty(JdbcConstants.PROPERTY_DATASOURCE_DRIVER, "org.h2.Driver");
+      properties.setProperty(JdbcConstants.PROPERTY_DATASOURCE_USER, "sa");
+      return properties;
+   }
+
+   // For some reason testng needs at least a test here
+   public void ohMyTest() {}
+
+}
@@ -16,8 +16,11 @@
  */
 package org.jclouds.jdbc.strategy;
 
+import org.jclouds.jdbc.reference.JdbcConstants;
 import org.testng.annotations.Test;
 
+import java.util.Properties;
+
 @Test(groups = "unit", testName = "EclipselinkH2StorageStrategyTest", singleThreaded = true)
 public class EclipselinkH2StorageStrategyTest extends BaseJdbcStorageStrategyTest {
 
@@ -25,6 +28,14 @@ public class EclipselinkH2StorageStrategyTest extends BaseJdbcStorageStrategyTes
       super("jclouds-test-h2");
    }
 
+   // Run one of the providers with chunk deduplication enabled
+   @Override
+   protected Properties setupProperties() {
+      Properties properties = super.setupProperties();
+      properties.setProperty(JdbcConstants.PROPERTY_DEDUPLICATION, "true");
+      return properties;
+   }
+
    // For some reason testng needs at least a test here
    public void ohMyTest() {}
 
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jclouds.jdbc.strategy;
+
+import org.jclouds.jdbc.reference.JdbcConstants;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Test(groups = "unit", testName = "HibernateHsqldbPooledStorageStrategyTest", singleThreaded = true)
+public class HibernateHsqldbPooledStorageStrategyTest extends BaseJdbcStorageStrategyTest {
+
+   public HibernateHsqldbPooledStorageStrategyTest() {
+      super("jclouds-test-hsqldb");
+   }
+
+   @Override
+   protected Properties setupProperties() {
+      Properties properties = super.setupProperties();
+      properties.setProperty(JdbcConstants.PROPERTY_DATASOURCE_URL,
+            "jdbc:hsqldb:file:target/testdb;shutdown=true;sql.enforce_strict_size=true;hsqldb.tx=mvcc");
+      properties.setProperty(JdbcConstants.PROPERTY_DATASOURCE_DRIVER, "org.hsqldb.jdbcDriver");
+      properties.setProperty(JdbcConstants.PROPERTY_DATASOURCE_USER, "sa");
+      properties.setProperty(JdbcConstants.PROPERTY_POOL_MAX_SIZE, "4");
+      return properties;
+   }
+
+   public void testPoolMBeanIsRegisteredWithMetricsDisabled() throws Exception {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      Set<ObjectName> names = server.queryNames(new ObjectName("org.apache.jclouds.jdbc:type=DataSource,*"), null);
+      assertThat(names).isNotEmpty();
+      for (ObjectName name : names) {
+         assertThat((Integer) server.getAttribute(name, "IdleConnections")).isGreaterThanOrEqualTo(0);
+      }
+   }
+
+}